@@ -0,0 +1,55 @@
+package com.mpescarmona.earthquake.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Inputs shared by the benchmarks
+ */
+public final class BenchmarkFixtures {
+    private static final String SAMPLE_RESPONSE = "/usgs/query-sample.geojson";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Builds an object mapper configured like the one of the application for the EarthQuake USGS responses
+     *
+     * @return A new object mapper
+     */
+    public static ObjectMapper objectMapper() {
+        return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Builds a response of the EarthQuake USGS service with the given number of earthquakes, repeating the
+     * earthquakes of the sample response with distinct ids
+     *
+     * @param features The number of earthquakes of the response
+     * @return The GeoJSON response
+     */
+    public static byte[] earthquakeResponse(int features) {
+        ObjectMapper objectMapper = objectMapper();
+        try (InputStream inputStream = BenchmarkFixtures.class.getResourceAsStream(SAMPLE_RESPONSE)) {
+            ObjectNode response = (ObjectNode) objectMapper.readTree(inputStream);
+            ArrayNode sampleFeatures = (ArrayNode) response.get("features");
+            ArrayNode repeatedFeatures = objectMapper.createArrayNode();
+            for (int i = 0; i < features; i++) {
+                ObjectNode feature = sampleFeatures.get(i % sampleFeatures.size()).deepCopy();
+                feature.put("id", feature.get("id").asText() + i);
+                repeatedFeatures.add(feature);
+            }
+            response.set("features", repeatedFeatures);
+            ((ObjectNode) response.get("metadata")).put("count", features);
+            return objectMapper.writeValueAsBytes(response);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
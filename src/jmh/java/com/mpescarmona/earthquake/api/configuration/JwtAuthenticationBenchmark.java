@@ -0,0 +1,87 @@
+package com.mpescarmona.earthquake.api.configuration;
+
+import com.mpescarmona.earthquake.api.cache.VerifiedTokenCache;
+import com.mpescarmona.earthquake.api.service.impl.JwtUserDetailsService;
+import com.mpescarmona.earthquake.api.util.JwtTokenUtil;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authentication of a request with a JWT token: verifying the token, the cached lookup of a token verified
+ * before and the whole request filter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtAuthenticationBenchmark {
+    private JwtTokenUtil jwtTokenUtil;
+    private VerifiedTokenCache verifiedTokenCache;
+    private JwtRequestFilter jwtRequestFilter;
+    private UserDetails userDetails;
+    private String token;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private FilterChain chain;
+
+    @Setup
+    public void setup() {
+        jwtTokenUtil = new JwtTokenUtil();
+        ReflectionTestUtils.setField(jwtTokenUtil, "secret", "javainuse");
+        JwtUserDetailsService jwtUserDetailsService = new JwtUserDetailsService();
+        ReflectionTestUtils.setField(jwtUserDetailsService, "user", "testuser");
+        verifiedTokenCache = new VerifiedTokenCache(jwtTokenUtil, jwtUserDetailsService, 10000, 300000);
+        jwtRequestFilter = new JwtRequestFilter();
+        ReflectionTestUtils.setField(jwtRequestFilter, "verifiedTokenCache", verifiedTokenCache);
+
+        userDetails = jwtUserDetailsService.loadUserByUsername("testuser");
+        token = jwtTokenUtil.generateToken(userDetails);
+        request = new MockHttpServletRequest("GET", "/earthquake-service/daterange");
+        request.addHeader("Authorization", "Bearer " + token);
+        response = new MockHttpServletResponse();
+        chain = (servletRequest, servletResponse) -> {
+        };
+    }
+
+    @Benchmark
+    public Claims getAllClaimsFromToken() {
+        return jwtTokenUtil.getAllClaimsFromToken(token);
+    }
+
+    @Benchmark
+    public Boolean validateToken() {
+        return jwtTokenUtil.validateToken(token, userDetails);
+    }
+
+    @Benchmark
+    public UserDetails verifiedTokenCache() {
+        return verifiedTokenCache.getUserDetails(token);
+    }
+
+    @Benchmark
+    public Object jwtRequestFilter() throws IOException, ServletException {
+        try {
+            jwtRequestFilter.doFilter(request, response, chain);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            // the filter runs once per request, so the request is reused without its attributes
+            request.clearAttributes();
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.mpescarmona.earthquake.api.domain.response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.mpescarmona.earthquake.api.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the responses as JSON, CBOR and Smile. The size of the encoded response is printed
+ * once per trial, next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EarthquakeEncodingBenchmark {
+    @Param({"100", "5000"})
+    private int features;
+
+    @Param({"json", "cbor", "smile"})
+    private String encoding;
+
+    private ObjectMapper objectMapper;
+    private EarthquakeResponse earthquakeResponse;
+    private byte[] encodedResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        earthquakeResponse = BenchmarkFixtures.objectMapper()
+                .readValue(BenchmarkFixtures.earthquakeResponse(features), EarthquakeResponse.class);
+        objectMapper = objectMapper(encoding);
+        encodedResponse = objectMapper.writeValueAsBytes(earthquakeResponse);
+        System.out.printf("%nencoding=%s, features=%d, bytes=%d%n", encoding, features, encodedResponse.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return objectMapper.writeValueAsBytes(earthquakeResponse);
+    }
+
+    @Benchmark
+    public EarthquakeResponse decode() throws IOException {
+        return objectMapper.readValue(encodedResponse, EarthquakeResponse.class);
+    }
+
+    private static ObjectMapper objectMapper(String encoding) {
+        switch (encoding) {
+            case "cbor":
+                return new ObjectMapper(new CBORFactory());
+            case "smile":
+                return new ObjectMapper(new SmileFactory());
+            default:
+                return BenchmarkFixtures.objectMapper();
+        }
+    }
+}
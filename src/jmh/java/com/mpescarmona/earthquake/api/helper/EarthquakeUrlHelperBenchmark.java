@@ -0,0 +1,70 @@
+package com.mpescarmona.earthquake.api.helper;
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the urls of the EarthQuake USGS service, done for every request and every batch or window of it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EarthquakeUrlHelperBenchmark {
+    private EarthquakeUrlHelper earthquakeUrlHelper;
+    private BoundingBox boundingBox;
+
+    @Setup
+    public void setup() {
+        earthquakeUrlHelper = new EarthquakeUrlHelper();
+        earthquakeUrlHelper.setEarthquakeBaseUrl("https://earthquake.usgs.gov/fdsnws/event/1/query");
+        earthquakeUrlHelper.setEarthquakeCountUrl("https://earthquake.usgs.gov/fdsnws/event/1/count");
+        earthquakeUrlHelper.setEarthquakeFormat("format=geojson");
+        earthquakeUrlHelper.setSearchByDatesStartTime("starttime");
+        earthquakeUrlHelper.setSearchByDatesEndTime("endtime");
+        earthquakeUrlHelper.setSearchByMagnitudesMinMagnitude("minmagnitude");
+        earthquakeUrlHelper.setSearchByMagnitudesMaxMagnitude("maxmagnitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMinLatitude("minlatitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMaxLatitude("maxlatitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMinLongitude("minlongitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMaxLongitude("maxlongitude");
+        earthquakeUrlHelper.setSearchByPageLimit("limit");
+        earthquakeUrlHelper.setSearchByPageOffset("offset");
+        earthquakeUrlHelper.setSearchByPageOrderBy("orderby");
+        boundingBox = BoundingBox.builder()
+                .minLatitude(-56.0)
+                .maxLatitude(-17.5)
+                .minLongitude(-109.5)
+                .maxLongitude(-66.4)
+                .build();
+    }
+
+    @Benchmark
+    public String buildEarthquakeUrlByDates() {
+        return earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-01", "2019-11-30");
+    }
+
+    @Benchmark
+    public String buildEarthquakeUrlByMagnitudes() {
+        return earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes("5.5", "9.0");
+    }
+
+    @Benchmark
+    public String buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox() {
+        return earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox("2019-11-01", "2019-11-30",
+                "5.5", "9.0", boundingBox);
+    }
+
+    @Benchmark
+    public String buildPagedUrl() {
+        return earthquakeUrlHelper.buildPagedUrl(earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-01", "2019-11-30"),
+                1000, 4000, "time");
+    }
+}
@@ -0,0 +1,51 @@
+package com.mpescarmona.earthquake.api.parser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpescarmona.earthquake.api.BenchmarkFixtures;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding the GeoJSON responses of the EarthQuake USGS service, whole with the object mapper and feature by
+ * feature with the streaming parser
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeoJsonBindingBenchmark {
+    @Param({"100", "5000"})
+    private int features;
+
+    private ObjectMapper objectMapper;
+    private GeoJsonStreamingParser geoJsonStreamingParser;
+    private byte[] earthquakeResponse;
+
+    @Setup
+    public void setup() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        geoJsonStreamingParser = new GeoJsonStreamingParser(objectMapper);
+        earthquakeResponse = BenchmarkFixtures.earthquakeResponse(features);
+    }
+
+    @Benchmark
+    public EarthquakeResponse objectMapper() throws IOException {
+        return objectMapper.readValue(earthquakeResponse, EarthquakeResponse.class);
+    }
+
+    @Benchmark
+    public EarthquakeResponse streamingParser() throws IOException {
+        return geoJsonStreamingParser.parse(new ByteArrayInputStream(earthquakeResponse), FeatureFilter.NONE);
+    }
+}
@@ -0,0 +1,120 @@
+package com.mpescarmona.earthquake.api.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpescarmona.earthquake.api.BenchmarkFixtures;
+import com.mpescarmona.earthquake.api.batch.EarthquakeBatchPlanner;
+import com.mpescarmona.earthquake.api.cache.EarthquakeResponseCache;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.dto.PageRequestDto;
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer;
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import com.mpescarmona.earthquake.api.page.EarthquakePager;
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser;
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard;
+import com.mpescarmona.earthquake.api.store.EarthquakeStore;
+import com.mpescarmona.earthquake.api.window.EarthquakeWindowSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The country and two-country queries of the earthquake service, against a canned response of the EarthQuake
+ * USGS service and without the response cache, and the same filters on earthquakes already in memory as read
+ * from the store
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EarthquakeCountryFilterBenchmark {
+    @Param({"100", "5000"})
+    private int features;
+
+    private EarthquakeServiceImpl earthquakeService;
+    private List<Feature> storedFeatures;
+    private FeatureFilter countryFilter;
+    private FeatureFilter twoCountriesFilter;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = BenchmarkFixtures.objectMapper();
+        byte[] earthquakeResponse = BenchmarkFixtures.earthquakeResponse(features);
+        RestTemplate restTemplate = new RestTemplate((uri, httpMethod) -> {
+            MockClientHttpResponse response = new MockClientHttpResponse(earthquakeResponse, HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+            request.setResponse(response);
+            return request;
+        });
+        EarthquakeUrlHelper earthquakeUrlHelper = new EarthquakeUrlHelper();
+        earthquakeUrlHelper.setEarthquakeBaseUrl("https://earthquake.usgs.gov/fdsnws/event/1/query");
+        earthquakeUrlHelper.setEarthquakeFormat("format=geojson");
+        earthquakeUrlHelper.setSearchByDatesStartTime("starttime");
+        earthquakeUrlHelper.setSearchByDatesEndTime("endtime");
+        earthquakeUrlHelper.setSearchByBoundingBoxMinLatitude("minlatitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMaxLatitude("maxlatitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMinLongitude("minlongitude");
+        earthquakeUrlHelper.setSearchByBoundingBoxMaxLongitude("maxlongitude");
+        GeoJsonStreamingParser geoJsonStreamingParser = new GeoJsonStreamingParser(objectMapper);
+        EarthquakeMetrics earthquakeMetrics = new EarthquakeMetrics(new SimpleMeterRegistry());
+        EarthquakeUpstreamGuard earthquakeUpstreamGuard = new EarthquakeUpstreamGuard(earthquakeMetrics,
+                50, 20, 10, 10000, 30000, 20, 500);
+        // a store without partitions and a cache without ttl send every query to the canned response
+        CountryGazetteer countryGazetteer = new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0);
+        earthquakeService = new EarthquakeServiceImpl(restTemplate, earthquakeUrlHelper, new EarthquakeStore(0, 0, 0, 0),
+                new SyncTaskExecutor(), new EarthquakeResponseCache(0, 0, 1), geoJsonStreamingParser, countryGazetteer,
+                new EarthquakePager(earthquakeUrlHelper, 20000, 1000),
+                new EarthquakeWindowSplitter(restTemplate, earthquakeUrlHelper, earthquakeUpstreamGuard,
+                        new SyncTaskExecutor(), 5000, 86400000, 1),
+                earthquakeMetrics, earthquakeUpstreamGuard, new EarthquakeBatchPlanner(countryGazetteer));
+
+        storedFeatures = geoJsonStreamingParser.parse(new ByteArrayInputStream(earthquakeResponse), FeatureFilter.NONE)
+                .getFeatures();
+        countryFilter = FeatureFilter.builder().countries(Collections.singletonList("chile")).build();
+        twoCountriesFilter = FeatureFilter.builder().countries(Arrays.asList("chile", "indonesia")).build();
+    }
+
+    @Benchmark
+    public EarthquakeResponse getEarthquakesByCountry() {
+        return earthquakeService.getEarthquakesByCountry("chile", PageRequestDto.UNPAGED);
+    }
+
+    @Benchmark
+    public EarthquakeResponse getEarthquakesByCountriesAndDateRange() {
+        return earthquakeService.getEarthquakesByCountriesAndDateRange("chile", "indonesia", "2019-11-20", "2019-11-21",
+                PageRequestDto.UNPAGED);
+    }
+
+    @Benchmark
+    public List<Feature> filterStoredByCountry() {
+        return storedFeatures.stream().filter(countryFilter::matches).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Feature> filterStoredByTwoCountries() {
+        return storedFeatures.stream().filter(twoCountriesFilter::matches).collect(Collectors.toList());
+    }
+}
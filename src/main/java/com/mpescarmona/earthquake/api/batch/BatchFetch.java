@@ -0,0 +1,33 @@
+package com.mpescarmona.earthquake.api.batch;
+
+import com.mpescarmona.earthquake.api.domain.BatchQueryType;
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.window.TimeWindow;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Call to the EarthQuake USGS service shared by the queries of a batch, each of them taking its part of the
+ * result with a local filter
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchFetch {
+    BatchQueryType type;
+    // the time range of a date range fetch
+    TimeWindow window;
+    // the magnitude range of a magnitude range fetch, null when unbounded
+    Double minMagnitude;
+    Double maxMagnitude;
+    // the area of a country fetch, null for the whole world, and the countries checked while parsing
+    BoundingBox boundingBox;
+    List<String> countries;
+    // the positions in the batch of the queries answered by the fetch
+    List<Integer> queries;
+}
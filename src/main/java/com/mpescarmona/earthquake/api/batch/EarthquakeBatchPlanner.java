@@ -0,0 +1,206 @@
+package com.mpescarmona.earthquake.api.batch;
+
+import com.mpescarmona.earthquake.api.domain.BatchQueryType;
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.dto.BatchQueryRequestDto;
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer;
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import com.mpescarmona.earthquake.api.window.TimeWindow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Plans the fewest calls to the EarthQuake USGS service answering every query of a batch. Date ranges that
+ * overlap or touch are read in one call, as are overlapping magnitude ranges, and countries whose areas overlap
+ * share the call of their joined area, the countries without a known area the call of the whole world. Each
+ * query then takes its part of the shared result with a local filter.
+ */
+@Slf4j
+@Component
+public class EarthquakeBatchPlanner {
+    private final CountryGazetteer countryGazetteer;
+
+    public EarthquakeBatchPlanner(CountryGazetteer countryGazetteer) {
+        this.countryGazetteer = countryGazetteer;
+    }
+
+    /**
+     * Plans the fetches of a batch. Queries missing a value they need, or with values that can not be parsed,
+     * are left out of every fetch.
+     *
+     * @param queries The queries of the batch
+     * @return The fetches answering the queries, each one listing the positions of its queries in the batch
+     */
+    public List<BatchFetch> plan(List<BatchQueryRequestDto> queries) {
+        List<BatchFetch> dateRangeFetches = new ArrayList<>();
+        List<BatchFetch> magnitudeRangeFetches = new ArrayList<>();
+        List<BatchFetch> countryFetches = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            BatchQueryRequestDto query = queries.get(i);
+            int position = i;
+            if (query == null || query.getType() == null) {
+                continue;
+            }
+            switch (query.getType()) {
+                case DATE_RANGE:
+                    toTimeWindow(query).ifPresent(window -> dateRangeFetches.add(BatchFetch.builder()
+                            .type(BatchQueryType.DATE_RANGE)
+                            .window(window)
+                            .queries(single(position))
+                            .build()));
+                    break;
+                case MAGNITUDE_RANGE:
+                    Double minMagnitude = parseMagnitude(query.getMinMagnitude());
+                    Double maxMagnitude = parseMagnitude(query.getMaxMagnitude());
+                    if (isValidMagnitude(query.getMinMagnitude(), minMagnitude)
+                            && isValidMagnitude(query.getMaxMagnitude(), maxMagnitude)
+                            && (minMagnitude == null || maxMagnitude == null || minMagnitude <= maxMagnitude)) {
+                        magnitudeRangeFetches.add(BatchFetch.builder()
+                                .type(BatchQueryType.MAGNITUDE_RANGE)
+                                .minMagnitude(minMagnitude)
+                                .maxMagnitude(maxMagnitude)
+                                .queries(single(position))
+                                .build());
+                    }
+                    break;
+                case COUNTRY:
+                    if (query.getCountry() != null && !query.getCountry().trim().isEmpty()) {
+                        countryFetches.add(BatchFetch.builder()
+                                .type(BatchQueryType.COUNTRY)
+                                .boundingBox(countryGazetteer.findBoundingBox(query.getCountry()).orElse(null))
+                                .countries(new ArrayList<>(Collections.singletonList(query.getCountry())))
+                                .queries(single(position))
+                                .build());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        List<BatchFetch> fetches = new ArrayList<>();
+        fetches.addAll(mergeTimeWindows(dateRangeFetches));
+        fetches.addAll(mergeMagnitudeRanges(magnitudeRangeFetches));
+        fetches.addAll(mergeAreas(countryFetches));
+        fetches.forEach(fetch -> Collections.sort(fetch.getQueries()));
+        log.info("action=plan, queries={}, fetches={}", queries.size(), fetches.size());
+        return fetches;
+    }
+
+    // both ends of the windows are included, so windows a millisecond apart are read together
+    private List<BatchFetch> mergeTimeWindows(List<BatchFetch> fetches) {
+        fetches.sort(Comparator.comparingLong(fetch -> fetch.getWindow().getStartMillis()));
+        List<BatchFetch> merged = new ArrayList<>();
+        BatchFetch current = null;
+        for (BatchFetch fetch : fetches) {
+            if (current != null && fetch.getWindow().getStartMillis() <= current.getWindow().getEndMillis() + 1) {
+                current.getWindow().setEndMillis(Math.max(current.getWindow().getEndMillis(), fetch.getWindow().getEndMillis()));
+                current.getQueries().addAll(fetch.getQueries());
+            } else {
+                current = fetch;
+                merged.add(current);
+            }
+        }
+        return merged;
+    }
+
+    private List<BatchFetch> mergeMagnitudeRanges(List<BatchFetch> fetches) {
+        fetches.sort(Comparator.comparingDouble(fetch -> lowerBound(fetch.getMinMagnitude())));
+        List<BatchFetch> merged = new ArrayList<>();
+        BatchFetch current = null;
+        for (BatchFetch fetch : fetches) {
+            if (current != null && lowerBound(fetch.getMinMagnitude()) <= upperBound(current.getMaxMagnitude())) {
+                double maxMagnitude = Math.max(upperBound(current.getMaxMagnitude()), upperBound(fetch.getMaxMagnitude()));
+                current.setMaxMagnitude(Double.isInfinite(maxMagnitude) ? null : maxMagnitude);
+                current.getQueries().addAll(fetch.getQueries());
+            } else {
+                current = fetch;
+                merged.add(current);
+            }
+        }
+        return merged;
+    }
+
+    // joins the overlapping areas until none is left, a joined area may overlap one it did not before
+    private List<BatchFetch> mergeAreas(List<BatchFetch> fetches) {
+        List<BatchFetch> merged = new ArrayList<>();
+        BatchFetch world = null;
+        for (BatchFetch fetch : fetches) {
+            if (fetch.getBoundingBox() == null) {
+                if (world == null) {
+                    world = fetch;
+                    merged.add(world);
+                } else {
+                    absorb(world, fetch);
+                }
+                continue;
+            }
+            boolean joined = true;
+            while (joined) {
+                joined = false;
+                for (Iterator<BatchFetch> iterator = merged.iterator(); iterator.hasNext(); ) {
+                    BatchFetch other = iterator.next();
+                    if (other.getBoundingBox() != null && other.getBoundingBox().intersects(fetch.getBoundingBox())) {
+                        BoundingBox boundingBox = other.getBoundingBox().union(fetch.getBoundingBox());
+                        absorb(fetch, other);
+                        fetch.setBoundingBox(boundingBox);
+                        iterator.remove();
+                        joined = true;
+                    }
+                }
+            }
+            merged.add(fetch);
+        }
+        return merged;
+    }
+
+    private void absorb(BatchFetch fetch, BatchFetch other) {
+        for (String country : other.getCountries()) {
+            if (fetch.getCountries().stream().noneMatch(known -> known.equalsIgnoreCase(country))) {
+                fetch.getCountries().add(country);
+            }
+        }
+        fetch.getQueries().addAll(other.getQueries());
+    }
+
+    private Optional<TimeWindow> toTimeWindow(BatchQueryRequestDto query) {
+        Optional<Long> startMillis = EarthquakeTimeUtil.parseEpochMillis(query.getStartTime());
+        Optional<Long> endMillis = EarthquakeTimeUtil.parseEpochMillis(query.getEndTime());
+        if (!startMillis.isPresent() || !endMillis.isPresent() || startMillis.get() > endMillis.get()) {
+            return Optional.empty();
+        }
+        return Optional.of(new TimeWindow(startMillis.get(), endMillis.get()));
+    }
+
+    private static List<Integer> single(int position) {
+        return new ArrayList<>(Collections.singletonList(position));
+    }
+
+    private static Double parseMagnitude(String magnitude) {
+        try {
+            return magnitude != null ? Double.valueOf(magnitude.trim()) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    // a given magnitude must be a number
+    private static boolean isValidMagnitude(String magnitude, Double parsed) {
+        return magnitude == null || (parsed != null && !parsed.isNaN() && !parsed.isInfinite());
+    }
+
+    private static double lowerBound(Double magnitude) {
+        return magnitude != null ? magnitude : Double.NEGATIVE_INFINITY;
+    }
+
+    private static double upperBound(Double magnitude) {
+        return magnitude != null ? magnitude : Double.POSITIVE_INFINITY;
+    }
+}
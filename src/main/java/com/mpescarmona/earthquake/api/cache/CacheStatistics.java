@@ -0,0 +1,22 @@
+package com.mpescarmona.earthquake.api.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatistics {
+    long hits;
+    long misses;
+    long coalesced;
+    long revalidated;
+    long stale;
+    long evictions;
+    long size;
+    long weight;
+    int inFlight;
+}
@@ -0,0 +1,211 @@
+package com.mpescarmona.earthquake.api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mpescarmona.earthquake.api.domain.Metadata;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the EarthQuake USGS service responses keyed by url.
+ * Concurrent requests for a url that is not cached share a single in-flight call.
+ * Responses are fresh for ttlMs. Expired responses are kept for revalidateTtlMs more, and handed to the loader
+ * so it can revalidate them with a conditional request instead of downloading them again, or served as they are
+ * while the service is unavailable.
+ */
+@Slf4j
+@Component
+public class EarthquakeResponseCache {
+    private final Cache<String, CachedResponse> cache;
+    private final long ttlMs;
+    private final ConcurrentHashMap<String, CompletableFuture<ResponseEntity<EarthquakeResponse>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+
+    @Autowired
+    public EarthquakeResponseCache(@Value("${earthquake.cache.ttlMs}") long ttlMs,
+                                   @Value("${earthquake.cache.revalidateTtlMs}") long revalidateTtlMs,
+                                   @Value("${earthquake.cache.maximumWeight}") long maximumWeight) {
+        this.ttlMs = ttlMs;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttlMs + revalidateTtlMs, TimeUnit.MILLISECONDS)
+                .maximumWeight(maximumWeight)
+                .weigher((String url, CachedResponse cached) -> weigh(cached.response))
+                .recordStats()
+                .build();
+    }
+
+    public EarthquakeResponseCache(long ttlMs, long maximumWeight) {
+        this(ttlMs, 0, maximumWeight);
+    }
+
+    /**
+     * Gets the response of the url from the cache, calling the loader when it is not cached.
+     * Only successful responses are cached. Every caller gets its own copy of the response.
+     *
+     * @param url    The url of the EarthQuake USGS service
+     * @param loader The call to the EarthQuake USGS service
+     * @return A copy of the response for the url
+     */
+    public ResponseEntity<EarthquakeResponse> get(String url, Supplier<ResponseEntity<EarthquakeResponse>> loader) {
+        return getOrRevalidate(url, stale -> loader.get());
+    }
+
+    /**
+     * Gets the response of the url from the cache, calling the loader when it is not cached or expired.
+     * The loader gets the expired response, or null when there is none, and returns it again when the
+     * EarthQuake USGS service confirms it did not change.
+     *
+     * @param url    The url of the EarthQuake USGS service
+     * @param loader The conditional call to the EarthQuake USGS service
+     * @return A copy of the response for the url
+     */
+    public ResponseEntity<EarthquakeResponse> getOrRevalidate(String url,
+                                                              Function<ResponseEntity<EarthquakeResponse>, ResponseEntity<EarthquakeResponse>> loader) {
+        CachedResponse cached = cache.getIfPresent(url);
+        if (cached != null && isFresh(cached)) {
+            hits.increment();
+            return copy(cached.response);
+        }
+
+        CompletableFuture<ResponseEntity<EarthquakeResponse>> call = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<EarthquakeResponse>> existingCall = inFlight.putIfAbsent(url, call);
+        if (existingCall != null) {
+            coalesced.increment();
+            log.info("action=get, coalesced=true, url={}", url);
+            return copy(join(existingCall));
+        }
+
+        try {
+            ResponseEntity<EarthquakeResponse> response;
+            cached = cache.getIfPresent(url);
+            if (cached != null && isFresh(cached)) {
+                hits.increment();
+                response = cached.response;
+            } else {
+                misses.increment();
+                ResponseEntity<EarthquakeResponse> stale = cached != null ? cached.response : null;
+                response = loader.apply(stale);
+                if (stale != null && response == stale) {
+                    revalidated.increment();
+                    log.info("action=get, revalidated=true, url={}", url);
+                }
+                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                    cache.put(url, new CachedResponse(response, System.currentTimeMillis()));
+                }
+            }
+            call.complete(response);
+            return copy(response);
+        } catch (RuntimeException ex) {
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(url, call);
+        }
+    }
+
+    /**
+     * Gets the expired response of the url, kept for revalidation, without calling the EarthQuake USGS service
+     *
+     * @param url The url of the EarthQuake USGS service
+     * @return A copy of the expired response, or null when the url is not cached or its response is still fresh
+     */
+    public ResponseEntity<EarthquakeResponse> getStale(String url) {
+        CachedResponse cached = cache.getIfPresent(url);
+        if (cached == null || isFresh(cached)) {
+            return null;
+        }
+        stale.increment();
+        return copy(cached.response);
+    }
+
+    /**
+     * Gets the counters of the cache
+     *
+     * @return The current statistics of the cache
+     */
+    public CacheStatistics getStatistics() {
+        return CacheStatistics.builder()
+                .hits(hits.sum())
+                .misses(misses.sum())
+                .coalesced(coalesced.sum())
+                .revalidated(revalidated.sum())
+                .stale(stale.sum())
+                .evictions(cache.stats().evictionCount())
+                .size(cache.estimatedSize())
+                .weight(cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .inFlight(inFlight.size())
+                .build();
+    }
+
+    private boolean isFresh(CachedResponse cached) {
+        return System.currentTimeMillis() - cached.storedAt < ttlMs;
+    }
+
+    private static ResponseEntity<EarthquakeResponse> join(CompletableFuture<ResponseEntity<EarthquakeResponse>> call) {
+        try {
+            return call.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private static int weigh(ResponseEntity<EarthquakeResponse> response) {
+        EarthquakeResponse body = response.getBody();
+        return 1 + (body != null && body.getFeatures() != null ? body.getFeatures().size() : 0);
+    }
+
+    // callers change the features and the count of the response they get, so they never get the cached instance
+    private static ResponseEntity<EarthquakeResponse> copy(ResponseEntity<EarthquakeResponse> response) {
+        EarthquakeResponse body = response.getBody();
+        if (body == null) {
+            return response;
+        }
+        Metadata metadata = body.getMetadata();
+        EarthquakeResponse bodyCopy = EarthquakeResponse.builder()
+                .type(body.getType())
+                .metadata(metadata == null ? null : Metadata.builder()
+                        .generated(metadata.getGenerated())
+                        .url(metadata.getUrl())
+                        .title(metadata.getTitle())
+                        .status(metadata.getStatus())
+                        .api(metadata.getApi())
+                        .count(metadata.getCount())
+                        .build())
+                .features(body.getFeatures() == null ? null : new ArrayList<>(body.getFeatures()))
+                .bbox(body.getBbox())
+                .build();
+        return new ResponseEntity<>(bodyCopy, response.getHeaders(), Objects.requireNonNull(response.getStatusCode()));
+    }
+
+    private static class CachedResponse {
+        private final ResponseEntity<EarthquakeResponse> response;
+        private final long storedAt;
+
+        CachedResponse(ResponseEntity<EarthquakeResponse> response, long storedAt) {
+            this.response = response;
+            this.storedAt = storedAt;
+        }
+    }
+}
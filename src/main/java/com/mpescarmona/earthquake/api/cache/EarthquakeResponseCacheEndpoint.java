@@ -0,0 +1,24 @@
+package com.mpescarmona.earthquake.api.cache;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@Endpoint(id = "earthquakecache")
+public class EarthquakeResponseCacheEndpoint {
+
+    private EarthquakeResponseCache earthquakeResponseCache;
+
+    /**
+     * Exposes the hit, miss and coalesce counters of the response cache
+     *
+     * @return The current statistics of the cache. @See {@link CacheStatistics}
+     */
+    @ReadOperation
+    public CacheStatistics statistics() {
+        return earthquakeResponseCache.getStatistics();
+    }
+}
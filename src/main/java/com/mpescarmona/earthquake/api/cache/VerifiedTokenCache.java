@@ -0,0 +1,130 @@
+package com.mpescarmona.earthquake.api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mpescarmona.earthquake.api.service.impl.JwtUserDetailsService;
+import com.mpescarmona.earthquake.api.util.JwtTokenUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of the JWT tokens already verified, keyed by the SHA-256 digest of the token so the tokens
+ * themselves are not held. A token is parsed and its signature checked once, and its user loaded once, then
+ * later requests with it only look the digest up. Entries expire with their token, or after ttlMs when sooner,
+ * and tokens failing the verification are not cached.
+ */
+@Slf4j
+@Component
+public class VerifiedTokenCache {
+    private final Cache<String, VerifiedToken> cache;
+    private final JwtTokenUtil jwtTokenUtil;
+    private final JwtUserDetailsService jwtUserDetailsService;
+
+    public VerifiedTokenCache(JwtTokenUtil jwtTokenUtil, JwtUserDetailsService jwtUserDetailsService,
+                              @Value("${jwt.cache.maximumSize}") long maximumSize,
+                              @Value("${jwt.cache.ttlMs}") long ttlMs) {
+        this.jwtTokenUtil = jwtTokenUtil;
+        this.jwtUserDetailsService = jwtUserDetailsService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(ttlMs))
+                .build();
+    }
+
+    /**
+     * Gets the user of a token, verifying the token when it was not verified before
+     *
+     * @param token The JWT token of the request, without the Bearer prefix
+     * @return The details of the user of the token, or null if the token is not valid
+     */
+    public UserDetails getUserDetails(String token) {
+        String digest = digest(token);
+        VerifiedToken verifiedToken = cache.get(digest, key -> verify(token));
+        if (verifiedToken == null) {
+            return null;
+        }
+        if (verifiedToken.expiresAt <= System.currentTimeMillis()) {
+            cache.invalidate(digest);
+            return null;
+        }
+        return verifiedToken.userDetails;
+    }
+
+    private VerifiedToken verify(String token) {
+        try {
+            Claims claims = jwtTokenUtil.getAllClaimsFromToken(token);
+            if (claims.getSubject() == null || claims.getExpiration() == null) {
+                log.error("action=verify, error=The token has no subject or expiration");
+                return null;
+            }
+            UserDetails userDetails = jwtUserDetailsService.loadUserByUsername(claims.getSubject());
+            return new VerifiedToken(userDetails, claims.getExpiration().getTime());
+        } catch (IllegalArgumentException ex) {
+            log.error("action=verify, error=Unable to get JWT Token");
+        } catch (ExpiredJwtException ex) {
+            log.error("action=verify, error=JWT Token has expired");
+        } catch (JwtException | UsernameNotFoundException ex) {
+            log.error("action=verify, error={}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class VerifiedToken {
+        private final UserDetails userDetails;
+        private final long expiresAt;
+
+        VerifiedToken(UserDetails userDetails, long expiresAt) {
+            this.userDetails = userDetails;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class TokenExpiry implements Expiry<String, VerifiedToken> {
+        private final long ttlMs;
+
+        TokenExpiry(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+
+        @Override
+        public long expireAfterCreate(String digest, VerifiedToken verifiedToken, long currentTime) {
+            long remainingMs = Math.min(ttlMs, verifiedToken.expiresAt - System.currentTimeMillis());
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, remainingMs));
+        }
+
+        @Override
+        public long expireAfterUpdate(String digest, VerifiedToken verifiedToken, long currentTime,
+                                      long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String digest, VerifiedToken verifiedToken, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mpescarmona.earthquake.api.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Slf4j
+@Configuration
+public class ExecutorConfiguration {
+    @Value("${earthquake.executor.corePoolSize}")
+    private int corePoolSize;
+    @Value("${earthquake.executor.maxPoolSize}")
+    private int maxPoolSize;
+    @Value("${earthquake.executor.queueCapacity}")
+    private int queueCapacity;
+    @Value("${earthquake.window.poolSize}")
+    private int windowPoolSize;
+    @Value("${earthquake.window.queueCapacity}")
+    private int windowQueueCapacity;
+    @Value("${earthquake.request.corePoolSize}")
+    private int requestCorePoolSize;
+    @Value("${earthquake.request.maxPoolSize}")
+    private int requestMaxPoolSize;
+    @Value("${earthquake.request.queueCapacity}")
+    private int requestQueueCapacity;
+    @Value("${earthquake.request.virtualThreads}")
+    private boolean requestVirtualThreads;
+    @Value("${earthquake.feed.poolSize}")
+    private int feedPoolSize;
+    @Value("${earthquake.feed.maxSubscribers}")
+    private int feedMaxSubscribers;
+
+    /**
+     * Bounded executor used to fan out the calls to the EarthQuake USGS service.
+     * When it is saturated the calling thread runs the task, so the fan-out degrades to sequential calls.
+     *
+     * @return The executor for the EarthQuake USGS service calls
+     */
+    @Bean
+    public ThreadPoolTaskExecutor earthquakeTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("earthquake-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * Bounded executor reading the time windows of wide date ranges. It is separate from the fan-out executor,
+     * whose tasks wait for the windows of their range, so those tasks can not take every thread.
+     *
+     * @return The executor for the time window calls
+     */
+    @Bean
+    public ThreadPoolTaskExecutor earthquakeWindowExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(windowPoolSize);
+        executor.setMaxPoolSize(windowPoolSize);
+        executor.setQueueCapacity(windowQueueCapacity);
+        executor.setThreadNamePrefix("earthquake-window-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * Bounded executor running the queries of the controller, so the servlet threads are given back while the
+     * EarthQuake USGS service is called. When it is saturated the query is rejected, instead of taking a servlet
+     * thread. With virtualThreads, on JDK 21 or newer, every query runs on its own virtual thread, at most
+     * maxPoolSize plus queueCapacity at a time.
+     *
+     * @return The executor for the queries of the controller
+     */
+    @Bean
+    public TaskExecutor earthquakeRequestExecutor() {
+        if (requestVirtualThreads) {
+            Optional<VirtualThreadTaskExecutor> virtualThreadExecutor =
+                    VirtualThreadTaskExecutor.create(requestMaxPoolSize + requestQueueCapacity);
+            if (virtualThreadExecutor.isPresent()) {
+                log.info("action=earthquakeRequestExecutor, virtualThreads=true");
+                return virtualThreadExecutor.get();
+            }
+            log.error("action=earthquakeRequestExecutor, error=virtual threads are not available, using a thread pool");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(requestCorePoolSize);
+        executor.setMaxPoolSize(requestMaxPoolSize);
+        executor.setQueueCapacity(requestQueueCapacity);
+        executor.setThreadNamePrefix("earthquake-request-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * Bounded executor writing the events of the live feed to its subscribers, at most one task per subscriber.
+     * It keeps the poller from waiting on the clients, a slow one only takes a thread while its buffer fills.
+     *
+     * @return The executor for the events of the live feed
+     */
+    @Bean
+    public ThreadPoolTaskExecutor earthquakeFeedExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(feedPoolSize);
+        executor.setMaxPoolSize(feedPoolSize);
+        executor.setQueueCapacity(feedMaxSubscribers);
+        executor.setThreadNamePrefix("earthquake-feed-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
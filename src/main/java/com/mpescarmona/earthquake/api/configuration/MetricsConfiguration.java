@@ -0,0 +1,62 @@
+package com.mpescarmona.earthquake.api.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import com.mpescarmona.earthquake.api.metrics.TimedJackson2CborHttpMessageConverter;
+import com.mpescarmona.earthquake.api.metrics.TimedJackson2HttpMessageConverter;
+import com.mpescarmona.earthquake.api.metrics.TimedJackson2SmileHttpMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+@Configuration
+public class MetricsConfiguration {
+    /**
+     * JSON converter used by the controllers in place of the default one, timing the serialization of the
+     * response bodies
+     *
+     * @param objectMapper      The object mapper of the application
+     * @param earthquakeMetrics The metrics of the earthquake queries
+     * @return The timed JSON converter
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                   EarthquakeMetrics earthquakeMetrics) {
+        return new TimedJackson2HttpMessageConverter(objectMapper, earthquakeMetrics);
+    }
+
+    /**
+     * CBOR converter used by the controllers in place of the default one, with the settings of the JSON object
+     * mapper and timing the serialization of the response bodies
+     *
+     * @param objectMapperBuilder The builder of the object mapper of the application, a new one per injection
+     * @param earthquakeMetrics   The metrics of the earthquake queries
+     * @return The timed CBOR converter
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter mappingJackson2CborHttpMessageConverter(
+            Jackson2ObjectMapperBuilder objectMapperBuilder, EarthquakeMetrics earthquakeMetrics) {
+        return new TimedJackson2CborHttpMessageConverter(objectMapperBuilder.factory(new CBORFactory()).build(),
+                earthquakeMetrics);
+    }
+
+    /**
+     * Smile converter used by the controllers in place of the default one, with the settings of the JSON object
+     * mapper and timing the serialization of the response bodies
+     *
+     * @param objectMapperBuilder The builder of the object mapper of the application, a new one per injection
+     * @param earthquakeMetrics   The metrics of the earthquake queries
+     * @return The timed Smile converter
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter mappingJackson2SmileHttpMessageConverter(
+            Jackson2ObjectMapperBuilder objectMapperBuilder, EarthquakeMetrics earthquakeMetrics) {
+        return new TimedJackson2SmileHttpMessageConverter(objectMapperBuilder.factory(new SmileFactory()).build(),
+                earthquakeMetrics);
+    }
+}
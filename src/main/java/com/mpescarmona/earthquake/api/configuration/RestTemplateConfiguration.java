@@ -1,22 +1,80 @@
 package com.mpescarmona.earthquake.api.configuration;
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class RestTemplateConfiguration {
-    static final int SOCKET_TIMEOUT = 120000;
     static final int CONNECTION_TIMEOUT = 5000;
 
+    @Value("${earthquake.http.maxTotalConnections}")
+    private int maxTotalConnections;
+    @Value("${earthquake.http.maxConnectionsPerRoute}")
+    private int maxConnectionsPerRoute;
+    @Value("${earthquake.http.keepAliveMs}")
+    private long keepAliveMs;
+    @Value("${earthquake.http.idleEvictionMs}")
+    private long idleEvictionMs;
+    @Value("${earthquake.http.connectionRequestTimeoutMs}")
+    private int connectionRequestTimeoutMs;
+    @Value("${earthquake.http.socketTimeoutMs}")
+    private int socketTimeoutMs;
+
+    /**
+     * Pool of keep-alive connections to the EarthQuake USGS service, shared by every request
+     *
+     * @return The connection manager of the HTTP client
+     */
+    @Bean
+    public PoolingHttpClientConnectionManager earthquakeConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(CONNECTION_TIMEOUT);
+        return connectionManager;
+    }
+
+    /**
+     * HTTP client reusing the pooled connections. It sends Accept-Encoding: gzip,deflate and decompresses the
+     * responses, keeps connections alive for the time the server allows, at most keepAliveMs, and evicts the
+     * connections idle for longer than idleEvictionMs.
+     *
+     * @param earthquakeConnectionManager The connection pool
+     * @return The HTTP client for the EarthQuake USGS service calls
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient earthquakeHttpClient(PoolingHttpClientConnectionManager earthquakeConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(earthquakeConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(CONNECTION_TIMEOUT)
+                        .setSocketTimeout(socketTimeoutMs)
+                        .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                        .build())
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
+    public RestTemplate restTemplate(CloseableHttpClient earthquakeHttpClient) {
         return new RestTemplateBuilder()
-                .setReadTimeout(Duration.ofMillis(SOCKET_TIMEOUT))
-                .setConnectTimeout(Duration.ofMillis(CONNECTION_TIMEOUT))
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(earthquakeHttpClient))
                 .build();
     }
 }
@@ -0,0 +1,14 @@
+package com.mpescarmona.earthquake.api.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs the scheduled jobs, the delta sync, the snapshots of the store and the polls and heartbeats of the live
+ * feed, on the scheduler configured by spring.task.scheduling. Its pool has a thread per job, so a long sync or
+ * snapshot does not hold up the live feed.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
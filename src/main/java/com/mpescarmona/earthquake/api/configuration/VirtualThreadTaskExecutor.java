@@ -0,0 +1,68 @@
+package com.mpescarmona.earthquake.api.configuration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs every task on a new virtual thread, rejecting the tasks over the limit of running ones instead of
+ * queueing them. The executor is looked up by reflection, so the application still builds and runs on the JDKs
+ * without virtual threads.
+ */
+final class VirtualThreadTaskExecutor implements TaskExecutor, DisposableBean {
+    private final ExecutorService executorService;
+    private final Semaphore permits;
+    private final int maxRunningTasks;
+
+    private VirtualThreadTaskExecutor(ExecutorService executorService, int maxRunningTasks) {
+        this.executorService = executorService;
+        this.permits = new Semaphore(maxRunningTasks);
+        this.maxRunningTasks = maxRunningTasks;
+    }
+
+    /**
+     * Creates the executor when the JDK has virtual threads
+     *
+     * @param maxRunningTasks The tasks that can run at the same time
+     * @return The executor, or empty before JDK 21
+     */
+    static Optional<VirtualThreadTaskExecutor> create(int maxRunningTasks) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of(new VirtualThreadTaskExecutor((ExecutorService) factory.invoke(null), maxRunningTasks));
+        } catch (ReflectiveOperationException ex) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            throw new TaskRejectedException("More than " + maxRunningTasks + " tasks running");
+        }
+        try {
+            executorService.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            throw new TaskRejectedException("Executor shut down", ex);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdown();
+    }
+}
@@ -0,0 +1,47 @@
+package com.mpescarmona.earthquake.api.configuration;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@ConditionalOnProperty(name = "earthquake.service.mode", havingValue = "reactive")
+public class WebClientConfiguration {
+    @Value("${earthquake.http.maxTotalConnections}")
+    private int maxTotalConnections;
+    @Value("${earthquake.http.connectionRequestTimeoutMs}")
+    private long connectionRequestTimeoutMs;
+    @Value("${earthquake.http.socketTimeoutMs}")
+    private long socketTimeoutMs;
+
+    /**
+     * Non-blocking client for the EarthQuake USGS service, running on the Netty event loop.
+     * It shares the connection limits of the blocking client and negotiates gzip compression.
+     * Responses are decoded in memory, up to spring.codec.max-in-memory-size.
+     *
+     * @param webClientBuilder The builder configured with the application codecs
+     * @return The web client for the EarthQuake USGS service calls
+     */
+    @Bean
+    public WebClient earthquakeWebClient(WebClient.Builder webClientBuilder) {
+        HttpClient httpClient = HttpClient.create(ConnectionProvider.fixed("earthquake", maxTotalConnections,
+                connectionRequestTimeoutMs))
+                .compress(true)
+                .tcpConfiguration(tcpClient -> tcpClient
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, RestTemplateConfiguration.CONNECTION_TIMEOUT)
+                        .doOnConnected(connection -> connection.addHandlerLast(
+                                new ReadTimeoutHandler(socketTimeoutMs, TimeUnit.MILLISECONDS))));
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
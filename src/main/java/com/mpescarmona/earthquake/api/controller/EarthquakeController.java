@@ -1,12 +1,29 @@
 package com.mpescarmona.earthquake.api.controller;
 
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeBatchResponse;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeEncoding;
 import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeStatsResponse;
+import com.mpescarmona.earthquake.api.dto.BatchQueryRequestDto;
+import com.mpescarmona.earthquake.api.dto.BatchRequestDto;
+import com.mpescarmona.earthquake.api.dto.BoundingBoxRequestDto;
 import com.mpescarmona.earthquake.api.dto.CountriesAndDateRangeRequestDto;
 import com.mpescarmona.earthquake.api.dto.CountryRequestDto;
 import com.mpescarmona.earthquake.api.dto.DateAndMagnitudeRangesByCountryRequestDto;
 import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto;
 import com.mpescarmona.earthquake.api.dto.DateRangesRequestDto;
 import com.mpescarmona.earthquake.api.dto.MagnitudeRangeRequestDto;
+import com.mpescarmona.earthquake.api.dto.NearbyRequestDto;
+import com.mpescarmona.earthquake.api.dto.PageRequestDto;
+import com.mpescarmona.earthquake.api.dto.StatsRequestDto;
+import com.mpescarmona.earthquake.api.dto.StreamRequestDto;
+import com.mpescarmona.earthquake.api.feed.EarthquakeFeed;
+import com.mpescarmona.earthquake.api.helper.EarthquakeAsyncHelper;
+import com.mpescarmona.earthquake.api.helper.EarthquakeHttpCacheHelper;
+import com.mpescarmona.earthquake.api.helper.EarthquakeStreamHelper;
+import com.mpescarmona.earthquake.api.resilience.UpstreamErrorException;
+import com.mpescarmona.earthquake.api.resilience.UpstreamUnavailableException;
 import com.mpescarmona.earthquake.api.service.IEarthquakeService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -14,146 +31,649 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 
 @Api(value = "Earthquake Controller")
 @Slf4j
 @RestController
 @AllArgsConstructor
+@ConditionalOnProperty(name = "earthquake.service.mode", havingValue = "blocking", matchIfMissing = true)
 public class EarthquakeController {
+    // the retry of a subscription refused by a full feed, which frees up as clients disconnect
+    static final String FULL_RETRY_AFTER_SECONDS = "5";
 
     private IEarthquakeService earthquakeService;
+    private EarthquakeHttpCacheHelper earthquakeHttpCacheHelper;
+    private EarthquakeStreamHelper earthquakeStreamHelper;
+    private EarthquakeAsyncHelper earthquakeAsyncHelper;
+    private EarthquakeFeed earthquakeFeed;
 
     /**
      * Retrieves the earthquakes between a date range
      *
      * @param dateRangeRequestDto The start and end date ranges to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
      * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}
      */
     @ApiOperation(value = "Get all the earthquakes between a date range")
     @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date range")})
     @GetMapping(path = "/daterange",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getEarthquakesByDateRange(@RequestBody DateRangeRequestDto dateRangeRequestDto) {
-        log.info("action=getEarthquakesByDateRange");
-        EarthquakeResponse response = earthquakeService.getEarthquakesByDateRange(
-                dateRangeRequestDto.getStartTime(),
-                dateRangeRequestDto.getEndTime());
-        log.info("action=getEarthquakesByDateRange, earthquakes={}", response);
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesByDateRange(
+            @RequestBody DateRangeRequestDto dateRangeRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByDateRange",
+                () -> new ResponseEntity<>(
+                        findEarthquakesByDateRange(dateRangeRequestDto, pageRequestDto),
+                        HttpStatus.OK));
+    }
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    /**
+     * Retrieves the earthquakes between a date range, taking the startTime and endTime from the query string.
+     * The response carries an ETag and Cache-Control, so HTTP caches can store it and revalidate it.
+     *
+     * @param dateRangeRequestDto The start and end date ranges to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes between a date range, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date range"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/daterange",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByDateRange(
+            @ModelAttribute DateRangeRequestDto dateRangeRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByDateRange",
+                () -> earthquakeHttpCacheHelper.buildCacheableResponse(
+                        findEarthquakesByDateRange(dateRangeRequestDto, pageRequestDto),
+                        accept));
+    }
+
+    /**
+     * Streams the earthquakes between a date range as newline delimited JSON, taking the startTime and endTime from the query string.
+     * The earthquakes are written a call to the EarthQuake USGS service at a time, up to maxLimit of them, and a wide
+     * range is read in windows, so it does not have to fit in memory.
+     *
+     * @param dateRangeRequestDto The start and end date ranges to get the earthquakes
+     * @return A response writing one {@link com.mpescarmona.earthquake.api.domain.Feature} per line
+     */
+    @ApiOperation(value = "Stream all the earthquakes between a date range as newline delimited JSON")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Stream all the earthquakes in the specified date range")})
+    @GetMapping(path = "/daterange",
+            produces = EarthquakeStreamHelper.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEarthquakesByDateRange(@ModelAttribute DateRangeRequestDto dateRangeRequestDto) {
+        log.info("action=streamEarthquakesByDateRange");
+        return earthquakeStreamHelper.buildStreamingResponse(featureConsumer -> earthquakeService.streamEarthquakesByDateRange(
+                dateRangeRequestDto.getStartTime(),
+                dateRangeRequestDto.getEndTime(),
+                featureConsumer));
     }
 
     /**
-     * Retrieves the earthquakes between two date ranges
+     * Retrieves the earthquakes between two date ranges, or between every date range of the list when given
      *
-     * @param dateRangesRequestDto The start and end dates of first and second  date ranges
+     * @param dateRangesRequestDto The start and end dates of first and second  date ranges, or the list of date ranges
+     * @param pageRequestDto The limit, cursor and order of the page
      * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}
      */
-    @ApiOperation(value = "Get all the earthquakes between two date ranges")
-    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the two specified date ranges")})
+    @ApiOperation(value = "Get all the earthquakes between two or more date ranges")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date ranges")})
     @GetMapping(path = "/dateranges",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getEarthquakesByDateRanges(@RequestBody DateRangesRequestDto dateRangesRequestDto) {
-        log.info("action=getEarthquakesByDateRanges");
-        EarthquakeResponse response = earthquakeService.getEarthquakesByDateRanges(
-                dateRangesRequestDto.getStartTime1(),
-                dateRangesRequestDto.getEndTime1(),
-                dateRangesRequestDto.getStartTime2(),
-                dateRangesRequestDto.getEndTime2());
-        log.info("action=getEarthquakesByDateRanges, earthquakes={}", response);
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesByDateRanges(
+            @RequestBody DateRangesRequestDto dateRangesRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByDateRanges",
+                () -> new ResponseEntity<>(
+                        findEarthquakesByDateRanges(dateRangesRequestDto, pageRequestDto),
+                        HttpStatus.OK));
+    }
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    /**
+     * Retrieves the earthquakes between two date ranges, or between every date range of the list when given, taking the startTime1, endTime1, startTime2 and endTime2, or dateRanges[i].startTime and dateRanges[i].endTime from the query string.
+     * The response carries an ETag and Cache-Control, so HTTP caches can store it and revalidate it.
+     *
+     * @param dateRangesRequestDto The start and end dates of first and second  date ranges, or the list of date ranges
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes between two or more date ranges, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date ranges"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/dateranges",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByDateRanges(
+            @ModelAttribute DateRangesRequestDto dateRangesRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByDateRanges",
+                () -> earthquakeHttpCacheHelper.buildCacheableResponse(
+                        findEarthquakesByDateRanges(dateRangesRequestDto, pageRequestDto),
+                        accept));
     }
 
     /**
      * Retrieves the earthquakes between a magnitude range
      *
      * @param magnitudeRangeRequestDto The minimum and maximum magnitude range to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
      * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}
      */
     @ApiOperation(value = "Get all the earthquakes between two magnitude values")
     @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the two specified magnitude values")})
     @GetMapping(path = "/magnituderange",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getEarthquakesByMagnitudeRange(@RequestBody MagnitudeRangeRequestDto magnitudeRangeRequestDto) {
-        log.info("action=getEarthquakesByMagnitudeRange");
-        EarthquakeResponse response = earthquakeService.getEarthquakesByMagnitudeRange(
-                magnitudeRangeRequestDto.getMinMagnitude(),
-                magnitudeRangeRequestDto.getMaxMagnitude());
-        log.info("action=getEarthquakesByMagnitudeRange, earthquakes={}", response);
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesByMagnitudeRange(
+            @RequestBody MagnitudeRangeRequestDto magnitudeRangeRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByMagnitudeRange",
+                () -> new ResponseEntity<>(
+                        findEarthquakesByMagnitudeRange(magnitudeRangeRequestDto, pageRequestDto),
+                        HttpStatus.OK));
+    }
+
+    /**
+     * Retrieves the earthquakes between a magnitude range, taking the minMagnitude and maxMagnitude from the query string.
+     * The response carries an ETag and Cache-Control, so HTTP caches can store it and revalidate it.
+     *
+     * @param magnitudeRangeRequestDto The minimum and maximum magnitude range to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes between two magnitude values, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the two specified magnitude values"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/magnituderange",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByMagnitudeRange(
+            @ModelAttribute MagnitudeRangeRequestDto magnitudeRangeRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByMagnitudeRange",
+                () -> earthquakeHttpCacheHelper.buildCacheableResponse(
+                        findEarthquakesByMagnitudeRange(magnitudeRangeRequestDto, pageRequestDto),
+                        accept));
+    }
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    /**
+     * Streams the earthquakes between a magnitude range as newline delimited JSON, taking the minMagnitude and maxMagnitude from the query string.
+     * The earthquakes are written once the call to the EarthQuake USGS service reading them ends, up to maxLimit of them.
+     *
+     * @param magnitudeRangeRequestDto The minimum and maximum magnitude range to get the earthquakes
+     * @return A response writing one {@link com.mpescarmona.earthquake.api.domain.Feature} per line
+     */
+    @ApiOperation(value = "Stream all the earthquakes between two magnitude values as newline delimited JSON")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Stream all the earthquakes in the two specified magnitude values")})
+    @GetMapping(path = "/magnituderange",
+            produces = EarthquakeStreamHelper.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEarthquakesByMagnitudeRange(@ModelAttribute MagnitudeRangeRequestDto magnitudeRangeRequestDto) {
+        log.info("action=streamEarthquakesByMagnitudeRange");
+        return earthquakeStreamHelper.buildStreamingResponse(featureConsumer -> earthquakeService.streamEarthquakesByMagnitudeRange(
+                magnitudeRangeRequestDto.getMinMagnitude(),
+                magnitudeRangeRequestDto.getMaxMagnitude(),
+                featureConsumer));
     }
 
     /**
      * Retrieves the earthquakes occurred in the given country
      *
      * @param countryRequestDto The country to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
      * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}
      */
     @ApiOperation(value = "Get all the earthquakes in the specified country")
     @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified country")})
     @GetMapping(path = "/country",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getEarthquakesByCountry(@RequestBody CountryRequestDto countryRequestDto) {
-        log.info("action=getEarthquakesByCountry");
-        EarthquakeResponse response = earthquakeService.getEarthquakesByCountry(countryRequestDto.getCountry());
-        log.info("action=getEarthquakesByCountry, earthquakes={}", response);
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesByCountry(
+            @RequestBody CountryRequestDto countryRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByCountry",
+                () -> new ResponseEntity<>(
+                        findEarthquakesByCountry(countryRequestDto, pageRequestDto),
+                        HttpStatus.OK));
+    }
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    /**
+     * Retrieves the earthquakes occurred in the given country, taking the country from the query string.
+     * The response carries an ETag and Cache-Control, so HTTP caches can store it and revalidate it.
+     *
+     * @param countryRequestDto The country to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes in the specified country, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified country"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/country",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByCountry(
+            @ModelAttribute CountryRequestDto countryRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByCountry",
+                () -> earthquakeHttpCacheHelper.buildCacheableResponse(
+                        findEarthquakesByCountry(countryRequestDto, pageRequestDto),
+                        accept));
+    }
+
+    /**
+     * Streams the earthquakes occurred in the given country as newline delimited JSON, taking the country from the query string.
+     * The earthquakes are written once the call to the EarthQuake USGS service reading them ends, up to maxLimit of them.
+     *
+     * @param countryRequestDto The country to get the earthquakes
+     * @return A response writing one {@link com.mpescarmona.earthquake.api.domain.Feature} per line
+     */
+    @ApiOperation(value = "Stream all the earthquakes in the specified country as newline delimited JSON")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Stream all the earthquakes in the specified country")})
+    @GetMapping(path = "/country",
+            produces = EarthquakeStreamHelper.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEarthquakesByCountry(@ModelAttribute CountryRequestDto countryRequestDto) {
+        log.info("action=streamEarthquakesByCountry");
+        return earthquakeStreamHelper.buildStreamingResponse(featureConsumer -> earthquakeService.streamEarthquakesByCountry(
+                countryRequestDto.getCountry(),
+                featureConsumer));
     }
 
     /**
      * Retrieves the earthquakes occurred in the two given countries and between a date range
      *
      * @param countriesAndDateRangeRequestDto The first country and second country and the date ranges to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
      * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}
      */
     @ApiOperation(value = "Get all the earthquakes in the specified countries and between a date range")
     @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified countries and between a date range")})
     @GetMapping(path = "/countries",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getEarthquakesByCountriesAndDateRange(
-            @RequestBody CountriesAndDateRangeRequestDto countriesAndDateRangeRequestDto) {
-        log.info("action=getEarthquakesByCountriesAndDateRange");
-        EarthquakeResponse response = earthquakeService.getEarthquakesByCountriesAndDateRange(
-                countriesAndDateRangeRequestDto.getCountryOne(),
-                countriesAndDateRangeRequestDto.getCountryTwo(),
-                countriesAndDateRangeRequestDto.getStartTime(),
-                countriesAndDateRangeRequestDto.getEndTime());
-        log.info("action=getEarthquakesByCountriesAndDateRange, earthquakes={}", response);
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesByCountriesAndDateRange(
+            @RequestBody CountriesAndDateRangeRequestDto countriesAndDateRangeRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByCountriesAndDateRange",
+                () -> new ResponseEntity<>(
+                        findEarthquakesByCountriesAndDateRange(countriesAndDateRangeRequestDto, pageRequestDto),
+                        HttpStatus.OK));
+    }
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    /**
+     * Retrieves the earthquakes occurred in the two given countries and between a date range, taking the countryOne, countryTwo, startTime and endTime from the query string.
+     * The response carries an ETag and Cache-Control, so HTTP caches can store it and revalidate it.
+     *
+     * @param countriesAndDateRangeRequestDto The first country and second country and the date ranges to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes in the specified countries and between a date range, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified countries and between a date range"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/countries",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByCountriesAndDateRange(
+            @ModelAttribute CountriesAndDateRangeRequestDto countriesAndDateRangeRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByCountriesAndDateRange",
+                () -> earthquakeHttpCacheHelper.buildCacheableResponse(
+                        findEarthquakesByCountriesAndDateRange(countriesAndDateRangeRequestDto, pageRequestDto),
+                        accept));
     }
 
     /**
      * Retrieves the earthquakes between a date range, a magnitude range, and coming from a country
      *
      * @param dateAndMagnitudeRangesByCountryRequestDto The date range and magnitude range by country to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
      * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}
      */
     @ApiOperation(value = "Get all the earthquakes between a date range, a magnitude range, and coming from a country")
     @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date range, magnitude range, and country")})
     @GetMapping(path = "/daterange/magnituderange/country",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getEarthquakesByDateRangeAndMagnitudeRangeByCountry(
-            @RequestBody DateAndMagnitudeRangesByCountryRequestDto dateAndMagnitudeRangesByCountryRequestDto) {
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesByDateRangeAndMagnitudeRangeByCountry(
+            @RequestBody DateAndMagnitudeRangesByCountryRequestDto dateAndMagnitudeRangesByCountryRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByDateRangeAndMagnitudeRangeAndCountry",
+                () -> new ResponseEntity<>(
+                        findEarthquakesByDateRangeAndMagnitudeRangeAndCountry(
+                                dateAndMagnitudeRangesByCountryRequestDto,
+                                pageRequestDto),
+                        HttpStatus.OK));
+    }
+
+    /**
+     * Retrieves the earthquakes between a date range, a magnitude range, and coming from a country, taking the startTime, endTime, minMagnitude, maxMagnitude and country from the query string.
+     * The response carries an ETag and Cache-Control, so HTTP caches can store it and revalidate it.
+     *
+     * @param dateAndMagnitudeRangesByCountryRequestDto The date range and magnitude range by country to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes between a date range, a magnitude range, and coming from a country, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date range, magnitude range, and country"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/daterange/magnituderange/country",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByDateRangeAndMagnitudeRangeByCountry(
+            @ModelAttribute DateAndMagnitudeRangesByCountryRequestDto dateAndMagnitudeRangesByCountryRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByDateRangeAndMagnitudeRangeAndCountry",
+                () -> earthquakeHttpCacheHelper.buildCacheableResponse(
+                        findEarthquakesByDateRangeAndMagnitudeRangeAndCountry(
+                                dateAndMagnitudeRangesByCountryRequestDto,
+                                pageRequestDto),
+                        accept));
+    }
+
+    /**
+     * Retrieves the earthquakes within a distance of a point, taking the latitude, longitude, radiusKm and the optional startTime, endTime, minMagnitude and maxMagnitude from the query string.
+     * Date ranges held by the store are answered from its spatial index, without calling the EarthQuake USGS service.
+     *
+     * @param nearbyRequestDto The point, the radius and the date and magnitude ranges to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes within a radius of a point, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes within the specified radius of the point"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/nearby",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesNearby(
+            @ModelAttribute NearbyRequestDto nearbyRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesNearby", () -> {
+            log.info("action=getEarthquakesNearby");
+            EarthquakeResponse response = earthquakeService.getEarthquakesNearby(
+                    nearbyRequestDto.getLatitude(),
+                    nearbyRequestDto.getLongitude(),
+                    nearbyRequestDto.getRadiusKm(),
+                    nearbyRequestDto.getStartTime(),
+                    nearbyRequestDto.getEndTime(),
+                    nearbyRequestDto.getMinMagnitude(),
+                    nearbyRequestDto.getMaxMagnitude(),
+                    pageRequestDto);
+            log.info("action=getEarthquakesNearby, earthquakes={}", response);
+            return earthquakeHttpCacheHelper.buildCacheableResponse(response, accept);
+        });
+    }
+
+    /**
+     * Retrieves the earthquakes inside a bounding box, taking the minLatitude, maxLatitude, minLongitude, maxLongitude and the optional startTime, endTime, minMagnitude and maxMagnitude from the query string.
+     * Date ranges held by the store are answered from its spatial index, without calling the EarthQuake USGS service.
+     *
+     * @param boundingBoxRequestDto The box and the date and magnitude ranges to get the earthquakes
+     * @param pageRequestDto The limit, cursor and order of the page
+     * @param accept The Accept header, choosing the encoding of the response and its ETag
+     * @return A response containing the EarthquakeResponse {@link EarthquakeResponse}, or 304 when it matches If-None-Match
+     */
+    @ApiOperation(value = "Get all the earthquakes inside a bounding box, cacheable")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes inside the specified bounding box"),
+            @ApiResponse(code = 304, message = "The earthquakes did not change since the given ETag")})
+    @GetMapping(path = "/bbox",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getCacheableEarthquakesByBoundingBox(
+            @ModelAttribute BoundingBoxRequestDto boundingBoxRequestDto,
+            @ModelAttribute PageRequestDto pageRequestDto,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesByBoundingBox", () -> {
+            log.info("action=getEarthquakesByBoundingBox");
+            EarthquakeResponse response = earthquakeService.getEarthquakesByBoundingBox(
+                    boundingBoxRequestDto.toBoundingBox(),
+                    boundingBoxRequestDto.getStartTime(),
+                    boundingBoxRequestDto.getEndTime(),
+                    boundingBoxRequestDto.getMinMagnitude(),
+                    boundingBoxRequestDto.getMaxMagnitude(),
+                    pageRequestDto);
+            log.info("action=getEarthquakesByBoundingBox, earthquakes={}", response);
+            return earthquakeHttpCacheHelper.buildCacheableResponse(response, accept);
+        });
+    }
+
+    /**
+     * Retrieves the statistics of the earthquakes between a date range, taking the startTime, endTime and groupBy from the query string.
+     * The statistics are kept by the store as the earthquakes are loaded, so a few groups replace the whole list of earthquakes.
+     *
+     * @param statsRequestDto The date range and the dimensions to group by, any of day, magnitude and region
+     * @return A response containing the EarthquakeStatsResponse {@link EarthquakeStatsResponse}
+     */
+    @ApiOperation(value = "Get the counts, magnitudes and significance of the earthquakes between a date range")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get the statistics of the earthquakes in the specified date range")})
+    @GetMapping(path = "/stats",
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakeStats(@ModelAttribute StatsRequestDto statsRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakeStats", () -> {
+            log.info("action=getEarthquakeStats");
+            EarthquakeStatsResponse response = earthquakeService.getEarthquakeStats(
+                    statsRequestDto.getStartTime(),
+                    statsRequestDto.getEndTime(),
+                    statsRequestDto.getGroupBy());
+            log.info("action=getEarthquakeStats, stats={}", response);
+            return new ResponseEntity<>(requireResponse(response), HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Retrieves the earthquakes of every date range, magnitude range and country query of a batch.
+     * Queries whose results overlap share one call to the EarthQuake USGS service, and the calls run in parallel.
+     *
+     * @param batchRequestDto The queries of the batch, each one with an id, a type and the values of its type
+     * @return A response containing the EarthquakeBatchResponse {@link EarthquakeBatchResponse}
+     */
+    @ApiOperation(value = "Get the earthquakes of a batch of date range, magnitude range and country queries")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get the earthquakes of every query of the batch")})
+    @PostMapping(path = "/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_JSON_VALUE,
+                    EarthquakeEncoding.APPLICATION_CBOR_VALUE,
+                    EarthquakeEncoding.APPLICATION_SMILE_VALUE})
+    public DeferredResult<ResponseEntity<?>> getEarthquakesInBatch(@RequestBody BatchRequestDto batchRequestDto) {
+        return earthquakeAsyncHelper.supplyAsync("getEarthquakesInBatch", () -> {
+            log.info("action=getEarthquakesInBatch");
+            List<BatchQueryRequestDto> queries = batchRequestDto.getQueries() != null
+                    ? batchRequestDto.getQueries() : Collections.emptyList();
+            EarthquakeBatchResponse response = earthquakeService.getEarthquakesInBatch(queries);
+            log.info("action=getEarthquakesInBatch, results={}", response);
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Streams the earthquakes inserted, updated or deleted from now on as Server-Sent Events, taking the optional minMagnitude, maxMagnitude and country from the query string.
+     * One poller reads the EarthQuake USGS service for every subscriber, and a subscriber reading slower than the earthquakes arrive is dropped, to reconnect.
+     *
+     * @param streamRequestDto The magnitude range and the country of the earthquakes to stream
+     * @return A response sending one {@link com.mpescarmona.earthquake.api.domain.Feature} per event, 400 when the filter is not valid or 503 when too many clients are subscribed
+     */
+    @ApiOperation(value = "Stream the new and updated earthquakes as Server-Sent Events")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Stream the earthquakes matching the filter as they arrive"),
+            @ApiResponse(code = 400, message = "The magnitude range is not valid"),
+            @ApiResponse(code = 503, message = "Too many clients are subscribed")})
+    @GetMapping(path = "/stream",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEarthquakes(@ModelAttribute StreamRequestDto streamRequestDto) {
+        log.info("action=streamEarthquakes");
+        Optional<FeatureFilter> filter = earthquakeFeed.buildFilter(
+                streamRequestDto.getMinMagnitude(),
+                streamRequestDto.getMaxMagnitude(),
+                streamRequestDto.getCountry());
+        if (!filter.isPresent()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return earthquakeFeed.subscribe(filter.get())
+                .map(emitter -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noStore())
+                        .body(emitter))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, FULL_RETRY_AFTER_SECONDS)
+                        .cacheControl(CacheControl.noStore())
+                        .build());
+    }
+
+    /**
+     * Answers the requests rejected while the EarthQuake USGS service is unavailable, when there is no stale
+     * response to serve instead
+     *
+     * @param ex The rejection of the call to the EarthQuake USGS service
+     * @return A 503 Service Unavailable response telling when to retry
+     */
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<Void> handleUpstreamUnavailable(UpstreamUnavailableException ex) {
+        log.error("action=handleUpstreamUnavailable, error={}", ex.getMessage());
+        return earthquakeHttpCacheHelper.buildUnavailableResponse(ex.getRetryAfterMs());
+    }
+
+    /**
+     * Answers the requests whose call to the EarthQuake USGS service failed, when there is no stale response to
+     * serve instead
+     *
+     * @param ex The failure of the call to the EarthQuake USGS service
+     * @return A 502 Bad Gateway response
+     */
+    @ExceptionHandler(UpstreamErrorException.class)
+    public ResponseEntity<Void> handleUpstreamError(UpstreamErrorException ex) {
+        log.error("action=handleUpstreamError, error={}", ex.getMessage());
+        return earthquakeHttpCacheHelper.buildBadGatewayResponse();
+    }
+
+    // a query the service could not answer fails the request, instead of answering 200 with an empty body
+    private static <T> T requireResponse(T response) {
+        if (response == null) {
+            throw new IllegalStateException("The query could not be answered");
+        }
+        return response;
+    }
+
+    private EarthquakeResponse findEarthquakesByDateRange(DateRangeRequestDto dateRangeRequestDto, PageRequestDto pageRequestDto) {
+        log.info("action=getEarthquakesByDateRange");
+        EarthquakeResponse response = earthquakeService.getEarthquakesByDateRange(
+                dateRangeRequestDto.getStartTime(),
+                dateRangeRequestDto.getEndTime(),
+                pageRequestDto);
+        log.info("action=getEarthquakesByDateRange, earthquakes={}", response);
+        return requireResponse(response);
+    }
+
+    private EarthquakeResponse findEarthquakesByDateRanges(DateRangesRequestDto dateRangesRequestDto, PageRequestDto pageRequestDto) {
+        log.info("action=getEarthquakesByDateRanges");
+        EarthquakeResponse response;
+        if (dateRangesRequestDto.getDateRanges() != null && !dateRangesRequestDto.getDateRanges().isEmpty()) {
+            response = earthquakeService.getEarthquakesByDateRanges(dateRangesRequestDto.getDateRanges(), pageRequestDto);
+        } else {
+            response = earthquakeService.getEarthquakesByDateRanges(
+                    dateRangesRequestDto.getStartTime1(),
+                    dateRangesRequestDto.getEndTime1(),
+                    dateRangesRequestDto.getStartTime2(),
+                    dateRangesRequestDto.getEndTime2(),
+                    pageRequestDto);
+        }
+        log.info("action=getEarthquakesByDateRanges, earthquakes={}", response);
+        return requireResponse(response);
+    }
+
+    private EarthquakeResponse findEarthquakesByMagnitudeRange(MagnitudeRangeRequestDto magnitudeRangeRequestDto, PageRequestDto pageRequestDto) {
+        log.info("action=getEarthquakesByMagnitudeRange");
+        EarthquakeResponse response = earthquakeService.getEarthquakesByMagnitudeRange(
+                magnitudeRangeRequestDto.getMinMagnitude(),
+                magnitudeRangeRequestDto.getMaxMagnitude(),
+                pageRequestDto);
+        log.info("action=getEarthquakesByMagnitudeRange, earthquakes={}", response);
+        return requireResponse(response);
+    }
+
+    private EarthquakeResponse findEarthquakesByCountry(CountryRequestDto countryRequestDto, PageRequestDto pageRequestDto) {
+        log.info("action=getEarthquakesByCountry");
+        EarthquakeResponse response = earthquakeService.getEarthquakesByCountry(countryRequestDto.getCountry(), pageRequestDto);
+        log.info("action=getEarthquakesByCountry, earthquakes={}", response);
+        return requireResponse(response);
+    }
+
+    private EarthquakeResponse findEarthquakesByCountriesAndDateRange(CountriesAndDateRangeRequestDto countriesAndDateRangeRequestDto, PageRequestDto pageRequestDto) {
+        log.info("action=getEarthquakesByCountriesAndDateRange");
+        EarthquakeResponse response = earthquakeService.getEarthquakesByCountriesAndDateRange(
+                countriesAndDateRangeRequestDto.getCountryOne(),
+                countriesAndDateRangeRequestDto.getCountryTwo(),
+                countriesAndDateRangeRequestDto.getStartTime(),
+                countriesAndDateRangeRequestDto.getEndTime(),
+                pageRequestDto);
+        log.info("action=getEarthquakesByCountriesAndDateRange, earthquakes={}", response);
+        return requireResponse(response);
+    }
+
+    private EarthquakeResponse findEarthquakesByDateRangeAndMagnitudeRangeAndCountry(DateAndMagnitudeRangesByCountryRequestDto dateAndMagnitudeRangesByCountryRequestDto, PageRequestDto pageRequestDto) {
         log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry");
         EarthquakeResponse response = earthquakeService.getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(
                 dateAndMagnitudeRangesByCountryRequestDto.getStartTime(),
                 dateAndMagnitudeRangesByCountryRequestDto.getEndTime(),
                 dateAndMagnitudeRangesByCountryRequestDto.getMinMagnitude(),
                 dateAndMagnitudeRangesByCountryRequestDto.getMaxMagnitude(),
-                dateAndMagnitudeRangesByCountryRequestDto.getCountry());
+                dateAndMagnitudeRangesByCountryRequestDto.getCountry(),
+                pageRequestDto);
         log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, earthquakes={}", response);
-
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return requireResponse(response);
     }
-
 }
@@ -0,0 +1,181 @@
+package com.mpescarmona.earthquake.api.controller;
+
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.dto.CountriesAndDateRangeRequestDto;
+import com.mpescarmona.earthquake.api.dto.CountryRequestDto;
+import com.mpescarmona.earthquake.api.dto.DateAndMagnitudeRangesByCountryRequestDto;
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto;
+import com.mpescarmona.earthquake.api.dto.DateRangesRequestDto;
+import com.mpescarmona.earthquake.api.dto.MagnitudeRangeRequestDto;
+import com.mpescarmona.earthquake.api.helper.EarthquakeHttpCacheHelper;
+import com.mpescarmona.earthquake.api.service.IReactiveEarthquakeService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Same endpoints as {@link EarthquakeController}, returning publishers so the servlet thread is released while
+ * the EarthQuake USGS service is called. Each endpoint takes its parameters from the JSON body or, when there is
+ * no body, from the query string, in which case the response is cacheable.
+ */
+@Api(value = "Earthquake Controller")
+@Slf4j
+@RestController
+@AllArgsConstructor
+@ConditionalOnProperty(name = "earthquake.service.mode", havingValue = "reactive")
+public class ReactiveEarthquakeController {
+
+    private IReactiveEarthquakeService earthquakeService;
+    private EarthquakeHttpCacheHelper earthquakeHttpCacheHelper;
+
+    /**
+     * Retrieves the earthquakes between a date range
+     *
+     * @param body  The start and end date ranges to get the earthquakes, from the JSON body
+     * @param query The start and end date ranges to get the earthquakes, from the query string
+     * @return A publisher of the response containing the EarthquakeResponse {@link EarthquakeResponse}
+     */
+    @ApiOperation(value = "Get all the earthquakes between a date range")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date range")})
+    @GetMapping(path = "/daterange",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<EarthquakeResponse>> getEarthquakesByDateRange(
+            @RequestBody(required = false) DateRangeRequestDto body, @ModelAttribute DateRangeRequestDto query) {
+        log.info("action=getEarthquakesByDateRange");
+        return respond(body, query, request -> earthquakeService.getEarthquakesByDateRange(
+                request.getStartTime(),
+                request.getEndTime()));
+    }
+
+    /**
+     * Retrieves the earthquakes between two date ranges, or between every date range of the list when given
+     *
+     * @param body  The start and end dates of first and second date ranges, or the list of date ranges, from the JSON body
+     * @param query The start and end dates of first and second date ranges, or the list of date ranges, from the query string
+     * @return A publisher of the response containing the EarthquakeResponse {@link EarthquakeResponse}
+     */
+    @ApiOperation(value = "Get all the earthquakes between two or more date ranges")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date ranges")})
+    @GetMapping(path = "/dateranges",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<EarthquakeResponse>> getEarthquakesByDateRanges(
+            @RequestBody(required = false) DateRangesRequestDto body, @ModelAttribute DateRangesRequestDto query) {
+        log.info("action=getEarthquakesByDateRanges");
+        return respond(body, query, request -> earthquakeService.getEarthquakesByDateRanges(
+                request.getDateRanges() != null && !request.getDateRanges().isEmpty()
+                        ? request.getDateRanges()
+                        : Arrays.asList(
+                        DateRangeRequestDto.builder().startTime(request.getStartTime1()).endTime(request.getEndTime1()).build(),
+                        DateRangeRequestDto.builder().startTime(request.getStartTime2()).endTime(request.getEndTime2()).build())));
+    }
+
+    /**
+     * Retrieves the earthquakes between a magnitude range
+     *
+     * @param body  The minimum and maximum magnitude range to get the earthquakes, from the JSON body
+     * @param query The minimum and maximum magnitude range to get the earthquakes, from the query string
+     * @return A publisher of the response containing the EarthquakeResponse {@link EarthquakeResponse}
+     */
+    @ApiOperation(value = "Get all the earthquakes between two magnitude values")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the two specified magnitude values")})
+    @GetMapping(path = "/magnituderange",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<EarthquakeResponse>> getEarthquakesByMagnitudeRange(
+            @RequestBody(required = false) MagnitudeRangeRequestDto body, @ModelAttribute MagnitudeRangeRequestDto query) {
+        log.info("action=getEarthquakesByMagnitudeRange");
+        return respond(body, query, request -> earthquakeService.getEarthquakesByMagnitudeRange(
+                request.getMinMagnitude(),
+                request.getMaxMagnitude()));
+    }
+
+    /**
+     * Retrieves the earthquakes occurred in the given country
+     *
+     * @param body  The country to get the earthquakes, from the JSON body
+     * @param query The country to get the earthquakes, from the query string
+     * @return A publisher of the response containing the EarthquakeResponse {@link EarthquakeResponse}
+     */
+    @ApiOperation(value = "Get all the earthquakes in the specified country")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified country")})
+    @GetMapping(path = "/country",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<EarthquakeResponse>> getEarthquakesByCountry(
+            @RequestBody(required = false) CountryRequestDto body, @ModelAttribute CountryRequestDto query) {
+        log.info("action=getEarthquakesByCountry");
+        return respond(body, query, request -> earthquakeService.getEarthquakesByCountry(request.getCountry()));
+    }
+
+    /**
+     * Retrieves the earthquakes occurred in the two given countries and between a date range
+     *
+     * @param body  The first country and second country and the date ranges to get the earthquakes, from the JSON body
+     * @param query The first country and second country and the date ranges to get the earthquakes, from the query string
+     * @return A publisher of the response containing the EarthquakeResponse {@link EarthquakeResponse}
+     */
+    @ApiOperation(value = "Get all the earthquakes in the specified countries and between a date range")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified countries and between a date range")})
+    @GetMapping(path = "/countries",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<EarthquakeResponse>> getEarthquakesByCountriesAndDateRange(
+            @RequestBody(required = false) CountriesAndDateRangeRequestDto body,
+            @ModelAttribute CountriesAndDateRangeRequestDto query) {
+        log.info("action=getEarthquakesByCountriesAndDateRange");
+        return respond(body, query, request -> earthquakeService.getEarthquakesByCountriesAndDateRange(
+                request.getCountryOne(),
+                request.getCountryTwo(),
+                request.getStartTime(),
+                request.getEndTime()));
+    }
+
+    /**
+     * Retrieves the earthquakes between a date range, a magnitude range, and coming from a country
+     *
+     * @param body  The date range and magnitude range by country to get the earthquakes, from the JSON body
+     * @param query The date range and magnitude range by country to get the earthquakes, from the query string
+     * @return A publisher of the response containing the EarthquakeResponse {@link EarthquakeResponse}
+     */
+    @ApiOperation(value = "Get all the earthquakes between a date range, a magnitude range, and coming from a country")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Get all the earthquakes in the specified date range, magnitude range, and country")})
+    @GetMapping(path = "/daterange/magnituderange/country",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<EarthquakeResponse>> getEarthquakesByDateRangeAndMagnitudeRangeByCountry(
+            @RequestBody(required = false) DateAndMagnitudeRangesByCountryRequestDto body,
+            @ModelAttribute DateAndMagnitudeRangesByCountryRequestDto query) {
+        log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry");
+        return respond(body, query, request -> earthquakeService.getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(
+                request.getStartTime(),
+                request.getEndTime(),
+                request.getMinMagnitude(),
+                request.getMaxMagnitude(),
+                request.getCountry()));
+    }
+
+    // body requests are answered as the blocking controller does, query string requests get the HTTP caching headers.
+    // The service is empty when the earthquakes can not be retrieved, which is answered with 502 Bad Gateway.
+    private <T> Mono<ResponseEntity<EarthquakeResponse>> respond(T body, T query,
+                                                                 Function<T, Mono<EarthquakeResponse>> search) {
+        if (body != null) {
+            return search.apply(body)
+                    .map(response -> new ResponseEntity<>(response, HttpStatus.OK))
+                    .defaultIfEmpty(earthquakeHttpCacheHelper.buildBadGatewayResponse());
+        }
+        return search.apply(query)
+                .map(earthquakeHttpCacheHelper::buildCacheableResponse)
+                .defaultIfEmpty(earthquakeHttpCacheHelper.buildBadGatewayResponse());
+    }
+}
@@ -0,0 +1,8 @@
+package com.mpescarmona.earthquake.api.domain;
+
+/**
+ * Queries a batch can hold, the same as the /daterange, /magnituderange and /country endpoints
+ */
+public enum BatchQueryType {
+    DATE_RANGE, MAGNITUDE_RANGE, COUNTRY
+}
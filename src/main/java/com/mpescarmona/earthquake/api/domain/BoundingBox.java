@@ -0,0 +1,114 @@
+package com.mpescarmona.earthquake.api.domain;
+
+import com.mpescarmona.earthquake.api.util.GeoUtil;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Rectangle of latitudes and longitudes, in degrees. Longitudes may go beyond 180 to cross the antimeridian,
+ * the same way the EarthQuake USGS service accepts them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BoundingBox {
+    // absorbs the floating point error of the margin before rounding
+    private static final double TOLERANCE = 1e-6;
+
+    double minLatitude;
+    double maxLatitude;
+    double minLongitude;
+    double maxLongitude;
+
+    /**
+     * Returns the smallest box containing the circle of the given radius around a point. The box covers every
+     * longitude when the circle reaches a pole.
+     *
+     * @param latitude  The latitude of the center, in degrees
+     * @param longitude The longitude of the center, in degrees
+     * @param radiusKm  The radius of the circle, in kilometers
+     * @return The box around the circle
+     */
+    public static BoundingBox around(double latitude, double longitude, double radiusKm) {
+        double angularRadius = radiusKm / GeoUtil.EARTH_RADIUS_KM;
+        double degrees = Math.toDegrees(angularRadius);
+        double minLatitude = latitude - degrees;
+        double maxLatitude = latitude + degrees;
+        if (minLatitude <= -90 || maxLatitude >= 90) {
+            return new BoundingBox(Math.max(-90, minLatitude), Math.min(90, maxLatitude), -180, 180);
+        }
+        double longitudeDegrees = Math.toDegrees(Math.asin(Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude))));
+        return new BoundingBox(minLatitude, maxLatitude, longitude - longitudeDegrees, longitude + longitudeDegrees);
+    }
+
+    /**
+     * Checks whether a point is inside the box, on its border included
+     *
+     * @param latitude  The latitude of the point, in degrees
+     * @param longitude The longitude of the point, between -180 and 180 degrees
+     * @return true if the box contains the point, also when it crosses the antimeridian
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < minLatitude || latitude > maxLatitude) {
+            return false;
+        }
+        return coversAllLongitudes()
+                || (longitude >= minLongitude && longitude <= maxLongitude)
+                || (longitude + 360 >= minLongitude && longitude + 360 <= maxLongitude)
+                || (longitude - 360 >= minLongitude && longitude - 360 <= maxLongitude);
+    }
+
+    /**
+     * Checks whether this box and the given one share a point, their longitudes compared as they are given
+     *
+     * @param other The other box
+     * @return true if the boxes overlap or touch
+     */
+    public boolean intersects(BoundingBox other) {
+        return minLatitude <= other.maxLatitude && other.minLatitude <= maxLatitude
+                && minLongitude <= other.maxLongitude && other.minLongitude <= maxLongitude;
+    }
+
+    /**
+     * Returns the smallest box containing this box and the given one
+     *
+     * @param other The other box
+     * @return The union of both boxes
+     */
+    public BoundingBox union(BoundingBox other) {
+        return new BoundingBox(Math.min(minLatitude, other.minLatitude), Math.max(maxLatitude, other.maxLatitude),
+                Math.min(minLongitude, other.minLongitude), Math.max(maxLongitude, other.maxLongitude));
+    }
+
+    /**
+     * Returns this box grown by the given margin on every side, rounded outwards to thousandths of a degree
+     * and clamped to the valid coordinate ranges
+     *
+     * @param degrees The margin, in degrees
+     * @return The expanded box
+     */
+    public BoundingBox expand(double degrees) {
+        return new BoundingBox(Math.max(-90, floor(minLatitude - degrees)), Math.min(90, ceil(maxLatitude + degrees)),
+                Math.max(-360, floor(minLongitude - degrees)), Math.min(360, ceil(maxLongitude + degrees)));
+    }
+
+    /**
+     * Checks whether the box covers every longitude, in which case it does not narrow a query
+     *
+     * @return true if the box spans the whole globe in longitude
+     */
+    public boolean coversAllLongitudes() {
+        return maxLongitude - minLongitude >= 360;
+    }
+
+    private static double floor(double degrees) {
+        return Math.floor(degrees * 1000 + TOLERANCE) / 1000;
+    }
+
+    private static double ceil(double degrees) {
+        return Math.ceil(degrees * 1000 - TOLERANCE) / 1000;
+    }
+}
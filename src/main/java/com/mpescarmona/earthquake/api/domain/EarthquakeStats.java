@@ -0,0 +1,27 @@
+package com.mpescarmona.earthquake.api.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Statistics of the earthquakes of a group. The day, magnitude and region are only given when the statistics
+ * are grouped by them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EarthquakeStats {
+    String day;
+    // the lower bound of the magnitude bin
+    Double magnitude;
+    String region;
+    Long count;
+    Double maxMagnitude;
+    Double meanMagnitude;
+    Long significance;
+}
@@ -0,0 +1,86 @@
+package com.mpescarmona.earthquake.api.domain;
+
+import com.mpescarmona.earthquake.api.util.PlaceUtil;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Predicates checked locally on every feature. Empty predicates match every feature.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeatureFilter {
+    public static final FeatureFilter NONE = new FeatureFilter();
+
+    List<String> countries;
+    Double minMagnitude;
+    Double maxMagnitude;
+    Long startTime;
+    Long endTime;
+
+    /**
+     * Checks whether there is no predicate to check
+     *
+     * @return true if every feature matches
+     */
+    public boolean isEmpty() {
+        return (countries == null || countries.isEmpty()) && minMagnitude == null && maxMagnitude == null
+                && startTime == null && endTime == null;
+    }
+
+    /**
+     * Checks the predicates against the given feature
+     *
+     * @param feature The feature
+     * @return true if the feature matches every predicate
+     */
+    public boolean matches(Feature feature) {
+        if (isEmpty()) {
+            return true;
+        }
+        Properties properties = feature.getProperties();
+        return Objects.nonNull(properties) && matches(properties.getPlace(), properties.getMag(), properties.getTime());
+    }
+
+    /**
+     * Checks the predicates against the given values of a feature. Countries are looked for in the region of
+     * the place, the text after its last comma.
+     *
+     * @param place The place of the feature
+     * @param mag   The magnitude of the feature
+     * @param time  The time of the feature
+     * @return true if the values match every predicate
+     */
+    public boolean matches(String place, Double mag, Long time) {
+        if (countries != null && !countries.isEmpty()
+                && (place == null || countries.stream().noneMatch(country -> regionContainsIgnoreCase(place, country)))) {
+            return false;
+        }
+        if ((minMagnitude != null || maxMagnitude != null) && mag == null) {
+            return false;
+        }
+        if ((minMagnitude != null && mag < minMagnitude) || (maxMagnitude != null && mag > maxMagnitude)) {
+            return false;
+        }
+        if ((startTime != null || endTime != null) && time == null) {
+            return false;
+        }
+        return (startTime == null || time >= startTime) && (endTime == null || time <= endTime);
+    }
+
+    private static boolean regionContainsIgnoreCase(String text, String part) {
+        for (int i = PlaceUtil.regionStart(text); i <= text.length() - part.length(); i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,9 @@
+package com.mpescarmona.earthquake.api.domain;
+
+/**
+ * Dimensions the earthquake statistics can be grouped by: the UTC day of the time, the magnitude bin of one
+ * unit and the normalized region of the place
+ */
+public enum StatsDimension {
+    DAY, MAGNITUDE, REGION
+}
@@ -0,0 +1,19 @@
+package com.mpescarmona.earthquake.api.domain.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EarthquakeBatchResponse {
+    Long generated;
+    // the fetches made to answer every query
+    Integer fetches;
+    List<EarthquakeBatchResult> results;
+}
@@ -0,0 +1,23 @@
+package com.mpescarmona.earthquake.api.domain.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.mpescarmona.earthquake.api.domain.BatchQueryType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Answer to one query of a batch, either its earthquakes or the reason it could not be answered
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EarthquakeBatchResult {
+    String id;
+    BatchQueryType type;
+    EarthquakeResponse response;
+    String error;
+}
@@ -0,0 +1,15 @@
+package com.mpescarmona.earthquake.api.domain.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EarthquakeCountResponse {
+    Integer count;
+    Integer maxAllowed;
+}
@@ -0,0 +1,16 @@
+package com.mpescarmona.earthquake.api.domain.response;
+
+/**
+ * The binary encodings of the responses, besides JSON. They encode the same schema as the JSON responses, with
+ * the field names of {@link EarthquakeResponse} and {@link com.mpescarmona.earthquake.api.domain.Feature}, and
+ * carry its version as the schema parameter of their media type. Fields may be added within a version, a field
+ * renamed or removed takes a new one, so a consumer asking for a version is never sent another.
+ */
+public final class EarthquakeEncoding {
+    public static final String SCHEMA_VERSION = "1";
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor;schema=" + SCHEMA_VERSION;
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile;schema=" + SCHEMA_VERSION;
+
+    private EarthquakeEncoding() {
+    }
+}
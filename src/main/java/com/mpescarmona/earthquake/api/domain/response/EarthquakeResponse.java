@@ -1,5 +1,6 @@
 package com.mpescarmona.earthquake.api.domain.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.mpescarmona.earthquake.api.domain.Feature;
 import com.mpescarmona.earthquake.api.domain.Metadata;
 import lombok.AllArgsConstructor;
@@ -18,4 +19,8 @@ public class EarthquakeResponse {
     Metadata metadata;
     List<Feature> features;
     Double[] bbox;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String nextCursor;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Boolean stale;
 }
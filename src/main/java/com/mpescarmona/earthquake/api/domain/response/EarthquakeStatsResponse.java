@@ -0,0 +1,22 @@
+package com.mpescarmona.earthquake.api.domain.response;
+
+import com.mpescarmona.earthquake.api.domain.EarthquakeStats;
+import com.mpescarmona.earthquake.api.domain.StatsDimension;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EarthquakeStatsResponse {
+    Long generated;
+    String startTime;
+    String endTime;
+    List<StatsDimension> groupBy;
+    List<EarthquakeStats> stats;
+}
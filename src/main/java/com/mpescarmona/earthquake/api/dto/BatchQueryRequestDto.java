@@ -0,0 +1,21 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import com.mpescarmona.earthquake.api.domain.BatchQueryType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchQueryRequestDto {
+    String id;
+    BatchQueryType type;
+    String startTime;
+    String endTime;
+    String minMagnitude;
+    String maxMagnitude;
+    String country;
+}
@@ -0,0 +1,16 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchRequestDto {
+    List<BatchQueryRequestDto> queries;
+}
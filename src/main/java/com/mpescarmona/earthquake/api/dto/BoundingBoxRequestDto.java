@@ -0,0 +1,34 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoundingBoxRequestDto {
+    Double minLatitude;
+    Double maxLatitude;
+    Double minLongitude;
+    Double maxLongitude;
+    String startTime;
+    String endTime;
+    String minMagnitude;
+    String maxMagnitude;
+
+    /**
+     * Returns the box of the request
+     *
+     * @return The bounding box of the given latitudes and longitudes, or null when any of them is missing
+     */
+    public BoundingBox toBoundingBox() {
+        if (minLatitude == null || maxLatitude == null || minLongitude == null || maxLongitude == null) {
+            return null;
+        }
+        return new BoundingBox(minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @AllArgsConstructor
@@ -14,4 +16,5 @@ public class DateRangesRequestDto {
     String endTime1;
     String startTime2;
     String endTime2;
+    List<DateRangeRequestDto> dateRanges;
 }
@@ -0,0 +1,20 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearbyRequestDto {
+    Double latitude;
+    Double longitude;
+    Double radiusKm;
+    String startTime;
+    String endTime;
+    String minMagnitude;
+    String maxMagnitude;
+}
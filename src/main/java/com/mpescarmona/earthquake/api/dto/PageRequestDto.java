@@ -0,0 +1,27 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageRequestDto {
+    public static final PageRequestDto UNPAGED = new PageRequestDto();
+
+    Integer limit;
+    String cursor;
+    String orderBy;
+
+    /**
+     * Checks whether any paging or ordering was requested
+     *
+     * @return true if the limit, the cursor or the order is given
+     */
+    public boolean isPaged() {
+        return limit != null || cursor != null || orderBy != null;
+    }
+}
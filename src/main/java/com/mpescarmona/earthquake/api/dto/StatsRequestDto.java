@@ -0,0 +1,18 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsRequestDto {
+    String startTime;
+    String endTime;
+    List<String> groupBy;
+}
@@ -0,0 +1,16 @@
+package com.mpescarmona.earthquake.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StreamRequestDto {
+    String minMagnitude;
+    String maxMagnitude;
+    String country;
+}
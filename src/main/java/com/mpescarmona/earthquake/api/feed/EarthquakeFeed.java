@@ -0,0 +1,267 @@
+package com.mpescarmona.earthquake.api.feed;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans the earthquakes read by the poller of the live feed out to its subscribers as Server-Sent Events. Every
+ * subscriber has a bounded buffer written by the poller and read by the feed executor, so a slow client never
+ * holds up the others: when its buffer is full it is dropped, and reconnects to start again from the new
+ * earthquakes. An earthquake is serialized once, whatever the number of subscribers it is sent to.
+ */
+@Slf4j
+@Component
+public class EarthquakeFeed {
+    static final String EVENT_EARTHQUAKE = "earthquake";
+    static final String EVENT_DELETED = "deleted";
+    static final String DROPPED_FULL = "full";
+    static final String DROPPED_ERROR = "error";
+    private static final String STATUS_DELETED = "deleted";
+    private static final FeedEvent HEARTBEAT = new FeedEvent(null, null, null);
+
+    private final ObjectMapper objectMapper;
+    private final TaskExecutor earthquakeFeedExecutor;
+    private final EarthquakeMetrics earthquakeMetrics;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long emitterTimeoutMs;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // reserved before a subscriber is added, so maxSubscribers holds for concurrent subscriptions
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    public EarthquakeFeed(ObjectMapper objectMapper,
+                          @Qualifier("earthquakeFeedExecutor") TaskExecutor earthquakeFeedExecutor,
+                          EarthquakeMetrics earthquakeMetrics,
+                          @Value("${earthquake.feed.bufferSize}") int bufferSize,
+                          @Value("${earthquake.feed.maxSubscribers}") int maxSubscribers,
+                          @Value("${earthquake.feed.emitterTimeoutMs}") long emitterTimeoutMs) {
+        this.objectMapper = objectMapper;
+        this.earthquakeFeedExecutor = earthquakeFeedExecutor;
+        this.earthquakeMetrics = earthquakeMetrics;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        earthquakeMetrics.gaugeFeedSubscribers(this, EarthquakeFeed::getSubscriberCount);
+    }
+
+    /**
+     * Builds the filter of a subscription
+     *
+     * @param minMagnitude The minimum magnitude, optional
+     * @param maxMagnitude The maximum magnitude, optional
+     * @param country      The country the earthquakes are in, optional
+     * @return The filter, empty when a magnitude is not a number or the range is empty
+     */
+    public Optional<FeatureFilter> buildFilter(String minMagnitude, String maxMagnitude, String country) {
+        try {
+            Double min = minMagnitude != null ? Double.valueOf(minMagnitude) : null;
+            Double max = maxMagnitude != null ? Double.valueOf(maxMagnitude) : null;
+            if (min != null && max != null && min > max) {
+                return Optional.empty();
+            }
+            return Optional.of(FeatureFilter.builder()
+                    .minMagnitude(min)
+                    .maxMagnitude(max)
+                    .countries(country != null && !country.trim().isEmpty()
+                            ? Collections.singletonList(country.trim()) : null)
+                    .build());
+        } catch (NumberFormatException ex) {
+            log.error("action=buildFilter, error={}", ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Subscribes a client to the earthquakes matching the filter, from the next poll on
+     *
+     * @param filter The earthquakes the client is sent
+     * @return The emitter of the events of the client, empty when maxSubscribers are already subscribed
+     */
+    public Optional<SseEmitter> subscribe(FeatureFilter filter) {
+        return subscribe(filter, new SseEmitter(emitterTimeoutMs));
+    }
+
+    Optional<SseEmitter> subscribe(FeatureFilter filter, SseEmitter emitter) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            log.error("action=subscribe, error=more than {} subscribers", maxSubscribers);
+            return Optional.empty();
+        }
+        Subscriber subscriber = new Subscriber(emitter, filter, bufferSize);
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(ex -> remove(subscriber));
+        // the first heartbeat writes the headers, the client knows it is subscribed before the first earthquake
+        offer(subscriber, HEARTBEAT);
+        log.info("action=subscribe, filter={}, subscribers={}", filter, subscriberCount.get());
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Sends an earthquake to every subscriber whose filter it matches
+     *
+     * @param feature The earthquake inserted, updated or deleted, deleted when its status is deleted
+     */
+    public void publish(Feature feature) {
+        FeedEvent event = null;
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.filter.matches(feature)) {
+                continue;
+            }
+            if (event == null) {
+                event = toEvent(feature);
+                if (event == null) {
+                    return;
+                }
+            }
+            offer(subscriber, event);
+        }
+    }
+
+    /**
+     * Sends a comment to every subscriber, so idle connections are kept open by proxies and the closed ones
+     * are found and dropped
+     */
+    @Scheduled(fixedDelayString = "${earthquake.feed.heartbeatMs}")
+    public void heartbeat() {
+        subscribers.forEach(subscriber -> offer(subscriber, HEARTBEAT));
+    }
+
+    /**
+     * Returns the number of subscribers
+     *
+     * @return The clients subscribed to the feed
+     */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private FeedEvent toEvent(Feature feature) {
+        try {
+            String name = feature.getProperties() != null && STATUS_DELETED.equals(feature.getProperties().getStatus())
+                    ? EVENT_DELETED : EVENT_EARTHQUAKE;
+            Long updated = feature.getProperties() != null ? feature.getProperties().getUpdated() : null;
+            return new FeedEvent(updated != null ? feature.getId() + ":" + updated : feature.getId(), name,
+                    objectMapper.writeValueAsString(feature));
+        } catch (JsonProcessingException ex) {
+            log.error("action=publish, id={}, error={}", feature.getId(), ex.getMessage());
+            return null;
+        }
+    }
+
+    private void offer(Subscriber subscriber, FeedEvent event) {
+        if (subscriber.dropped.get()) {
+            return;
+        }
+        if (!subscriber.events.offer(event)) {
+            // the emitter may be blocked writing to the client, it is completed by the drain instead of here
+            if (subscriber.dropped.compareAndSet(false, true)) {
+                remove(subscriber);
+                earthquakeMetrics.countFeedDropped(DROPPED_FULL);
+                log.error("action=publish, error=buffer of {} events full, subscriber dropped", bufferSize);
+            }
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                earthquakeFeedExecutor.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException ex) {
+                // drained with the next event
+                subscriber.draining.set(false);
+                log.error("action=drain, error={}", ex.getMessage());
+            }
+        }
+    }
+
+    // at most one drain runs for a subscriber, keeping its events in order
+    private void drain(Subscriber subscriber) {
+        do {
+            if (subscriber.dropped.get()) {
+                subscriber.events.clear();
+                subscriber.emitter.complete();
+                return;
+            }
+            FeedEvent event;
+            while ((event = subscriber.events.poll()) != null) {
+                try {
+                    subscriber.emitter.send(event.toSseEvent());
+                } catch (IOException | IllegalStateException ex) {
+                    // the client is gone, the emitter is completed by the container
+                    subscriber.dropped.set(true);
+                    subscriber.events.clear();
+                    remove(subscriber);
+                    earthquakeMetrics.countFeedDropped(DROPPED_ERROR);
+                    log.info("action=drain, error={}", ex.getMessage());
+                    return;
+                }
+            }
+            subscriber.draining.set(false);
+        } while ((!subscriber.events.isEmpty() || subscriber.dropped.get())
+                && subscriber.draining.compareAndSet(false, true));
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final FeatureFilter filter;
+        final BlockingQueue<FeedEvent> events;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean dropped = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, FeatureFilter filter, int bufferSize) {
+            this.emitter = emitter;
+            this.filter = filter;
+            this.events = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+
+    private static final class FeedEvent {
+        final String id;
+        final String name;
+        final String json;
+
+        FeedEvent(String id, String name, String json) {
+            this.id = id;
+            this.name = name;
+            this.json = json;
+        }
+
+        SseEmitter.SseEventBuilder toSseEvent() {
+            if (json == null) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+            return SseEmitter.event().id(id).name(name).data(json, MediaType.APPLICATION_JSON);
+        }
+    }
+}
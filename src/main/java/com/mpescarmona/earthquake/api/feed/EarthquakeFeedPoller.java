@@ -0,0 +1,133 @@
+package com.mpescarmona.earthquake.api.feed;
+
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.Metadata;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser;
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard;
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The only reader of the EarthQuake USGS service for the live feed: one poll per interval reads the earthquakes
+ * updated since the previous one and publishes them to every subscriber, so the calls to the service do not grow
+ * with the subscribers. Nothing is polled while there is no subscriber.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "earthquake.feed.enabled", havingValue = "true")
+public class EarthquakeFeedPoller {
+    static final String ACTION = "feed";
+
+    private final RestTemplate restTemplate;
+    private final EarthquakeUrlHelper earthquakeUrlHelper;
+    private final GeoJsonStreamingParser geoJsonStreamingParser;
+    private final EarthquakeUpstreamGuard earthquakeUpstreamGuard;
+    private final EarthquakeMetrics earthquakeMetrics;
+    private final EarthquakeFeed earthquakeFeed;
+    private final long lookbackMs;
+    private final long overlapMs;
+    private final int maxLimit;
+    // the last version published of the earthquakes the overlap of the next poll reads again
+    private final Map<String, Long> published = new HashMap<>();
+    // the start of the last successful poll, 0 while nobody is subscribed
+    private long watermark;
+
+    public EarthquakeFeedPoller(RestTemplate restTemplate, EarthquakeUrlHelper earthquakeUrlHelper,
+                                GeoJsonStreamingParser geoJsonStreamingParser,
+                                EarthquakeUpstreamGuard earthquakeUpstreamGuard, EarthquakeMetrics earthquakeMetrics,
+                                EarthquakeFeed earthquakeFeed,
+                                @Value("${earthquake.feed.lookbackMs}") long lookbackMs,
+                                @Value("${earthquake.feed.overlapMs}") long overlapMs,
+                                @Value("${earthquake.page.maxLimit}") int maxLimit) {
+        this.restTemplate = restTemplate;
+        this.earthquakeUrlHelper = earthquakeUrlHelper;
+        this.geoJsonStreamingParser = geoJsonStreamingParser;
+        this.earthquakeUpstreamGuard = earthquakeUpstreamGuard;
+        this.earthquakeMetrics = earthquakeMetrics;
+        this.earthquakeFeed = earthquakeFeed;
+        this.lookbackMs = lookbackMs;
+        this.overlapMs = overlapMs;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Publishes the earthquakes of the last lookbackMs updated since the previous poll, overlapping it by
+     * overlapMs. The earthquakes read again by the overlap are published once per version. When a poll fails,
+     * the next one reads the changes since the last successful one.
+     */
+    @Scheduled(fixedDelayString = "${earthquake.feed.intervalMs}")
+    public void poll() {
+        if (earthquakeFeed.getSubscriberCount() == 0) {
+            watermark = 0L;
+            published.clear();
+            return;
+        }
+
+        long pollStartedAt = System.currentTimeMillis();
+        long from = watermark > 0L ? watermark : pollStartedAt;
+        String url = earthquakeUrlHelper.buildEarthquakeUrlByUpdatedAfter(
+                EarthquakeTimeUtil.formatUtc(pollStartedAt - lookbackMs),
+                EarthquakeTimeUtil.formatUtc(from - overlapMs));
+        log.info("action=feed, url={}", url);
+        AtomicLong publishedCount = new AtomicLong();
+        Timer.Sample upstreamSample = earthquakeMetrics.startTimer();
+        String outcome = "error";
+        try {
+            EarthquakeResponse response = earthquakeUpstreamGuard.execute(() -> restTemplate.execute(url, HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON)),
+                    upstreamResponse -> geoJsonStreamingParser.parse(upstreamResponse.getBody(), FeatureFilter.NONE,
+                            feature -> {
+                                if (isNewVersion(feature)) {
+                                    earthquakeFeed.publish(feature);
+                                    publishedCount.incrementAndGet();
+                                }
+                            })));
+            outcome = "success";
+            Metadata metadata = response != null ? response.getMetadata() : null;
+            long changes = metadata != null && metadata.getCount() != null ? metadata.getCount() : publishedCount.get();
+            earthquakeMetrics.countFeatures(ACTION, EarthquakeMetrics.SOURCE_UPSTREAM, changes, publishedCount.get());
+            if (changes >= maxLimit) {
+                log.error("action=feed, error=more than {} changes, some were not published", maxLimit);
+            }
+            watermark = pollStartedAt;
+            // versions older than the overlap of the next poll are not read again
+            published.values().removeIf(updated -> updated < pollStartedAt - overlapMs);
+            log.info("action=feed, changes={}, published={}", changes, publishedCount.get());
+        } catch (RuntimeException ex) {
+            log.error("action=feed, url={}, error={}", url, ex.getMessage());
+        } finally {
+            earthquakeMetrics.stopUpstream(upstreamSample, ACTION, outcome);
+        }
+    }
+
+    private boolean isNewVersion(Feature feature) {
+        if (feature.getId() == null) {
+            return false;
+        }
+        Long updated = feature.getProperties() != null ? feature.getProperties().getUpdated() : null;
+        long version = updated != null ? updated : 0L;
+        Long publishedVersion = published.get(feature.getId());
+        if (publishedVersion != null && publishedVersion >= version) {
+            return false;
+        }
+        published.put(feature.getId(), version);
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package com.mpescarmona.earthquake.api.gazetteer;
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Offline gazetteer mapping country and region names, as they appear in the place of the features, to the
+ * bounding box of their territory. Used to narrow the queries sent to the EarthQuake USGS service.
+ */
+@Slf4j
+@Component
+public class CountryGazetteer {
+    private final Map<String, BoundingBox> boundingBoxes;
+    private final double paddingDegrees;
+
+    public CountryGazetteer(@Value("${earthquake.gazetteer.location}") Resource location,
+                            @Value("${earthquake.gazetteer.paddingDegrees}") double paddingDegrees) {
+        this.boundingBoxes = Collections.unmodifiableMap(load(location));
+        this.paddingDegrees = paddingDegrees;
+        log.info("action=loadGazetteer, location={}, entries={}", location, boundingBoxes.size());
+    }
+
+    /**
+     * Finds the area where the features whose place contains any of the given names are located.
+     * As the place is matched by substring, the area covers every known name containing one of the given ones
+     * (e.g. "Guinea" also covers "Papua New Guinea").
+     *
+     * @param countries The country names, matched ignoring case
+     * @return The padded bounding box of the countries, or empty when any of them is unknown
+     */
+    public Optional<BoundingBox> findBoundingBox(List<String> countries) {
+        if (countries == null || countries.isEmpty()) {
+            return Optional.empty();
+        }
+        BoundingBox result = null;
+        for (String country : countries) {
+            if (country == null) {
+                return Optional.empty();
+            }
+            String name = country.trim().toLowerCase(Locale.ROOT);
+            if (!boundingBoxes.containsKey(name)) {
+                return Optional.empty();
+            }
+            for (Map.Entry<String, BoundingBox> entry : boundingBoxes.entrySet()) {
+                if (entry.getKey().contains(name)) {
+                    result = result == null ? entry.getValue() : result.union(entry.getValue());
+                }
+            }
+        }
+        BoundingBox padded = result.expand(paddingDegrees);
+        return padded.coversAllLongitudes() ? Optional.empty() : Optional.of(padded);
+    }
+
+    /**
+     * Finds the area where the features whose place contains the given name are located
+     *
+     * @param country The country name, matched ignoring case
+     * @return The padded bounding box of the country, or empty when it is unknown
+     */
+    public Optional<BoundingBox> findBoundingBox(String country) {
+        return findBoundingBox(Collections.singletonList(country));
+    }
+
+    private static Map<String, BoundingBox> load(Resource location) {
+        Map<String, BoundingBox> result = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(location.getInputStream(), StandardCharsets.UTF_8))) {
+            // skip the header line
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] columns = line.split(",");
+                if (columns.length != 5) {
+                    throw new IllegalStateException("Invalid gazetteer line: " + line);
+                }
+                result.put(columns[0].trim().toLowerCase(Locale.ROOT), BoundingBox.builder()
+                        .minLatitude(Double.parseDouble(columns[1]))
+                        .maxLatitude(Double.parseDouble(columns[2]))
+                        .minLongitude(Double.parseDouble(columns[3]))
+                        .maxLongitude(Double.parseDouble(columns[4]))
+                        .build());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read gazetteer " + location, ex);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.mpescarmona.earthquake.api.helper;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the queries of the controller on the request executor, so the servlet thread is given back while the
+ * EarthQuake USGS service is called and stays free for the requests answered from the caches.
+ */
+@Slf4j
+@Component
+public class EarthquakeAsyncHelper {
+    // the retry of a query rejected by a saturated executor, which frees up as soon as a query ends
+    static final String REJECTED_RETRY_AFTER_SECONDS = "1";
+
+    private final TaskExecutor earthquakeRequestExecutor;
+    private final long timeoutMs;
+
+    public EarthquakeAsyncHelper(@Qualifier("earthquakeRequestExecutor") TaskExecutor earthquakeRequestExecutor,
+                                 @Value("${earthquake.request.timeoutMs}") long timeoutMs) {
+        this.earthquakeRequestExecutor = earthquakeRequestExecutor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Answers a request with the response built by the query, once it ends. Exceptions thrown by the query are
+     * handled by the exception handlers of the controller. A query that does not end within the timeout is
+     * answered with 504 Gateway Timeout and left to end on its own, and a query rejected by the saturated
+     * executor with 503 Service Unavailable.
+     *
+     * @param action The action of the controller method, for the logs
+     * @param query  Builds the response of the request
+     * @return The deferred result to return from the controller
+     */
+    public DeferredResult<ResponseEntity<?>> supplyAsync(String action, Supplier<ResponseEntity<?>> query) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(timeoutMs);
+        result.onTimeout(() -> {
+            log.error("action={}, error=no response after {} ms", action, timeoutMs);
+            result.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .cacheControl(CacheControl.noStore())
+                    .build());
+        });
+        try {
+            earthquakeRequestExecutor.execute(() -> {
+                // the request may have timed out while the query was queued
+                if (result.isSetOrExpired()) {
+                    return;
+                }
+                try {
+                    result.setResult(query.get());
+                } catch (RuntimeException ex) {
+                    result.setErrorResult(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.error("action={}, error={}", action, ex.getMessage());
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, REJECTED_RETRY_AFTER_SECONDS)
+                    .cacheControl(CacheControl.noStore())
+                    .build());
+        }
+        return result;
+    }
+}
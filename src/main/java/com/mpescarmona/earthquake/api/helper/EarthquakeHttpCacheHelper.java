@@ -0,0 +1,171 @@
+package com.mpescarmona.earthquake.api.helper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeEncoding;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the HTTP caching headers of the query responses, so clients can cache them and revalidate them with
+ * conditional requests. The responses require a token, so they are private: a shared cache must not serve them
+ * to other callers.
+ */
+@Component
+public class EarthquakeHttpCacheHelper {
+    static final String STALE_WARNING = "110 - \"Response is Stale\"";
+    // the encodings of the query endpoints, in the order of their produces
+    private static final List<MediaType> ENCODINGS = Arrays.asList(MediaType.APPLICATION_JSON,
+            MediaType.parseMediaType(EarthquakeEncoding.APPLICATION_CBOR_VALUE),
+            MediaType.parseMediaType(EarthquakeEncoding.APPLICATION_SMILE_VALUE));
+
+    private final ObjectMapper objectMapper;
+    private final CacheControl cacheControl;
+
+    public EarthquakeHttpCacheHelper(ObjectMapper objectMapper,
+                                     @Value("${earthquake.http.cacheMaxAgeSeconds}") long cacheMaxAgeSeconds) {
+        this.objectMapper = objectMapper;
+        this.cacheControl = CacheControl.maxAge(cacheMaxAgeSeconds, TimeUnit.SECONDS).cachePrivate();
+    }
+
+    /**
+     * Checks whether the request is answered by a cacheable endpoint, which takes its parameters from the query
+     * string instead of a JSON body
+     *
+     * @param request The request
+     * @return true if the request is a GET without body
+     */
+    public static boolean isCacheableRequest(HttpServletRequest request) {
+        return HttpMethod.GET.matches(request.getMethod()) && request.getContentLengthLong() <= 0
+                && request.getHeader(HttpHeaders.TRANSFER_ENCODING) == null;
+    }
+
+    /**
+     * Builds a strong ETag from the content of the response and its encoding, so every encoding of a response has
+     * its own. The generation time of the metadata is left out, as it changes on every response even when the
+     * earthquakes do not.
+     *
+     * @param earthquakeResponse The response
+     * @param encoding           The media type the response is encoded with
+     * @return The quoted ETag of the response
+     */
+    public String buildETag(EarthquakeResponse earthquakeResponse, MediaType encoding) {
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            content.write(encoding.toString().getBytes(StandardCharsets.UTF_8));
+            objectMapper.writeValue(content, earthquakeResponse.getFeatures());
+            return "\"" + DigestUtils.md5DigestAsHex(content.toByteArray()) + "\"";
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Finds the encoding Spring negotiates for the Accept header among the ones of the query endpoints, the most
+     * specific and preferred accepted one, JSON first when several are accepted alike
+     *
+     * @param accept The Accept header of the request, optional
+     * @return The media type the response is encoded with
+     */
+    public static MediaType negotiateEncoding(String accept) {
+        List<MediaType> acceptedTypes = accept != null ? MediaType.parseMediaTypes(accept) : new ArrayList<>();
+        if (acceptedTypes.isEmpty()) {
+            acceptedTypes.add(MediaType.ALL);
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+        List<MediaType> encodings = new ArrayList<>();
+        for (MediaType acceptedType : acceptedTypes) {
+            for (MediaType encoding : ENCODINGS) {
+                if (acceptedType.isCompatibleWith(encoding)) {
+                    encodings.add(encoding.copyQualityValue(acceptedType));
+                }
+            }
+        }
+        MediaType.sortBySpecificityAndQuality(encodings);
+        return encodings.isEmpty() ? MediaType.APPLICATION_JSON : encodings.get(0).removeQualityValue();
+    }
+
+    /**
+     * Wraps the JSON response with its ETag and Cache-Control headers
+     *
+     * @param earthquakeResponse The response
+     * @return The response entity to return from the controller
+     * @throws IllegalArgumentException when the response is null, a failed query is not answered with 200
+     */
+    public ResponseEntity<EarthquakeResponse> buildCacheableResponse(EarthquakeResponse earthquakeResponse) {
+        return buildCacheableResponse(earthquakeResponse, MediaType.APPLICATION_JSON_VALUE);
+    }
+
+    /**
+     * Wraps the response with its ETag and Cache-Control headers. Spring answers with 304 Not Modified when the
+     * ETag matches the If-None-Match header of the request. Stale responses carry a Warning header and must be
+     * revalidated by the HTTP caches. The body is encoded as JSON, CBOR or Smile depending on the Accept header,
+     * so the HTTP caches keep an entry per encoding, each one with its own ETag.
+     *
+     * @param earthquakeResponse The response
+     * @param accept             The Accept header of the request, optional
+     * @return The response entity to return from the controller
+     * @throws IllegalArgumentException when the response is null, a failed query is not answered with 200
+     */
+    public ResponseEntity<EarthquakeResponse> buildCacheableResponse(EarthquakeResponse earthquakeResponse, String accept) {
+        if (earthquakeResponse == null) {
+            throw new IllegalArgumentException("Missing earthquake response");
+        }
+        String eTag = buildETag(earthquakeResponse, negotiateEncoding(accept));
+        if (Boolean.TRUE.equals(earthquakeResponse.getStale())) {
+            return ResponseEntity.ok()
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache())
+                    .header(HttpHeaders.WARNING, STALE_WARNING)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(earthquakeResponse);
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(earthquakeResponse);
+    }
+
+    /**
+     * Builds the answer to a request that could not be served because the EarthQuake USGS service is unavailable
+     *
+     * @param retryAfterMs The time after which the service may be called again, in millis
+     * @return The 503 Service Unavailable response entity, with its Retry-After header
+     */
+    public ResponseEntity<Void> buildUnavailableResponse(long retryAfterMs) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfterMs + 999))))
+                .cacheControl(CacheControl.noStore())
+                .build();
+    }
+
+    /**
+     * Builds the answer to a request that could not be served because its call to the EarthQuake USGS service failed
+     *
+     * @param <T> The type of the body of the response entity, which has none
+     * @return The 502 Bad Gateway response entity
+     */
+    public <T> ResponseEntity<T> buildBadGatewayResponse() {
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                .cacheControl(CacheControl.noStore())
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.mpescarmona.earthquake.api.helper;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes the features of a query as newline delimited JSON, one feature per line, as the source hands them. The
+ * source holds the features of one call to the EarthQuake USGS service at a time, not the whole result.
+ */
+@Component
+public class EarthquakeStreamHelper {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    private final ObjectWriter featureWriter;
+
+    public EarthquakeStreamHelper(ObjectMapper objectMapper) {
+        // the servlet output buffer decides when to send a chunk, not every feature
+        this.featureWriter = objectMapper.writerFor(Feature.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Builds a streaming response that writes every feature handed by the source as a line of JSON
+     *
+     * @param featureSource Reads the features of the query, handing each one to the given consumer
+     * @return The response entity to return from the controller
+     */
+    public ResponseEntity<StreamingResponseBody> buildStreamingResponse(Consumer<Consumer<Feature>> featureSource) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = featureWriter.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                featureSource.accept(feature -> writeFeature(generator, feature));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private void writeFeature(JsonGenerator generator, Feature feature) {
+        try {
+            featureWriter.writeValue(generator, feature);
+            generator.writeRaw('\n');
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.mpescarmona.earthquake.api.helper;
 
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
+
 @Data
 @Component
 public class EarthquakeUrlHelper {
     @Value("${earthquake.baseUrl}")
     private String earthquakeBaseUrl;
+    @Value("${earthquake.countUrl}")
+    private String earthquakeCountUrl;
     @Value("${earthquake.format}")
     private String earthquakeFormat;
     @Value("${earthquake.searchByDatesStartTime}")
@@ -19,6 +24,30 @@ public class EarthquakeUrlHelper {
     private String searchByMagnitudesMinMagnitude;
     @Value("${earthquake.searchByMagnitudesMaxMagnitude}")
     private String searchByMagnitudesMaxMagnitude;
+    @Value("${earthquake.searchByBoundingBoxMinLatitude}")
+    private String searchByBoundingBoxMinLatitude;
+    @Value("${earthquake.searchByBoundingBoxMaxLatitude}")
+    private String searchByBoundingBoxMaxLatitude;
+    @Value("${earthquake.searchByBoundingBoxMinLongitude}")
+    private String searchByBoundingBoxMinLongitude;
+    @Value("${earthquake.searchByBoundingBoxMaxLongitude}")
+    private String searchByBoundingBoxMaxLongitude;
+    @Value("${earthquake.searchByCircleLatitude}")
+    private String searchByCircleLatitude;
+    @Value("${earthquake.searchByCircleLongitude}")
+    private String searchByCircleLongitude;
+    @Value("${earthquake.searchByCircleMaxRadiusKm}")
+    private String searchByCircleMaxRadiusKm;
+    @Value("${earthquake.searchByPageLimit}")
+    private String searchByPageLimit;
+    @Value("${earthquake.searchByPageOffset}")
+    private String searchByPageOffset;
+    @Value("${earthquake.searchByPageOrderBy}")
+    private String searchByPageOrderBy;
+    @Value("${earthquake.searchByUpdatedAfter}")
+    private String searchByUpdatedAfter;
+    @Value("${earthquake.searchIncludeDeleted}")
+    private String searchIncludeDeleted;
 
     private StringBuilder getEarthQuakeBaseUrlAndFormatStringBuilder() {
         StringBuilder sb = new StringBuilder(earthquakeBaseUrl);
@@ -62,6 +91,17 @@ public class EarthquakeUrlHelper {
         return sb.toString();
     }
 
+    /**
+     * Builds the url used to count the earthquakes of a date range with the EarthQuake USGS service
+     *
+     * @param startTime The start date value string
+     * @param endTime   The end date value string
+     * @return The fully composed url string to be used against the count method of the EarthQuake USGS service
+     */
+    public String buildEarthquakeCountUrlByDates(String startTime, String endTime) {
+        return earthquakeCountUrl + buildEarthquakeUrlByDates(startTime, endTime).substring(earthquakeBaseUrl.length());
+    }
+
     /**
      * Builds the url used to get data by magnitude ranges from EarthQuake USGS service
      *
@@ -126,4 +166,130 @@ public class EarthquakeUrlHelper {
         return sb.toString();
     }
 
+    /**
+     * Builds the url used to get data inside a bounding box from EarthQuake USGS service
+     *
+     * @param boundingBox The bounding box
+     * @return The fully composed url string to be used against the EarthQuake USGS service
+     */
+    public String buildEarthquakeUrlByBoundingBox(BoundingBox boundingBox) {
+        StringBuilder sb = getEarthQuakeBaseUrlAndFormatStringBuilder();
+        appendBoundingBox(sb, boundingBox);
+        return sb.toString();
+    }
+
+    /**
+     * Builds the url used to get data by date ranges and magnitude ranges inside a bounding box from EarthQuake USGS service
+     *
+     * @param startTime    The start date value string
+     * @param endTime      The end date value string
+     * @param minMagnitude The minimum magnitude string
+     * @param maxMagnitude The maximum magnitude string
+     * @param boundingBox  The bounding box
+     * @return The fully composed url string to be used against the EarthQuake USGS service
+     */
+    public String buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(String startTime, String endTime,
+                                                                        String minMagnitude, String maxMagnitude,
+                                                                        BoundingBox boundingBox) {
+        StringBuilder sb = new StringBuilder(buildEarthquakeUrlByDatesAndMagnitudes(startTime, endTime, minMagnitude, maxMagnitude));
+        appendBoundingBox(sb, boundingBox);
+        return sb.toString();
+    }
+
+    /**
+     * Builds the url used to get data by date ranges and magnitude ranges within a distance of a point from EarthQuake USGS service
+     *
+     * @param startTime    The start date value string
+     * @param endTime      The end date value string
+     * @param minMagnitude The minimum magnitude string
+     * @param maxMagnitude The maximum magnitude string
+     * @param latitude     The latitude of the point, in degrees
+     * @param longitude    The longitude of the point, in degrees
+     * @param radiusKm     The maximum distance to the point, in kilometers
+     * @return The fully composed url string to be used against the EarthQuake USGS service
+     */
+    public String buildEarthquakeUrlByDatesAndMagnitudesAndCircle(String startTime, String endTime,
+                                                                   String minMagnitude, String maxMagnitude,
+                                                                   double latitude, double longitude, double radiusKm) {
+        StringBuilder sb = new StringBuilder(buildEarthquakeUrlByDatesAndMagnitudes(startTime, endTime, minMagnitude, maxMagnitude));
+        appendCoordinate(sb, searchByCircleLatitude, latitude);
+        appendCoordinate(sb, searchByCircleLongitude, longitude);
+        appendCoordinate(sb, searchByCircleMaxRadiusKm, radiusKm);
+        return sb.toString();
+    }
+
+    /**
+     * Builds the url used to get the earthquakes updated after a given time from EarthQuake USGS service, deleted
+     * ones included
+     *
+     * @param startTime    The start date value string, the oldest earthquake time of interest
+     * @param updatedAfter The time value string after which the earthquakes were updated
+     * @return The fully composed url string to be used against the EarthQuake USGS service
+     */
+    public String buildEarthquakeUrlByUpdatedAfter(String startTime, String updatedAfter) {
+        StringBuilder sb = new StringBuilder(buildEarthquakeUrlByDates(startTime, null));
+        if (searchByUpdatedAfter != null && updatedAfter != null) {
+            sb.append(sb.indexOf("?") == -1 ? "?" : "&")
+                    .append(searchByUpdatedAfter)
+                    .append("=")
+                    .append(updatedAfter);
+        }
+        if (searchIncludeDeleted != null) {
+            sb.append(sb.indexOf("?") == -1 ? "?" : "&")
+                    .append(searchIncludeDeleted);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Adds the paging and ordering parameters to a url of the EarthQuake USGS service
+     *
+     * @param url     The url of the whole query
+     * @param limit   The maximum number of earthquakes to get
+     * @param offset  The number of earthquakes to skip, the service counts from 1
+     * @param orderBy The order of the earthquakes
+     * @return The fully composed url string to be used against the EarthQuake USGS service
+     */
+    public String buildPagedUrl(String url, int limit, long offset, String orderBy) {
+        StringBuilder sb = new StringBuilder(url);
+        if (searchByPageLimit != null) {
+            sb.append(sb.indexOf("?") == -1 ? "?" : "&")
+                    .append(searchByPageLimit)
+                    .append("=")
+                    .append(limit);
+        }
+        if (searchByPageOffset != null) {
+            sb.append(sb.indexOf("?") == -1 ? "?" : "&")
+                    .append(searchByPageOffset)
+                    .append("=")
+                    .append(offset + 1);
+        }
+        if (searchByPageOrderBy != null && orderBy != null) {
+            sb.append(sb.indexOf("?") == -1 ? "?" : "&")
+                    .append(searchByPageOrderBy)
+                    .append("=")
+                    .append(orderBy);
+        }
+        return sb.toString();
+    }
+
+    private void appendBoundingBox(StringBuilder sb, BoundingBox boundingBox) {
+        if (boundingBox == null) {
+            return;
+        }
+        appendCoordinate(sb, searchByBoundingBoxMinLatitude, boundingBox.getMinLatitude());
+        appendCoordinate(sb, searchByBoundingBoxMaxLatitude, boundingBox.getMaxLatitude());
+        appendCoordinate(sb, searchByBoundingBoxMinLongitude, boundingBox.getMinLongitude());
+        appendCoordinate(sb, searchByBoundingBoxMaxLongitude, boundingBox.getMaxLongitude());
+    }
+
+    private void appendCoordinate(StringBuilder sb, String parameter, double degrees) {
+        if (parameter != null) {
+            sb.append(sb.indexOf("?") == -1 ? "?" : "&")
+                    .append(parameter)
+                    .append("=")
+                    .append(BigDecimal.valueOf(degrees).toPlainString());
+        }
+    }
+
 }
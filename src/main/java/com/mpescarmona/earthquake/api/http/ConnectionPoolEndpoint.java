@@ -0,0 +1,34 @@
+package com.mpescarmona.earthquake.api.http;
+
+import lombok.AllArgsConstructor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@Endpoint(id = "earthquakehttppool")
+public class ConnectionPoolEndpoint {
+
+    private PoolingHttpClientConnectionManager earthquakeConnectionManager;
+
+    /**
+     * Exposes the usage of the connection pool to the EarthQuake USGS service, to tune its limits
+     *
+     * @return The current statistics of the pool. @See {@link ConnectionPoolStatistics}
+     */
+    @ReadOperation
+    public ConnectionPoolStatistics statistics() {
+        PoolStats totalStats = earthquakeConnectionManager.getTotalStats();
+        return ConnectionPoolStatistics.builder()
+                .leased(totalStats.getLeased())
+                .pending(totalStats.getPending())
+                .available(totalStats.getAvailable())
+                .max(totalStats.getMax())
+                .maxPerRoute(earthquakeConnectionManager.getDefaultMaxPerRoute())
+                .routes(earthquakeConnectionManager.getRoutes().size())
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package com.mpescarmona.earthquake.api.http;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConnectionPoolStatistics {
+    int leased;
+    int pending;
+    int available;
+    int max;
+    int maxPerRoute;
+    int routes;
+}
@@ -0,0 +1,191 @@
+package com.mpescarmona.earthquake.api.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Timers and counters of the stages of an earthquake query, tagged with the action of the service method that
+ * runs them:
+ * <ul>
+ * <li>earthquake.upstream: a whole call to the EarthQuake USGS service, tagged with its outcome</li>
+ * <li>earthquake.parse: reading and binding the body of a call, including the filter checked while parsing</li>
+ * <li>earthquake.filter: looking up and filtering the earthquakes held in the store</li>
+ * <li>earthquake.serialize: writing a response body, tagged with the uri of the endpoint</li>
+ * <li>earthquake.features.in and earthquake.features.out: earthquakes read and kept, tagged with their source</li>
+ * <li>earthquake.upstream.rejected: calls rejected by the breaker or the bulkhead, tagged with the reason</li>
+ * <li>earthquake.stale: expired responses served while the EarthQuake USGS service is unavailable</li>
+ * <li>earthquake.breaker.state: 0 when the breaker is closed, 1 when open and 2 when half open</li>
+ * <li>earthquake.feed.subscribers: clients subscribed to the live feed</li>
+ * <li>earthquake.feed.dropped: subscribers dropped by the live feed, tagged with the reason</li>
+ * </ul>
+ */
+@Component
+public class EarthquakeMetrics {
+    public static final String SOURCE_UPSTREAM = "upstream";
+    public static final String SOURCE_STORE = "store";
+
+    private final MeterRegistry meterRegistry;
+
+    public EarthquakeMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts timing a stage, stopped with the method of the stage
+     *
+     * @return The sample of the stage
+     */
+    public Timer.Sample startTimer() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Stops timing a call to the EarthQuake USGS service
+     *
+     * @param sample  The sample started before the call
+     * @param action  The action of the service method
+     * @param outcome success, or error when the call failed
+     */
+    public void stopUpstream(Timer.Sample sample, String action, String outcome) {
+        sample.stop(Timer.builder("earthquake.upstream")
+                .description("Calls to the EarthQuake USGS service")
+                .tag("action", action)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Stops timing the reading of a response of the EarthQuake USGS service
+     *
+     * @param sample The sample started before reading
+     * @param action The action of the service method
+     */
+    public void stopParse(Timer.Sample sample, String action) {
+        sample.stop(Timer.builder("earthquake.parse")
+                .description("Reading and binding the responses of the EarthQuake USGS service")
+                .tag("action", action)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Stops timing the writing of a response body
+     *
+     * @param sample The sample started before writing
+     * @param uri    The uri pattern of the endpoint
+     */
+    public void stopSerialize(Timer.Sample sample, String uri) {
+        sample.stop(Timer.builder("earthquake.serialize")
+                .description("Writing the response bodies")
+                .tag("uri", uri)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Times a lookup or filter of the earthquakes held in the store
+     *
+     * @param action The action of the service method
+     * @param filter The lookup or filter
+     * @param <T>    The type of its result
+     * @return The result of the filter
+     */
+    public <T> T recordFilter(String action, Supplier<T> filter) {
+        return Timer.builder("earthquake.filter")
+                .description("Looking up and filtering the earthquakes held in the store")
+                .tag("action", action)
+                .register(meterRegistry)
+                .record(filter);
+    }
+
+    /**
+     * Counts the earthquakes read from a source and the ones kept after filtering
+     *
+     * @param action      The action of the service method
+     * @param source      Where the earthquakes were read, upstream or store
+     * @param featuresIn  The number of earthquakes read
+     * @param featuresOut The number of earthquakes kept
+     */
+    public void countFeatures(String action, String source, long featuresIn, long featuresOut) {
+        featureCounter("earthquake.features.in", "Earthquakes read", action, source).increment(featuresIn);
+        featureCounter("earthquake.features.out", "Earthquakes kept after filtering", action, source).increment(featuresOut);
+    }
+
+    /**
+     * Counts a call to the EarthQuake USGS service rejected without being sent
+     *
+     * @param reason open when the breaker is open, full when the bulkhead is full
+     */
+    public void countRejected(String reason) {
+        Counter.builder("earthquake.upstream.rejected")
+                .description("Calls to the EarthQuake USGS service rejected without being sent")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Counts an expired response served in place of a call to the EarthQuake USGS service
+     *
+     * @param action The action of the service method
+     */
+    public void countStale(String action) {
+        Counter.builder("earthquake.stale")
+                .description("Expired responses served while the EarthQuake USGS service is unavailable")
+                .tag("action", action)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Registers the gauge of the state of the circuit breaker
+     *
+     * @param breaker The circuit breaker
+     * @param state   Reads the ordinal of the state of the breaker
+     * @param <T>     The type of the breaker
+     */
+    public <T> void gaugeBreakerState(T breaker, ToDoubleFunction<T> state) {
+        Gauge.builder("earthquake.breaker.state", breaker, state)
+                .description("State of the circuit breaker of the EarthQuake USGS service")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers the gauge of the subscribers of the live feed
+     *
+     * @param feed        The live feed
+     * @param subscribers Reads the number of subscribers of the feed
+     * @param <T>         The type of the feed
+     */
+    public <T> void gaugeFeedSubscribers(T feed, ToDoubleFunction<T> subscribers) {
+        Gauge.builder("earthquake.feed.subscribers", feed, subscribers)
+                .description("Clients subscribed to the live feed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a subscriber dropped by the live feed
+     *
+     * @param reason full when it read slower than the earthquakes arrived, error when its connection failed
+     */
+    public void countFeedDropped(String reason) {
+        Counter.builder("earthquake.feed.dropped")
+                .description("Subscribers dropped by the live feed")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Counter featureCounter(String name, String description, String action, String source) {
+        return Counter.builder(name)
+                .description(description)
+                .baseUnit("features")
+                .tag("action", action)
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,33 @@
+package com.mpescarmona.earthquake.api.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * CBOR converter of the response bodies that times their serialization like the JSON one
+ */
+public class TimedJackson2CborHttpMessageConverter extends MappingJackson2CborHttpMessageConverter {
+    private final EarthquakeMetrics earthquakeMetrics;
+
+    public TimedJackson2CborHttpMessageConverter(ObjectMapper objectMapper, EarthquakeMetrics earthquakeMetrics) {
+        super(objectMapper);
+        this.earthquakeMetrics = earthquakeMetrics;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        Timer.Sample sample = earthquakeMetrics.startTimer();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            earthquakeMetrics.stopSerialize(sample, TimedJackson2HttpMessageConverter.getUri());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mpescarmona.earthquake.api.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON converter of the response bodies that times their serialization, tagged with the uri pattern of the
+ * endpoint like the http.server.requests metrics
+ */
+public class TimedJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    private static final String UNKNOWN_URI = "UNKNOWN";
+
+    private final EarthquakeMetrics earthquakeMetrics;
+
+    public TimedJackson2HttpMessageConverter(ObjectMapper objectMapper, EarthquakeMetrics earthquakeMetrics) {
+        super(objectMapper);
+        this.earthquakeMetrics = earthquakeMetrics;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        Timer.Sample sample = earthquakeMetrics.startTimer();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            earthquakeMetrics.stopSerialize(sample, getUri());
+        }
+    }
+
+    static String getUri() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object pattern = attributes != null
+                ? attributes.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                : null;
+        return pattern != null ? pattern.toString() : UNKNOWN_URI;
+    }
+}
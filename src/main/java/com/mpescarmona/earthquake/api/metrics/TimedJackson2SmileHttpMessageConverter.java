@@ -0,0 +1,33 @@
+package com.mpescarmona.earthquake.api.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Smile converter of the response bodies that times their serialization like the JSON one
+ */
+public class TimedJackson2SmileHttpMessageConverter extends MappingJackson2SmileHttpMessageConverter {
+    private final EarthquakeMetrics earthquakeMetrics;
+
+    public TimedJackson2SmileHttpMessageConverter(ObjectMapper objectMapper, EarthquakeMetrics earthquakeMetrics) {
+        super(objectMapper);
+        this.earthquakeMetrics = earthquakeMetrics;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        Timer.Sample sample = earthquakeMetrics.startTimer();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            earthquakeMetrics.stopSerialize(sample, TimedJackson2HttpMessageConverter.getUri());
+        }
+    }
+}
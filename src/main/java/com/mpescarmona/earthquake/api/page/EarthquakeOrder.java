@@ -0,0 +1,49 @@
+package com.mpescarmona.earthquake.api.page;
+
+import com.mpescarmona.earthquake.api.domain.Feature;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Comparator;
+
+/**
+ * Orders of the earthquakes supported by the EarthQuake USGS service, newest first by default.
+ */
+@Getter
+@AllArgsConstructor
+public enum EarthquakeOrder {
+    TIME("time", Comparator.comparing(EarthquakeOrder::time, Comparator.nullsLast(Comparator.reverseOrder()))),
+    TIME_ASC("time-asc", Comparator.comparing(EarthquakeOrder::time, Comparator.nullsLast(Comparator.naturalOrder()))),
+    MAGNITUDE("magnitude", Comparator.comparing(EarthquakeOrder::magnitude, Comparator.nullsLast(Comparator.reverseOrder()))),
+    MAGNITUDE_ASC("magnitude-asc", Comparator.comparing(EarthquakeOrder::magnitude, Comparator.nullsLast(Comparator.naturalOrder())));
+
+    private final String parameter;
+    private final Comparator<Feature> comparator;
+
+    /**
+     * Gets the order named by the orderby parameter of the EarthQuake USGS service
+     *
+     * @param parameter The name of the order, null for the default order
+     * @return The order
+     * @throws IllegalArgumentException when the order is unknown
+     */
+    public static EarthquakeOrder fromParameter(String parameter) {
+        if (parameter == null) {
+            return TIME;
+        }
+        for (EarthquakeOrder order : values()) {
+            if (order.parameter.equalsIgnoreCase(parameter.trim())) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Unknown order " + parameter);
+    }
+
+    private static Long time(Feature feature) {
+        return feature.getProperties() == null ? null : feature.getProperties().getTime();
+    }
+
+    private static Double magnitude(Feature feature) {
+        return feature.getProperties() == null ? null : feature.getProperties().getMag();
+    }
+}
@@ -0,0 +1,134 @@
+package com.mpescarmona.earthquake.api.page;
+
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.dto.PageRequestDto;
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Cuts the earthquakes of a query into pages. Queries sent to the EarthQuake USGS service are paged there with
+ * its limit, offset and orderby parameters, reading further batches when the local filter drops earthquakes, so
+ * only the earthquakes of the page are downloaded. Results already in memory are ordered and paged locally.
+ */
+@Slf4j
+@Component
+public class EarthquakePager {
+    private final EarthquakeUrlHelper earthquakeUrlHelper;
+    private final int maxLimit;
+    private final int batchSize;
+
+    public EarthquakePager(EarthquakeUrlHelper earthquakeUrlHelper,
+                           @Value("${earthquake.page.maxLimit}") int maxLimit,
+                           @Value("${earthquake.page.batchSize}") int batchSize) {
+        this.earthquakeUrlHelper = earthquakeUrlHelper;
+        this.maxLimit = maxLimit;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads a page of earthquakes from the EarthQuake USGS service
+     *
+     * @param url         The url of the whole query
+     * @param filter      The predicates checked locally on every earthquake
+     * @param page        The limit, cursor and order of the page
+     * @param batchLoader Loads a batch url keeping the earthquakes matching the filter. The count of the metadata
+     *                    must stay the number of earthquakes sent by the service, before filtering.
+     * @return The earthquake response containing the earthquakes of the page and the cursor of the next one
+     */
+    public EarthquakeResponse fetchPage(String url, FeatureFilter filter, PageRequestDto page,
+                                        BiFunction<String, FeatureFilter, EarthquakeResponse> batchLoader) {
+        EarthquakeOrder order = EarthquakeOrder.fromParameter(page.getOrderBy());
+        PageCursor cursor = PageCursor.decode(page.getCursor());
+        int limit = getLimit(page);
+        // the local filter drops some of the upstream earthquakes, bigger batches fill the page in fewer calls
+        int batch = filter.isEmpty() ? limit : Math.min(Math.max(limit, batchSize), maxLimit);
+
+        long offset = cursor.getOffset();
+        int skip = cursor.getSkip();
+        List<Feature> features = new ArrayList<>();
+        EarthquakeResponse pageResponse = null;
+        String nextCursor = null;
+        while (true) {
+            String batchUrl = earthquakeUrlHelper.buildPagedUrl(url, batch, offset, order.getParameter());
+            log.info("action=fetchPage, url={}, skip={}", batchUrl, skip);
+            EarthquakeResponse response = batchLoader.apply(batchUrl, filter);
+            if (pageResponse == null) {
+                pageResponse = response;
+            }
+            List<Feature> matches = response.getFeatures() != null ? response.getFeatures() : Collections.emptyList();
+            int from = Math.min(skip, matches.size());
+            int to = Math.min(matches.size(), from + limit - features.size());
+            features.addAll(matches.subList(from, to));
+            if (to < matches.size()) {
+                nextCursor = new PageCursor(offset, to).encode();
+                break;
+            }
+            if (!isFullBatch(response, batch)) {
+                break;
+            }
+            offset += batch;
+            skip = 0;
+            if (features.size() == limit) {
+                nextCursor = new PageCursor(offset, 0).encode();
+                break;
+            }
+        }
+        return buildPageResponse(pageResponse, features, nextCursor);
+    }
+
+    /**
+     * Orders and pages earthquakes already in memory
+     *
+     * @param earthquakeResponse The response containing every earthquake of the query
+     * @param page               The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page and the cursor of the next one
+     */
+    public EarthquakeResponse pageFeatures(EarthquakeResponse earthquakeResponse, PageRequestDto page) {
+        if (earthquakeResponse == null || earthquakeResponse.getFeatures() == null || !page.isPaged()) {
+            return earthquakeResponse;
+        }
+        EarthquakeOrder order = EarthquakeOrder.fromParameter(page.getOrderBy());
+        PageCursor cursor = PageCursor.decode(page.getCursor());
+        int limit = getLimit(page);
+
+        List<Feature> sortedFeatures = new ArrayList<>(earthquakeResponse.getFeatures());
+        sortedFeatures.sort(order.getComparator());
+        int from = (int) Math.min(cursor.getOffset(), sortedFeatures.size());
+        int to = Math.min(sortedFeatures.size(), from + limit);
+        String nextCursor = to < sortedFeatures.size() ? new PageCursor(to, 0).encode() : null;
+        return buildPageResponse(earthquakeResponse, new ArrayList<>(sortedFeatures.subList(from, to)), nextCursor);
+    }
+
+    private int getLimit(PageRequestDto page) {
+        if (page.getLimit() == null) {
+            return maxLimit;
+        }
+        if (page.getLimit() <= 0) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        return Math.min(page.getLimit(), maxLimit);
+    }
+
+    private boolean isFullBatch(EarthquakeResponse response, int batch) {
+        return response.getMetadata() != null && response.getMetadata().getCount() != null
+                && response.getMetadata().getCount() >= batch;
+    }
+
+    private EarthquakeResponse buildPageResponse(EarthquakeResponse response, List<Feature> features, String nextCursor) {
+        response.setFeatures(features);
+        response.setNextCursor(nextCursor);
+        if (response.getMetadata() != null) {
+            response.getMetadata().setCount(features.size());
+        }
+        return response;
+    }
+}
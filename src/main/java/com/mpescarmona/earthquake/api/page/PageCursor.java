@@ -0,0 +1,59 @@
+package com.mpescarmona.earthquake.api.page;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the next page in the ordered earthquakes of a query. The offset counts the upstream earthquakes
+ * already read, before any local filter, and the skip counts the matching earthquakes of the batch starting at
+ * that offset that were already returned.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageCursor {
+    public static final PageCursor FIRST = new PageCursor(0, 0);
+
+    long offset;
+    int skip;
+
+    /**
+     * Encodes the cursor as an opaque url safe string
+     *
+     * @return The encoded cursor
+     */
+    public String encode() {
+        String position = offset + ":" + skip;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes a cursor returned with a previous page
+     *
+     * @param cursor The encoded cursor, null for the first page
+     * @return The decoded cursor
+     * @throws IllegalArgumentException when the cursor is malformed
+     */
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return FIRST;
+        }
+        String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+        int separator = position.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor);
+        }
+        long offset = Long.parseLong(position.substring(0, separator));
+        int skip = Integer.parseInt(position.substring(separator + 1));
+        if (offset < 0 || skip < 0) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor);
+        }
+        return new PageCursor(offset, skip);
+    }
+}
@@ -0,0 +1,146 @@
+package com.mpescarmona.earthquake.api.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.Metadata;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the GeoJSON of the EarthQuake USGS service one feature at a time. Each feature is kept as compact tokens
+ * while its place, magnitude and time are checked, and only the matching features are bound to objects.
+ */
+@Component
+@AllArgsConstructor
+public class GeoJsonStreamingParser {
+
+    private ObjectMapper objectMapper;
+
+    /**
+     * Parses a GeoJSON feature collection keeping only the features that match the filter
+     *
+     * @param inputStream The GeoJSON content
+     * @param filter      The predicates the features must match
+     * @return The earthquake response containing the matching features. @See {@link EarthquakeResponse}
+     * @throws IOException when the content can not be read or is not a feature collection
+     */
+    public EarthquakeResponse parse(InputStream inputStream, FeatureFilter filter) throws IOException {
+        List<Feature> features = new ArrayList<>();
+        EarthquakeResponse earthquakeResponse = parse(inputStream, filter, features::add);
+        earthquakeResponse.setFeatures(features);
+        if (earthquakeResponse.getMetadata() != null) {
+            earthquakeResponse.getMetadata().setCount(features.size());
+        }
+        return earthquakeResponse;
+    }
+
+    /**
+     * Parses a GeoJSON feature collection handing every matching feature to the consumer as soon as it is read
+     *
+     * @param inputStream     The GeoJSON content
+     * @param filter          The predicates the features must match
+     * @param featureConsumer The consumer of the matching features
+     * @return The earthquake response without features. @See {@link EarthquakeResponse}
+     * @throws IOException when the content can not be read or is not a feature collection
+     */
+    public EarthquakeResponse parse(InputStream inputStream, FeatureFilter filter, Consumer<Feature> featureConsumer)
+            throws IOException {
+        EarthquakeResponse earthquakeResponse = new EarthquakeResponse();
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("GeoJSON content is not an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                switch (fieldName) {
+                    case "type":
+                        earthquakeResponse.setType(parser.getValueAsString());
+                        break;
+                    case "metadata":
+                        earthquakeResponse.setMetadata(objectMapper.readValue(parser, Metadata.class));
+                        break;
+                    case "bbox":
+                        earthquakeResponse.setBbox(objectMapper.readValue(parser, Double[].class));
+                        break;
+                    case "features":
+                        parseFeatures(parser, filter, featureConsumer);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        return earthquakeResponse;
+    }
+
+    private void parseFeatures(JsonParser parser, FeatureFilter filter, Consumer<Feature> featureConsumer)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (filter.isEmpty()) {
+                featureConsumer.accept(objectMapper.readValue(parser, Feature.class));
+                continue;
+            }
+            TokenBuffer featureTokens = new TokenBuffer(parser);
+            featureTokens.copyCurrentStructure(parser);
+            if (matches(featureTokens, filter)) {
+                try (JsonParser featureParser = featureTokens.asParser(objectMapper)) {
+                    featureConsumer.accept(objectMapper.readValue(featureParser, Feature.class));
+                }
+            }
+        }
+    }
+
+    private boolean matches(TokenBuffer featureTokens, FeatureFilter filter) throws IOException {
+        String place = null;
+        Double mag = null;
+        Long time = null;
+        try (JsonParser parser = featureTokens.asParser()) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!"properties".equals(fieldName) || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String propertyName = parser.getCurrentName();
+                    JsonToken propertyValue = parser.nextToken();
+                    if (propertyValue == JsonToken.VALUE_NULL) {
+                        continue;
+                    }
+                    switch (propertyName) {
+                        case "place":
+                            place = parser.getValueAsString();
+                            break;
+                        case "mag":
+                            mag = parser.getValueAsDouble();
+                            break;
+                        case "time":
+                            time = parser.getValueAsLong();
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return filter.matches(place, mag, time);
+    }
+}
@@ -0,0 +1,180 @@
+package com.mpescarmona.earthquake.api.resilience;
+
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker and bulkhead of the calls to the EarthQuake USGS service.
+ * The breaker opens when failureRateThreshold percent of the last slidingWindowSize calls failed or took longer
+ * than slowCallMs, once at least minimumCalls were recorded, and rejects every call for openMs. Then a single
+ * trial call is let through: its success closes the breaker, its failure opens it again.
+ * The bulkhead runs at most maxConcurrentCalls calls at a time and rejects the calls that can not start within
+ * maxWaitMs, so a slow service does not hold every request thread.
+ */
+@Slf4j
+@Component
+public class EarthquakeUpstreamGuard {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final EarthquakeMetrics earthquakeMetrics;
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long slowCallMs;
+    private final long openMs;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    // outcomes of the last calls, true when the call failed or was slow
+    private final boolean[] outcomes;
+    private int nextOutcome;
+    private int recordedCalls;
+    private int failedCalls;
+    private State state = State.CLOSED;
+    private long openedAt;
+
+    public EarthquakeUpstreamGuard(EarthquakeMetrics earthquakeMetrics,
+                                   @Value("${earthquake.breaker.failureRateThreshold}") int failureRateThreshold,
+                                   @Value("${earthquake.breaker.slidingWindowSize}") int slidingWindowSize,
+                                   @Value("${earthquake.breaker.minimumCalls}") int minimumCalls,
+                                   @Value("${earthquake.breaker.slowCallMs}") long slowCallMs,
+                                   @Value("${earthquake.breaker.openMs}") long openMs,
+                                   @Value("${earthquake.bulkhead.maxConcurrentCalls}") int maxConcurrentCalls,
+                                   @Value("${earthquake.bulkhead.maxWaitMs}") long maxWaitMs) {
+        this.earthquakeMetrics = earthquakeMetrics;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.slowCallMs = slowCallMs;
+        this.openMs = openMs;
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+        this.outcomes = new boolean[slidingWindowSize];
+        earthquakeMetrics.gaugeBreakerState(this, guard -> guard.getState().ordinal());
+    }
+
+    /**
+     * Runs a call to the EarthQuake USGS service when the breaker and the bulkhead let it through, recording
+     * its outcome. Client errors are the fault of the request, they count as successful calls.
+     *
+     * @param call The call to the EarthQuake USGS service
+     * @param <T>  The type of its result
+     * @return The result of the call
+     * @throws UpstreamUnavailableException when the call is rejected without being sent
+     */
+    public <T> T execute(Supplier<T> call) {
+        acquirePermit();
+        try {
+            acquireBreaker();
+            long startNanos = System.nanoTime();
+            boolean failed = true;
+            try {
+                T result = call.get();
+                failed = false;
+                return result;
+            } catch (HttpClientErrorException ex) {
+                failed = false;
+                throw ex;
+            } finally {
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                record(failed || elapsedMs > slowCallMs);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Checks whether a call would be let through by the breaker, either because it is closed or because it is
+     * open for longer than openMs and waits for a trial call
+     *
+     * @return true if a call would be sent to the EarthQuake USGS service
+     */
+    public synchronized boolean isCallPermitted() {
+        return state == State.CLOSED || (state == State.OPEN && getRetryAfterMs() <= 0);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void acquirePermit() {
+        try {
+            if (permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        earthquakeMetrics.countRejected("full");
+        throw new UpstreamUnavailableException("The bulkhead of the EarthQuake USGS service is full", maxWaitMs);
+    }
+
+    private synchronized void acquireBreaker() {
+        if (state == State.OPEN && getRetryAfterMs() <= 0) {
+            // this call is the trial, the others are rejected until it ends
+            transition(State.HALF_OPEN);
+            return;
+        }
+        if (state != State.CLOSED) {
+            earthquakeMetrics.countRejected("open");
+            long retryAfterMs = state == State.OPEN ? getRetryAfterMs() : slowCallMs;
+            throw new UpstreamUnavailableException("The circuit breaker of the EarthQuake USGS service is " + state,
+                    retryAfterMs);
+        }
+    }
+
+    private synchronized void record(boolean failed) {
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open();
+            } else {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a call started before the breaker opened
+            return;
+        }
+
+        if (recordedCalls == outcomes.length) {
+            failedCalls -= outcomes[nextOutcome] ? 1 : 0;
+        } else {
+            recordedCalls++;
+        }
+        outcomes[nextOutcome] = failed;
+        failedCalls += failed ? 1 : 0;
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+
+        if (recordedCalls >= minimumCalls && failedCalls * 100 >= failureRateThreshold * recordedCalls) {
+            log.error("action=record, failedCalls={}, recordedCalls={}", failedCalls, recordedCalls);
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = System.currentTimeMillis();
+        transition(State.OPEN);
+    }
+
+    private void transition(State newState) {
+        log.info("action=transition, from={}, to={}", state, newState);
+        state = newState;
+        if (newState == State.CLOSED) {
+            nextOutcome = 0;
+            recordedCalls = 0;
+            failedCalls = 0;
+        }
+    }
+
+    private long getRetryAfterMs() {
+        return openedAt + openMs - System.currentTimeMillis();
+    }
+}
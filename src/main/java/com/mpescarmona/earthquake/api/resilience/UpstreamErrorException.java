@@ -0,0 +1,13 @@
+package com.mpescarmona.earthquake.api.resilience;
+
+/**
+ * Thrown when a call to the EarthQuake USGS service is sent but fails, because it answers an error, does not
+ * answer in time or sends a body that can not be read
+ */
+public class UpstreamErrorException extends RuntimeException {
+    private static final long serialVersionUID = 5732257597013106790L;
+
+    public UpstreamErrorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
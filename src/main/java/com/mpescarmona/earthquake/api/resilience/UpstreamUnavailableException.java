@@ -0,0 +1,25 @@
+package com.mpescarmona.earthquake.api.resilience;
+
+/**
+ * Thrown when a call to the EarthQuake USGS service is rejected without being sent, because the circuit breaker
+ * is open or the bulkhead is full
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 8180401092659504214L;
+
+    private final long retryAfterMs;
+
+    public UpstreamUnavailableException(String message, long retryAfterMs) {
+        super(message);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * Gets the time after which the calls may be accepted again
+     *
+     * @return The time to wait, in millis
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -1,6 +1,16 @@
 package com.mpescarmona.earthquake.api.service;
 
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeBatchResponse;
 import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeStatsResponse;
+import com.mpescarmona.earthquake.api.dto.BatchQueryRequestDto;
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto;
+import com.mpescarmona.earthquake.api.dto.PageRequestDto;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface IEarthquakeService {
     /**
@@ -10,7 +20,19 @@ public interface IEarthquakeService {
      * @param endTime   The end date of range
      * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
      */
-    EarthquakeResponse getEarthquakesByDateRange(String startTime, String endTime);
+    default EarthquakeResponse getEarthquakesByDateRange(String startTime, String endTime) {
+        return getEarthquakesByDateRange(startTime, endTime, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes by date range
+     *
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @param page      The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
+    EarthquakeResponse getEarthquakesByDateRange(String startTime, String endTime, PageRequestDto page);
 
     /**
      * Gets earthquakes by two date ranges
@@ -21,8 +43,43 @@ public interface IEarthquakeService {
      * @param endTimeRange2   The end date of second range
      * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
      */
+    default EarthquakeResponse getEarthquakesByDateRanges(String startTimeRange1, String endTimeRange1,
+                                                          String startTimeRange2, String endTimeRange2) {
+        return getEarthquakesByDateRanges(startTimeRange1, endTimeRange1, startTimeRange2, endTimeRange2, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes by two date ranges
+     *
+     * @param startTimeRange1 The start date of first range
+     * @param endTimeRange1   The end date of first range
+     * @param startTimeRange2 The start date of second range
+     * @param endTimeRange2   The end date of second range
+     * @param page            The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
     EarthquakeResponse getEarthquakesByDateRanges(String startTimeRange1, String endTimeRange1,
-                                                  String startTimeRange2, String endTimeRange2);
+                                                  String startTimeRange2, String endTimeRange2,
+                                                  PageRequestDto page);
+
+    /**
+     * Gets earthquakes by any number of date ranges, fetching the ranges concurrently
+     *
+     * @param dateRanges The start and end dates of each range
+     * @return The earthquake response containing the earthquakes of all the ranges. @See {@link EarthquakeResponse}
+     */
+    default EarthquakeResponse getEarthquakesByDateRanges(List<DateRangeRequestDto> dateRanges) {
+        return getEarthquakesByDateRanges(dateRanges, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes by any number of date ranges, fetching the ranges concurrently
+     *
+     * @param dateRanges The start and end dates of each range
+     * @param page       The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of all the ranges. @See {@link EarthquakeResponse}
+     */
+    EarthquakeResponse getEarthquakesByDateRanges(List<DateRangeRequestDto> dateRanges, PageRequestDto page);
 
     /**
      * Gets earthquakes by magnitude range
@@ -31,7 +88,19 @@ public interface IEarthquakeService {
      * @param maxMagnitude The second magnitude of range
      * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
      */
-    EarthquakeResponse getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude);
+    default EarthquakeResponse getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude) {
+        return getEarthquakesByMagnitudeRange(minMagnitude, maxMagnitude, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes by magnitude range
+     *
+     * @param minMagnitude The first magnitude of range
+     * @param maxMagnitude The second magnitude of range
+     * @param page         The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
+    EarthquakeResponse getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude, PageRequestDto page);
 
     /**
      * Gets earthquakes by country
@@ -39,7 +108,18 @@ public interface IEarthquakeService {
      * @param country The country
      * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
      */
-    EarthquakeResponse getEarthquakesByCountry(String country);
+    default EarthquakeResponse getEarthquakesByCountry(String country) {
+        return getEarthquakesByCountry(country, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes by country
+     *
+     * @param country The country
+     * @param page    The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
+    EarthquakeResponse getEarthquakesByCountry(String country, PageRequestDto page);
 
     /**
      * Gets earthquakes occurred in the given countries and between the date range
@@ -50,8 +130,24 @@ public interface IEarthquakeService {
      * @param endTime    The end date of range
      * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
      */
+    default EarthquakeResponse getEarthquakesByCountriesAndDateRange(String countryOne, String countryTwo,
+                                                                     String startTime, String endTime) {
+        return getEarthquakesByCountriesAndDateRange(countryOne, countryTwo, startTime, endTime, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes occurred in the given countries and between the date range
+     *
+     * @param countryOne The first country
+     * @param countryTwo The second country
+     * @param startTime  The start date of range
+     * @param endTime    The end date of range
+     * @param page       The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
     EarthquakeResponse getEarthquakesByCountriesAndDateRange(String countryOne, String countryTwo,
-                                                             String startTime, String endTime);
+                                                             String startTime, String endTime,
+                                                             PageRequestDto page);
 
     /**
      * Gets earthquakes by date range, magnitude range, and country
@@ -63,7 +159,107 @@ public interface IEarthquakeService {
      * @param country      The country
      * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
      */
+    default EarthquakeResponse getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(String startTime, String endTime,
+                                                                                     String minMagnitude, String maxMagnitude,
+                                                                                     String country) {
+        return getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(startTime, endTime, minMagnitude, maxMagnitude, country, PageRequestDto.UNPAGED);
+    }
+
+    /**
+     * Gets earthquakes by date range, magnitude range, and country
+     *
+     * @param startTime    The start date of range
+     * @param endTime      The end date of range
+     * @param minMagnitude The first magnitude of range
+     * @param maxMagnitude The second magnitude of range
+     * @param country      The country
+     * @param page         The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
     EarthquakeResponse getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(String startTime, String endTime,
                                                                              String minMagnitude, String maxMagnitude,
-                                                                             String country);
+                                                                             String country, PageRequestDto page);
+
+    /**
+     * Gets earthquakes within a distance of a point, by date range and magnitude range
+     *
+     * @param latitude     The latitude of the point, in degrees
+     * @param longitude    The longitude of the point, in degrees
+     * @param radiusKm     The maximum distance to the point, in kilometers
+     * @param startTime    The start date of range, 30 days before the end when not given
+     * @param endTime      The end date of range, now when not given
+     * @param minMagnitude The first magnitude of range, optional
+     * @param maxMagnitude The second magnitude of range, optional
+     * @param page         The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
+    EarthquakeResponse getEarthquakesNearby(Double latitude, Double longitude, Double radiusKm,
+                                            String startTime, String endTime,
+                                            String minMagnitude, String maxMagnitude, PageRequestDto page);
+
+    /**
+     * Gets earthquakes inside a bounding box, by date range and magnitude range
+     *
+     * @param boundingBox  The bounding box
+     * @param startTime    The start date of range, 30 days before the end when not given
+     * @param endTime      The end date of range, now when not given
+     * @param minMagnitude The first magnitude of range, optional
+     * @param maxMagnitude The second magnitude of range, optional
+     * @param page         The limit, cursor and order of the page
+     * @return The earthquake response containing the earthquakes of the page. @See {@link EarthquakeResponse}
+     */
+    EarthquakeResponse getEarthquakesByBoundingBox(BoundingBox boundingBox, String startTime, String endTime,
+                                                   String minMagnitude, String maxMagnitude, PageRequestDto page);
+
+    /**
+     * Gets the statistics of the earthquakes of a date range: counts, maximum and mean magnitude and sum of
+     * significance, grouped by day, magnitude bin and region
+     *
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @param groupBy   The dimensions to group by, day, magnitude or region, none for the whole range
+     * @return The statistics of every group. @See {@link EarthquakeStatsResponse}
+     */
+    EarthquakeStatsResponse getEarthquakeStats(String startTime, String endTime, List<String> groupBy);
+
+    /**
+     * Gets the earthquakes of every query of a batch, sharing the calls to the EarthQuake USGS service between
+     * queries whose results overlap and making the calls in parallel
+     *
+     * @param queries The date range, magnitude range and country queries of the batch
+     * @return The answers to the queries, in their order. @See {@link EarthquakeBatchResponse}
+     */
+    EarthquakeBatchResponse getEarthquakesInBatch(List<BatchQueryRequestDto> queries);
+
+    /**
+     * Streams the earthquakes of a date range, handing them to the consumer a call to the EarthQuake USGS service
+     * at a time. The earthquakes of a call, at most maxLimit, are held until it ends, so a slow consumer does not
+     * hold up the call, and a wide range is read in windows, so it does not have to fit in memory.
+     *
+     * @param startTime       The start date of range
+     * @param endTime         The end date of range
+     * @param featureConsumer The consumer of the earthquakes
+     */
+    void streamEarthquakesByDateRange(String startTime, String endTime, Consumer<Feature> featureConsumer);
+
+    /**
+     * Streams the earthquakes of a magnitude range, handing them to the consumer once the call to the EarthQuake
+     * USGS service ends. The call answers at most maxLimit earthquakes, which are held until then, so a slow
+     * consumer does not hold up the call.
+     *
+     * @param minMagnitude    The first magnitude of range
+     * @param maxMagnitude    The second magnitude of range
+     * @param featureConsumer The consumer of the earthquakes
+     */
+    void streamEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude, Consumer<Feature> featureConsumer);
+
+    /**
+     * Streams the earthquakes of a country, handing them to the consumer once the call to the EarthQuake USGS
+     * service ends. The call answers at most maxLimit earthquakes, which are held until then, so a slow consumer
+     * does not hold up the call.
+     *
+     * @param country         The country
+     * @param featureConsumer The consumer of the earthquakes
+     */
+    void streamEarthquakesByCountry(String country, Consumer<Feature> featureConsumer);
 }
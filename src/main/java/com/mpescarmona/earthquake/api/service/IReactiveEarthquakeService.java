@@ -0,0 +1,73 @@
+package com.mpescarmona.earthquake.api.service;
+
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking variant of {@link IEarthquakeService}. No thread waits for the EarthQuake USGS service while a
+ * call is in flight. The returned publishers are empty when the earthquakes could not be retrieved.
+ */
+public interface IReactiveEarthquakeService {
+    /**
+     * Gets earthquakes by date range
+     *
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
+     */
+    Mono<EarthquakeResponse> getEarthquakesByDateRange(String startTime, String endTime);
+
+    /**
+     * Gets earthquakes by any number of date ranges, fetching the ranges concurrently
+     *
+     * @param dateRanges The start and end dates of each range
+     * @return The earthquake response containing the earthquakes of all the ranges. @See {@link EarthquakeResponse}
+     */
+    Mono<EarthquakeResponse> getEarthquakesByDateRanges(List<DateRangeRequestDto> dateRanges);
+
+    /**
+     * Gets earthquakes by magnitude range
+     *
+     * @param minMagnitude The first magnitude of range
+     * @param maxMagnitude The second magnitude of range
+     * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
+     */
+    Mono<EarthquakeResponse> getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude);
+
+    /**
+     * Gets earthquakes by country
+     *
+     * @param country The country
+     * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
+     */
+    Mono<EarthquakeResponse> getEarthquakesByCountry(String country);
+
+    /**
+     * Gets earthquakes occurred in the given countries and between the date range
+     *
+     * @param countryOne The first country
+     * @param countryTwo The second country
+     * @param startTime  The start date of range
+     * @param endTime    The end date of range
+     * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
+     */
+    Mono<EarthquakeResponse> getEarthquakesByCountriesAndDateRange(String countryOne, String countryTwo,
+                                                                   String startTime, String endTime);
+
+    /**
+     * Gets earthquakes by date range, magnitude range, and country
+     *
+     * @param startTime    The start date of range
+     * @param endTime      The end date of range
+     * @param minMagnitude The first magnitude of range
+     * @param maxMagnitude The second magnitude of range
+     * @param country      The country
+     * @return The earthquake response containing the earthquakes. @See {@link EarthquakeResponse}
+     */
+    Mono<EarthquakeResponse> getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(String startTime, String endTime,
+                                                                                   String minMagnitude, String maxMagnitude,
+                                                                                   String country);
+}
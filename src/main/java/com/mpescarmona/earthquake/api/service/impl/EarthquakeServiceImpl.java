@@ -1,26 +1,69 @@
 package com.mpescarmona.earthquake.api.service.impl;
 
+import com.mpescarmona.earthquake.api.batch.BatchFetch;
+import com.mpescarmona.earthquake.api.batch.EarthquakeBatchPlanner;
+import com.mpescarmona.earthquake.api.cache.EarthquakeResponseCache;
+import com.mpescarmona.earthquake.api.domain.BatchQueryType;
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.domain.EarthquakeStats;
 import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.Metadata;
+import com.mpescarmona.earthquake.api.domain.StatsDimension;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeBatchResponse;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeBatchResult;
 import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeStatsResponse;
+import com.mpescarmona.earthquake.api.dto.BatchQueryRequestDto;
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto;
+import com.mpescarmona.earthquake.api.dto.PageRequestDto;
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer;
 import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import com.mpescarmona.earthquake.api.page.EarthquakePager;
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser;
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard;
+import com.mpescarmona.earthquake.api.resilience.UpstreamErrorException;
+import com.mpescarmona.earthquake.api.resilience.UpstreamUnavailableException;
 import com.mpescarmona.earthquake.api.service.IEarthquakeService;
+import com.mpescarmona.earthquake.api.store.EarthquakeStore;
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import com.mpescarmona.earthquake.api.window.EarthquakeWindowSplitter;
+import com.mpescarmona.earthquake.api.window.TimeWindow;
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -28,25 +71,57 @@ import java.util.stream.Collectors;
 @NoArgsConstructor
 @AllArgsConstructor
 public class EarthquakeServiceImpl implements IEarthquakeService {
+    private static final int DEFAULT_DAYS = 30;
+
     @Autowired
     private RestTemplate restTemplate;
     @Autowired
     private EarthquakeUrlHelper earthquakeUrlHelper;
+    @Autowired
+    private EarthquakeStore earthquakeStore;
+    @Autowired
+    @Qualifier("earthquakeTaskExecutor")
+    private TaskExecutor earthquakeTaskExecutor;
+    @Autowired
+    private EarthquakeResponseCache earthquakeResponseCache;
+    @Autowired
+    private GeoJsonStreamingParser geoJsonStreamingParser;
+    @Autowired
+    private CountryGazetteer countryGazetteer;
+    @Autowired
+    private EarthquakePager earthquakePager;
+    @Autowired
+    private EarthquakeWindowSplitter earthquakeWindowSplitter;
+    @Autowired
+    private EarthquakeMetrics earthquakeMetrics;
+    @Autowired
+    private EarthquakeUpstreamGuard earthquakeUpstreamGuard;
+    @Autowired
+    private EarthquakeBatchPlanner earthquakeBatchPlanner;
 
     @Override
-    public EarthquakeResponse getEarthquakesByDateRange(String startTime, String endTime) {
-        log.info("action=getEarthquakesByDateRange, startTime={}, endTime={}", startTime, endTime);
+    public EarthquakeResponse getEarthquakesByDateRange(String startTime, String endTime, PageRequestDto page) {
+        log.info("action=getEarthquakesByDateRange, startTime={}, endTime={}, page={}", startTime, endTime, page);
         EarthquakeResponse earthquakeResponse = null;
         try {
-            String url = earthquakeUrlHelper.buildEarthquakeUrlByDates(startTime, endTime);
-            log.info("action=getEarthquakesByDateRange, url={}", url);
+            Optional<List<Feature>> storedFeatures = findInStore("getEarthquakesByDateRange", startTime, endTime,
+                    Collections.emptyList(), FeatureFilter.NONE);
+            if (storedFeatures.isPresent()) {
+                earthquakeResponse = earthquakePager.pageFeatures(buildStoreResponse(storedFeatures.get()), page);
+                log.info("action=getEarthquakesByDateRange, source=store, count={}", storedFeatures.get().size());
+            } else {
+                String url = earthquakeUrlHelper.buildEarthquakeUrlByDates(startTime, endTime);
+                log.info("action=getEarthquakesByDateRange, url={}", url);
 
-            ResponseEntity<EarthquakeResponse> response = callEarthquakeService(url);
-            if (response.getStatusCode().is2xxSuccessful()) {
-                earthquakeResponse = response.getBody();
-            }
+                earthquakeResponse = page.isPaged()
+                        ? callEarthquakeService("getEarthquakesByDateRange", url, FeatureFilter.NONE, page)
+                        : callEarthquakeServiceByDates("getEarthquakesByDateRange", startTime, endTime);
 
-            log.info("action=getEarthquakesByDateRange, result={}", response);
+                log.info("action=getEarthquakesByDateRange, result={}", earthquakeResponse);
+            }
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesByDateRange, error={}", ex.getMessage());
+            throw ex;
         } catch (Exception ex) {
             log.error("action=getEarthquakesByDateRange, error={}", ex.getMessage());
         }
@@ -55,36 +130,64 @@ public class EarthquakeServiceImpl implements IEarthquakeService {
 
     @Override
     public EarthquakeResponse getEarthquakesByDateRanges(String startTimeRange1, String endTimeRange1,
-                                                         String startTimeRange2, String endTimeRange2) {
+                                                         String startTimeRange2, String endTimeRange2,
+                                                         PageRequestDto page) {
         log.info("action=getEarthquakesByDateRanges, startTimeRange1={}, endTimeRange1={}, startTimeRange2={}, " +
                 "endTimeRange2={}", startTimeRange1, endTimeRange1, startTimeRange2, endTimeRange2);
-        EarthquakeResponse responseRangeOne = getEarthquakesByDateRange(startTimeRange1, endTimeRange1);
-        EarthquakeResponse responseRangeTwo = getEarthquakesByDateRange(startTimeRange2, endTimeRange2);
+        return getEarthquakesByDateRanges(Arrays.asList(
+                DateRangeRequestDto.builder().startTime(startTimeRange1).endTime(endTimeRange1).build(),
+                DateRangeRequestDto.builder().startTime(startTimeRange2).endTime(endTimeRange2).build()), page);
+    }
 
-        List<Feature> allFeatures = new ArrayList<>(responseRangeOne.getFeatures());
-        allFeatures.addAll(responseRangeTwo.getFeatures());
-        responseRangeOne.setFeatures(allFeatures);
-        Integer total = responseRangeOne.getMetadata().getCount() + responseRangeTwo.getMetadata().getCount();
-        responseRangeOne.getMetadata().setCount(total);
+    @Override
+    public EarthquakeResponse getEarthquakesByDateRanges(List<DateRangeRequestDto> dateRanges, PageRequestDto page) {
+        log.info("action=getEarthquakesByDateRanges, dateRanges={}, page={}", dateRanges, page);
+        List<CompletableFuture<EarthquakeResponse>> futures = dateRanges.stream()
+                .map(dateRange -> CompletableFuture.supplyAsync(
+                        () -> getEarthquakesByDateRange(dateRange.getStartTime(), dateRange.getEndTime()),
+                        earthquakeTaskExecutor))
+                .collect(Collectors.toList());
+        List<EarthquakeResponse> responses;
+        try {
+            responses = futures.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+        } catch (CompletionException ex) {
+            log.error("action=getEarthquakesByDateRanges, error={}", ex.getCause().getMessage());
+            throw unwrapUpstreamFailure(ex);
+        }
+
+        if (responses.isEmpty() || responses.stream().anyMatch(Objects::isNull)) {
+            log.error("action=getEarthquakesByDateRanges, error=missing response for some of the date ranges");
+            return null;
+        }
 
-        log.info("action=getEarthquakesByDateRanges, result={}", responseRangeOne);
-        return responseRangeOne;
+        EarthquakeResponse mergedResponse = mergeResponses(responses);
+        try {
+            // the ranges are read whole, then ordered and paged together
+            mergedResponse = earthquakePager.pageFeatures(mergedResponse, page);
+        } catch (Exception ex) {
+            log.error("action=getEarthquakesByDateRanges, error={}", ex.getMessage());
+            return null;
+        }
+
+        log.info("action=getEarthquakesByDateRanges, result={}", mergedResponse);
+        return mergedResponse;
     }
 
     @Override
-    public EarthquakeResponse getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude) {
-        log.info("action=getEarthquakesByMagnitudeRanges, minMagnitude={}, maxMagnitude={}", minMagnitude, maxMagnitude);
+    public EarthquakeResponse getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude, PageRequestDto page) {
+        log.info("action=getEarthquakesByMagnitudeRanges, minMagnitude={}, maxMagnitude={}, page={}", minMagnitude, maxMagnitude, page);
         String url = earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes(minMagnitude, maxMagnitude);
         log.info("action=getEarthquakesByMagnitudeRanges, url={}", url);
         EarthquakeResponse earthquakeResponse = null;
         try {
-            ResponseEntity<EarthquakeResponse> response = callEarthquakeService(url);
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                earthquakeResponse = response.getBody();
-            }
+            earthquakeResponse = callEarthquakeService("getEarthquakesByMagnitudeRange", url, FeatureFilter.NONE, page);
 
-            log.info("action=getEarthquakesByMagnitudeRanges, result={}", response);
+            log.info("action=getEarthquakesByMagnitudeRanges, result={}", earthquakeResponse);
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesByMagnitudeRanges, error={}", ex.getMessage());
+            throw ex;
         } catch (Exception ex) {
             log.error("action=getEarthquakesByMagnitudeRanges, error={}", ex.getMessage());
         }
@@ -92,99 +195,724 @@ public class EarthquakeServiceImpl implements IEarthquakeService {
     }
 
     @Override
-    public EarthquakeResponse getEarthquakesByCountry(String country) {
-        log.info("action=getEarthquakesByCountry, country={}", country);
-        String url = earthquakeUrlHelper.buildEarthQuakeBaseUrlAndFormat();
+    public EarthquakeResponse getEarthquakesByCountry(String country, PageRequestDto page) {
+        log.info("action=getEarthquakesByCountry, country={}, page={}", country, page);
+        // narrow the query to the area of the country, the place is still checked locally
+        String url = countryGazetteer.findBoundingBox(country)
+                .map(earthquakeUrlHelper::buildEarthquakeUrlByBoundingBox)
+                .orElseGet(earthquakeUrlHelper::buildEarthQuakeBaseUrlAndFormat);
         log.info("action=getEarthquakesByCountry, url={}", url);
         EarthquakeResponse earthquakeResponse = null;
         try {
-            ResponseEntity<EarthquakeResponse> response = callEarthquakeService(url);
+            FeatureFilter filter = FeatureFilter.builder()
+                    .countries(Collections.singletonList(country))
+                    .build();
+            earthquakeResponse = callEarthquakeService("getEarthquakesByCountry", url, filter, page);
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                earthquakeResponse = response.getBody();
-            }
-
-            log.info("action=getEarthquakesByCountry, result={}", response);
+            log.info("action=getEarthquakesByCountry, result={}", earthquakeResponse);
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesByCountry, error={}", ex.getMessage());
+            throw ex;
         } catch (Exception ex) {
             log.error("action=getEarthquakesByCountry, error={}", ex.getMessage());
         }
 
-        if (Optional.ofNullable(earthquakeResponse).isPresent()) {
-            List<Feature> filteredFeatures = earthquakeResponse.getFeatures().stream()
-                    .filter(feature -> Objects.nonNull(feature.getProperties()))
-                    .filter(feature -> Objects.nonNull(feature.getProperties().getPlace()))
-                    .filter(feature -> feature.getProperties().getPlace().toLowerCase().contains(country.toLowerCase()))
-                    .collect(Collectors.toList());
-            earthquakeResponse.setFeatures(filteredFeatures);
-            earthquakeResponse.getMetadata().setCount(filteredFeatures.size());
-        }
-
         return earthquakeResponse;
     }
 
     @Override
-    public EarthquakeResponse getEarthquakesByCountriesAndDateRange(String countryOne, String countryTwo, String startTime, String endTime) {
-        log.info("action=getEarthquakesByCountriesAndDateRange, countryOne={}, countryTwo={}, startTime={}, endTime={}", countryOne, countryTwo, startTime, endTime);
-        EarthquakeResponse response = getEarthquakesByDateRange(startTime, endTime);
-
-        if (Optional.ofNullable(response).isPresent()) {
-            List<Feature> filteredFeatures = response.getFeatures().stream()
-                    .filter(feature -> Objects.nonNull(feature.getProperties()))
-                    .filter(feature -> Objects.nonNull(feature.getProperties().getPlace()))
-                    .filter(feature -> feature.getProperties().getPlace().toLowerCase().contains(countryOne.toLowerCase()) ||
-                            feature.getProperties().getPlace().toLowerCase().contains(countryTwo.toLowerCase()))
-                    .collect(Collectors.toList());
-            response.setFeatures(filteredFeatures);
-            response.getMetadata().setCount(filteredFeatures.size());
+    public EarthquakeResponse getEarthquakesByCountriesAndDateRange(String countryOne, String countryTwo, String startTime, String endTime,
+                                                                    PageRequestDto page) {
+        log.info("action=getEarthquakesByCountriesAndDateRange, countryOne={}, countryTwo={}, startTime={}, endTime={}, page={}", countryOne, countryTwo, startTime, endTime, page);
+        List<String> countries = Arrays.asList(countryOne, countryTwo);
+        EarthquakeResponse earthquakeResponse = null;
+        try {
+            Optional<List<Feature>> storedFeatures = findInStore("getEarthquakesByCountriesAndDateRange", startTime, endTime,
+                    countries, FeatureFilter.NONE);
+            if (storedFeatures.isPresent()) {
+                earthquakeResponse = earthquakePager.pageFeatures(buildStoreResponse(storedFeatures.get()), page);
+                log.info("action=getEarthquakesByCountriesAndDateRange, source=store, count={}", storedFeatures.get().size());
+            } else {
+                BoundingBox boundingBox = countryGazetteer.findBoundingBox(countries).orElse(null);
+                String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(startTime, endTime,
+                        null, null, boundingBox);
+                log.info("action=getEarthquakesByCountriesAndDateRange, url={}", url);
+                FeatureFilter filter = FeatureFilter.builder()
+                        .countries(countries)
+                        .build();
+                earthquakeResponse = callEarthquakeService("getEarthquakesByCountriesAndDateRange", url, filter, page);
+            }
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesByCountriesAndDateRange, error={}", ex.getMessage());
+            throw ex;
+        } catch (Exception ex) {
+            log.error("action=getEarthquakesByCountriesAndDateRange, error={}", ex.getMessage());
         }
 
-        log.info("action=getEarthquakesByCountriesAndDateRange, result={}", response);
-        return response;
+        log.info("action=getEarthquakesByCountriesAndDateRange, result={}", earthquakeResponse);
+        return earthquakeResponse;
     }
 
     @Override
     public EarthquakeResponse getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(String startTime, String endTime,
                                                                                    String minMagnitude, String maxMagnitude,
-                                                                                   String country) {
+                                                                                   String country, PageRequestDto page) {
         log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, startTime={}, endTime={}, " +
-                "minMagnitude={}, maxMagnitude={}, country={}", startTime, endTime, minMagnitude, maxMagnitude, country);
-        String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudes(startTime, endTime, minMagnitude, maxMagnitude);
+                "minMagnitude={}, maxMagnitude={}, country={}, page={}", startTime, endTime, minMagnitude, maxMagnitude, country, page);
+        BoundingBox boundingBox = countryGazetteer.findBoundingBox(country).orElse(null);
+        String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(startTime, endTime,
+                minMagnitude, maxMagnitude, boundingBox);
         log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, url={}", url);
         EarthquakeResponse earthquakeResponse = null;
         try {
-            ResponseEntity<EarthquakeResponse> response = callEarthquakeService(url);
+            FeatureFilter countryFilter = FeatureFilter.builder()
+                    .countries(Collections.singletonList(country))
+                    .build();
+            FeatureFilter magnitudeFilter = FeatureFilter.builder()
+                    .minMagnitude(parseMagnitude(minMagnitude))
+                    .maxMagnitude(parseMagnitude(maxMagnitude))
+                    .build();
+            Optional<List<Feature>> storedFeatures = findInStore("getEarthquakesByDateRangeAndMagnitudeRangeAndCountry",
+                    startTime, endTime, countryFilter.getCountries(), magnitudeFilter);
+            if (storedFeatures.isPresent()) {
+                earthquakeResponse = earthquakePager.pageFeatures(buildStoreResponse(storedFeatures.get()), page);
+                log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, source=store");
+            } else {
+                earthquakeResponse = callEarthquakeService("getEarthquakesByDateRangeAndMagnitudeRangeAndCountry", url,
+                        countryFilter, page);
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                earthquakeResponse = response.getBody();
+                log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, result={}", earthquakeResponse);
             }
-
-            log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, result={}", response);
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, error={}", ex.getMessage());
+            throw ex;
         } catch (Exception ex) {
             log.error("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, error={}", ex.getMessage());
         }
 
-        if (Optional.ofNullable(earthquakeResponse).isPresent()) {
-            List<Feature> filteredFeatures = earthquakeResponse.getFeatures().stream()
-                    .filter(feature -> Objects.nonNull(feature.getProperties()))
-                    .filter(feature -> Objects.nonNull(feature.getProperties().getPlace()))
-                    .filter(feature -> feature.getProperties().getPlace().toLowerCase().contains(country.toLowerCase()))
-                    .collect(Collectors.toList());
-            earthquakeResponse.setFeatures(filteredFeatures);
-            earthquakeResponse.getMetadata().setCount(filteredFeatures.size());
+        return earthquakeResponse;
+    }
+
+    @Override
+    public EarthquakeResponse getEarthquakesNearby(Double latitude, Double longitude, Double radiusKm,
+                                                   String startTime, String endTime,
+                                                   String minMagnitude, String maxMagnitude, PageRequestDto page) {
+        log.info("action=getEarthquakesNearby, latitude={}, longitude={}, radiusKm={}, startTime={}, endTime={}, " +
+                "minMagnitude={}, maxMagnitude={}, page={}", latitude, longitude, radiusKm, startTime, endTime,
+                minMagnitude, maxMagnitude, page);
+        EarthquakeResponse earthquakeResponse = null;
+        try {
+            String end = endTime != null ? endTime : EarthquakeTimeUtil.formatUtc(System.currentTimeMillis());
+            String start = startTime != null ? startTime : defaultStartTime(end);
+            Optional<List<Feature>> storedFeatures = findInStore("getEarthquakesNearby", start, end,
+                    (startMillis, endMillis) -> earthquakeStore.findByTimeRangeAndRadius(startMillis, endMillis,
+                            latitude, longitude, radiusKm),
+                    buildMagnitudeFilter(minMagnitude, maxMagnitude));
+            if (storedFeatures.isPresent()) {
+                earthquakeResponse = earthquakePager.pageFeatures(buildStoreResponse(storedFeatures.get()), page);
+                log.info("action=getEarthquakesNearby, source=store, count={}", storedFeatures.get().size());
+            } else {
+                String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndCircle(start, end,
+                        minMagnitude, maxMagnitude, latitude, longitude, radiusKm);
+                log.info("action=getEarthquakesNearby, url={}", url);
+                earthquakeResponse = callEarthquakeService("getEarthquakesNearby", url, FeatureFilter.NONE, page);
+
+                log.info("action=getEarthquakesNearby, result={}", earthquakeResponse);
+            }
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesNearby, error={}", ex.getMessage());
+            throw ex;
+        } catch (Exception ex) {
+            log.error("action=getEarthquakesNearby, error={}", ex.getMessage());
         }
 
         return earthquakeResponse;
     }
 
-    private HttpEntity<String> buildEarthquakeRequestHeader() {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
-        return new HttpEntity<>(headers);
+    @Override
+    public EarthquakeResponse getEarthquakesByBoundingBox(BoundingBox boundingBox, String startTime, String endTime,
+                                                          String minMagnitude, String maxMagnitude, PageRequestDto page) {
+        log.info("action=getEarthquakesByBoundingBox, boundingBox={}, startTime={}, endTime={}, minMagnitude={}, " +
+                "maxMagnitude={}, page={}", boundingBox, startTime, endTime, minMagnitude, maxMagnitude, page);
+        EarthquakeResponse earthquakeResponse = null;
+        try {
+            String end = endTime != null ? endTime : EarthquakeTimeUtil.formatUtc(System.currentTimeMillis());
+            String start = startTime != null ? startTime : defaultStartTime(end);
+            Optional<List<Feature>> storedFeatures = findInStore("getEarthquakesByBoundingBox", start, end,
+                    (startMillis, endMillis) -> earthquakeStore.findByTimeRangeAndBoundingBox(startMillis, endMillis,
+                            boundingBox),
+                    buildMagnitudeFilter(minMagnitude, maxMagnitude));
+            if (storedFeatures.isPresent()) {
+                earthquakeResponse = earthquakePager.pageFeatures(buildStoreResponse(storedFeatures.get()), page);
+                log.info("action=getEarthquakesByBoundingBox, source=store, count={}", storedFeatures.get().size());
+            } else {
+                String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(start, end,
+                        minMagnitude, maxMagnitude, boundingBox);
+                log.info("action=getEarthquakesByBoundingBox, url={}", url);
+                earthquakeResponse = callEarthquakeService("getEarthquakesByBoundingBox", url, FeatureFilter.NONE, page);
+
+                log.info("action=getEarthquakesByBoundingBox, result={}", earthquakeResponse);
+            }
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakesByBoundingBox, error={}", ex.getMessage());
+            throw ex;
+        } catch (Exception ex) {
+            log.error("action=getEarthquakesByBoundingBox, error={}", ex.getMessage());
+        }
+
+        return earthquakeResponse;
+    }
+
+    @Override
+    public EarthquakeStatsResponse getEarthquakeStats(String startTime, String endTime, List<String> groupBy) {
+        log.info("action=getEarthquakeStats, startTime={}, endTime={}, groupBy={}", startTime, endTime, groupBy);
+        EarthquakeStatsResponse statsResponse = null;
+        try {
+            long startMillis = EarthquakeTimeUtil.parseEpochMillis(startTime)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid startTime " + startTime));
+            long endMillis = EarthquakeTimeUtil.parseEpochMillis(endTime)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid endTime " + endTime));
+            Set<StatsDimension> dimensions = EnumSet.noneOf(StatsDimension.class);
+            if (groupBy != null) {
+                groupBy.forEach(dimension -> dimensions.add(StatsDimension.valueOf(dimension.trim().toUpperCase(Locale.ROOT))));
+            }
+            if (!loadMissingDays("getEarthquakeStats", startMillis, endMillis)) {
+                log.error("action=getEarthquakeStats, error=the date range can not be held by the store");
+                return null;
+            }
+            List<EarthquakeStats> stats = earthquakeMetrics.recordFilter("getEarthquakeStats",
+                    () -> earthquakeStore.findStats(startMillis, endMillis, dimensions));
+            statsResponse = EarthquakeStatsResponse.builder()
+                    .generated(System.currentTimeMillis())
+                    .startTime(startTime)
+                    .endTime(endTime)
+                    .groupBy(new ArrayList<>(dimensions))
+                    .stats(stats)
+                    .build();
+            log.info("action=getEarthquakeStats, groups={}", stats.size());
+        } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+            log.error("action=getEarthquakeStats, error={}", ex.getMessage());
+            throw ex;
+        } catch (Exception ex) {
+            log.error("action=getEarthquakeStats, error={}", ex.getMessage());
+        }
+        return statsResponse;
+    }
+
+    @Override
+    public EarthquakeBatchResponse getEarthquakesInBatch(List<BatchQueryRequestDto> queries) {
+        log.info("action=getEarthquakesInBatch, queries={}", queries);
+        List<BatchFetch> fetches = earthquakeBatchPlanner.plan(queries);
+        List<CompletableFuture<EarthquakeResponse>> futures = fetches.stream()
+                .map(fetch -> CompletableFuture.supplyAsync(() -> fetchBatch(fetch), earthquakeTaskExecutor))
+                .collect(Collectors.toList());
+        EarthquakeBatchResult[] results = new EarthquakeBatchResult[queries.size()];
+        try {
+            for (int i = 0; i < fetches.size(); i++) {
+                EarthquakeResponse response = futures.get(i).join();
+                for (int position : fetches.get(i).getQueries()) {
+                    results[position] = answerBatchQuery(queries.get(position), response);
+                }
+            }
+        } catch (CompletionException ex) {
+            log.error("action=getEarthquakesInBatch, error={}", ex.getCause().getMessage());
+            throw unwrapUpstreamFailure(ex);
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                BatchQueryRequestDto query = queries.get(i);
+                results[i] = EarthquakeBatchResult.builder()
+                        .id(query != null ? query.getId() : null)
+                        .type(query != null ? query.getType() : null)
+                        .error("invalid query")
+                        .build();
+            }
+        }
+        log.info("action=getEarthquakesInBatch, queries={}, fetches={}", queries.size(), fetches.size());
+        return EarthquakeBatchResponse.builder()
+                .generated(System.currentTimeMillis())
+                .fetches(fetches.size())
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    @Override
+    public void streamEarthquakesByDateRange(String startTime, String endTime, Consumer<Feature> featureConsumer) {
+        log.info("action=streamEarthquakesByDateRange, startTime={}, endTime={}", startTime, endTime);
+        try {
+            Optional<List<Feature>> storedFeatures = findInStore("streamEarthquakesByDateRange", startTime, endTime,
+                    Collections.emptyList(), FeatureFilter.NONE);
+            if (storedFeatures.isPresent()) {
+                storedFeatures.get().forEach(featureConsumer);
+                log.info("action=streamEarthquakesByDateRange, source=store, count={}", storedFeatures.get().size());
+            } else {
+                streamEarthquakeServiceByDates("streamEarthquakesByDateRange", startTime, endTime, featureConsumer);
+            }
+        } catch (Exception ex) {
+            log.error("action=streamEarthquakesByDateRange, error={}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void streamEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude, Consumer<Feature> featureConsumer) {
+        log.info("action=streamEarthquakesByMagnitudeRange, minMagnitude={}, maxMagnitude={}", minMagnitude, maxMagnitude);
+        try {
+            streamEarthquakeService("streamEarthquakesByMagnitudeRange",
+                    earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes(minMagnitude, maxMagnitude), FeatureFilter.NONE,
+                    featureConsumer);
+        } catch (Exception ex) {
+            log.error("action=streamEarthquakesByMagnitudeRange, error={}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void streamEarthquakesByCountry(String country, Consumer<Feature> featureConsumer) {
+        log.info("action=streamEarthquakesByCountry, country={}", country);
+        String url = countryGazetteer.findBoundingBox(country)
+                .map(earthquakeUrlHelper::buildEarthquakeUrlByBoundingBox)
+                .orElseGet(earthquakeUrlHelper::buildEarthQuakeBaseUrlAndFormat);
+        try {
+            FeatureFilter filter = FeatureFilter.builder()
+                    .countries(Collections.singletonList(country))
+                    .build();
+            streamEarthquakeService("streamEarthquakesByCountry", url, filter, featureConsumer);
+        } catch (Exception ex) {
+            log.error("action=streamEarthquakesByCountry, error={}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Gets the earthquakes of a fetch shared by the queries of a batch, through the store and the response cache
+     * like the query of one of them
+     *
+     * @param fetch The fetch
+     * @return The earthquakes covering every query of the fetch, or null when they can not be read
+     */
+    private EarthquakeResponse fetchBatch(BatchFetch fetch) {
+        switch (fetch.getType()) {
+            case DATE_RANGE:
+                return getEarthquakesByDateRange(fetch.getWindow().getStartTime(), fetch.getWindow().getEndTime());
+            case MAGNITUDE_RANGE:
+                return getEarthquakesByMagnitudeRange(formatMagnitude(fetch.getMinMagnitude()),
+                        formatMagnitude(fetch.getMaxMagnitude()));
+            default:
+                String url = fetch.getBoundingBox() != null
+                        ? earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox(fetch.getBoundingBox())
+                        : earthquakeUrlHelper.buildEarthQuakeBaseUrlAndFormat();
+                log.info("action=getEarthquakesInBatch, url={}", url);
+                try {
+                    FeatureFilter filter = FeatureFilter.builder()
+                            .countries(fetch.getCountries())
+                            .build();
+                    return callEarthquakeService("getEarthquakesInBatch", url, filter, PageRequestDto.UNPAGED);
+                } catch (UpstreamUnavailableException | UpstreamErrorException ex) {
+                    log.error("action=getEarthquakesInBatch, error={}", ex.getMessage());
+                    throw ex;
+                } catch (Exception ex) {
+                    log.error("action=getEarthquakesInBatch, error={}", ex.getMessage());
+                    return null;
+                }
+        }
+    }
+
+    private EarthquakeBatchResult answerBatchQuery(BatchQueryRequestDto query, EarthquakeResponse response) {
+        EarthquakeBatchResult.EarthquakeBatchResultBuilder result = EarthquakeBatchResult.builder()
+                .id(query.getId())
+                .type(query.getType());
+        if (response == null || response.getFeatures() == null) {
+            return result.error("missing response").build();
+        }
+        FeatureFilter filter;
+        if (query.getType() == BatchQueryType.DATE_RANGE) {
+            filter = FeatureFilter.builder()
+                    .startTime(EarthquakeTimeUtil.parseEpochMillis(query.getStartTime()).orElse(null))
+                    .endTime(EarthquakeTimeUtil.parseEpochMillis(query.getEndTime()).orElse(null))
+                    .build();
+        } else if (query.getType() == BatchQueryType.MAGNITUDE_RANGE) {
+            filter = buildMagnitudeFilter(query.getMinMagnitude(), query.getMaxMagnitude());
+        } else {
+            filter = FeatureFilter.builder()
+                    .countries(Collections.singletonList(query.getCountry()))
+                    .build();
+        }
+        List<Feature> features = filterFeatures(response.getFeatures(), filter);
+        // a new response for every query, the fetched one may be shared by the response cache
+        return result.response(EarthquakeResponse.builder()
+                .type(response.getType())
+                .metadata(copyMetadata(response.getMetadata(), features.size()))
+                .features(features)
+                .stale(response.getStale())
+                .build())
+                .build();
+    }
+
+    // the date ranges and the fetches only rethrow the calls to the EarthQuake USGS service that were rejected or failed
+    private static RuntimeException unwrapUpstreamFailure(CompletionException ex) {
+        Throwable cause = ex.getCause();
+        return cause instanceof UpstreamUnavailableException || cause instanceof UpstreamErrorException
+                ? (RuntimeException) cause : ex;
+    }
+
+    private String formatMagnitude(Double magnitude) {
+        return magnitude != null ? magnitude.toString() : null;
+    }
+
+    /**
+     * Gets the features of the date range from the store, loading first the days that are missing or stale
+     *
+     * @param action    The action of the service method, tagging its metrics
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @param countries The countries the features must be located in, none to get every feature
+     * @param filter    The other predicates the features must match
+     * @return The features of the range, or empty when the range can not be served from the store
+     */
+    private Optional<List<Feature>> findInStore(String action, String startTime, String endTime, List<String> countries,
+                                                FeatureFilter filter) {
+        return findInStore(action, startTime, endTime, (startMillis, endMillis) -> countries.isEmpty()
+                ? earthquakeStore.findByTimeRange(startMillis, endMillis)
+                : earthquakeStore.findByTimeRangeAndCountries(startMillis, endMillis, countries), filter);
+    }
+
+    /**
+     * Gets the features of the date range found by a query of the store, loading first the days that are missing
+     * or stale
+     *
+     * @param action    The action of the service method, tagging its metrics
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @param query     The query of the store, given the start and end of the range in epoch millis
+     * @param filter    The other predicates the features must match
+     * @return The features of the range, or empty when the range can not be served from the store
+     */
+    private Optional<List<Feature>> findInStore(String action, String startTime, String endTime,
+                                                BiFunction<Long, Long, List<Feature>> query, FeatureFilter filter) {
+        Optional<Long> startMillis = EarthquakeTimeUtil.parseEpochMillis(startTime);
+        Optional<Long> endMillis = EarthquakeTimeUtil.parseEpochMillis(endTime);
+        if (!startMillis.isPresent() || !endMillis.isPresent()
+                || !loadMissingDays(action, startMillis.get(), endMillis.get())) {
+            return Optional.empty();
+        }
+
+        return Optional.of(earthquakeMetrics.recordFilter(action, () -> {
+            List<Feature> storedFeatures = query.apply(startMillis.get(), endMillis.get());
+            List<Feature> features = filterFeatures(storedFeatures, filter);
+            earthquakeMetrics.countFeatures(action, EarthquakeMetrics.SOURCE_STORE, storedFeatures.size(), features.size());
+            return features;
+        }));
+    }
+
+    /**
+     * Loads into the store the days of the date range that are missing or stale
+     *
+     * @param action      The action of the service method, tagging its metrics
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @return true if the store holds every day of the range, false when it can not
+     */
+    private boolean loadMissingDays(String action, long startMillis, long endMillis) {
+        if (!earthquakeStore.canHold(startMillis, endMillis)) {
+            return false;
+        }
+        List<LocalDate> missingDays = earthquakeStore.findMissingDays(startMillis, endMillis);
+        if (missingDays.isEmpty()) {
+            return true;
+        }
+        LocalDate firstDay = missingDays.get(0);
+        LocalDate endDay = missingDays.get(missingDays.size() - 1).plusDays(1);
+        log.info("action=findInStore, missingDays={}, firstDay={}, endDay={}", missingDays.size(), firstDay, endDay);
+
+        EarthquakeResponse response = callEarthquakeServiceByDates(action, firstDay.toString(), endDay.toString());
+        // stale responses are served as they are, the store would keep them as fresh
+        if (response == null || response.getFeatures() == null || Boolean.TRUE.equals(response.getStale())) {
+            return false;
+        }
+        earthquakeStore.putAll(response.getFeatures(),
+                EarthquakeTimeUtil.startOfUtcDay(firstDay), EarthquakeTimeUtil.startOfUtcDay(endDay));
+        return true;
+    }
+
+    /**
+     * Gets the earthquakes of a date range, reading it in parallel time windows when it holds more earthquakes
+     * than one call should return
+     *
+     * @param action    The action of the service method, tagging its metrics
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @return The earthquake response containing the earthquakes of every window, newest first
+     */
+    private EarthquakeResponse callEarthquakeServiceByDates(String action, String startTime, String endTime) {
+        List<TimeWindow> windows = splitByDates(startTime, endTime);
+        if (windows.size() <= 1) {
+            ResponseEntity<EarthquakeResponse> response = callEarthquakeService(action,
+                    earthquakeUrlHelper.buildEarthquakeUrlByDates(startTime, endTime));
+            return response.getStatusCode().is2xxSuccessful() ? response.getBody() : null;
+        }
+
+        List<EarthquakeResponse> responses = new ArrayList<>();
+        earthquakeWindowSplitter.readInOrder(windows, window -> {
+            ResponseEntity<EarthquakeResponse> response = callEarthquakeService(action,
+                    earthquakeUrlHelper.buildEarthquakeUrlByDates(window.getStartTime(), window.getEndTime()));
+            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+                throw new IllegalStateException("Missing response for the window " + window);
+            }
+            return response.getBody();
+        }, responses::add);
+        return mergeResponses(responses);
+    }
+
+    private void streamEarthquakeServiceByDates(String action, String startTime, String endTime,
+                                                Consumer<Feature> featureConsumer) {
+        List<TimeWindow> windows = splitByDates(startTime, endTime);
+        if (windows.size() <= 1) {
+            streamEarthquakeService(action, earthquakeUrlHelper.buildEarthquakeUrlByDates(startTime, endTime),
+                    FeatureFilter.NONE, featureConsumer);
+            return;
+        }
+        earthquakeWindowSplitter.readInOrder(windows,
+                window -> callEarthquakeServiceBatch(action, earthquakeUrlHelper.buildEarthquakeUrlByDates(
+                        window.getStartTime(), window.getEndTime()), FeatureFilter.NONE).getFeatures(),
+                features -> features.forEach(featureConsumer));
+    }
+
+    private List<TimeWindow> splitByDates(String startTime, String endTime) {
+        Optional<Long> startMillis = EarthquakeTimeUtil.parseEpochMillis(startTime);
+        Optional<Long> endMillis = EarthquakeTimeUtil.parseEpochMillis(endTime);
+        if (!startMillis.isPresent() || !endMillis.isPresent() || startMillis.get() > endMillis.get()) {
+            return Collections.emptyList();
+        }
+        return earthquakeWindowSplitter.split(startMillis.get(), endMillis.get());
+    }
+
+    // builds a new response, the merged ones may be shared by the response cache
+    private EarthquakeResponse mergeResponses(List<EarthquakeResponse> responses) {
+        EarthquakeResponse firstResponse = responses.get(0);
+        List<Feature> allFeatures = new ArrayList<>();
+        responses.forEach(response -> allFeatures.addAll(response.getFeatures()));
+        return EarthquakeResponse.builder()
+                .type(firstResponse.getType())
+                .metadata(copyMetadata(firstResponse.getMetadata(), allFeatures.size()))
+                .features(allFeatures)
+                .stale(responses.stream().anyMatch(response -> Boolean.TRUE.equals(response.getStale())) ? true : null)
+                .build();
+    }
+
+    private Metadata copyMetadata(Metadata metadata, int count) {
+        Metadata source = metadata != null ? metadata : new Metadata();
+        return Metadata.builder()
+                .generated(source.getGenerated())
+                .url(source.getUrl())
+                .title(source.getTitle())
+                .status(source.getStatus())
+                .api(source.getApi())
+                .count(count)
+                .build();
+    }
+
+    private List<Feature> filterFeatures(List<Feature> features, FeatureFilter filter) {
+        if (filter.isEmpty()) {
+            return features;
+        }
+        return features.stream()
+                .filter(filter::matches)
+                .collect(Collectors.toList());
+    }
+
+    private Double parseMagnitude(String magnitude) {
+        return magnitude != null ? Double.valueOf(magnitude) : null;
+    }
+
+    private FeatureFilter buildMagnitudeFilter(String minMagnitude, String maxMagnitude) {
+        return FeatureFilter.builder()
+                .minMagnitude(parseMagnitude(minMagnitude))
+                .maxMagnitude(parseMagnitude(maxMagnitude))
+                .build();
+    }
+
+    // the start the EarthQuake USGS service defaults to, 30 days before the end
+    private String defaultStartTime(String endTime) {
+        long endMillis = EarthquakeTimeUtil.parseEpochMillis(endTime)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid endTime " + endTime));
+        return EarthquakeTimeUtil.formatUtc(endMillis - TimeUnit.DAYS.toMillis(DEFAULT_DAYS));
+    }
+
+    private EarthquakeResponse buildStoreResponse(List<Feature> features) {
+        return EarthquakeResponse.builder()
+                .type("FeatureCollection")
+                .metadata(Metadata.builder()
+                        .generated(System.currentTimeMillis())
+                        .title("USGS Earthquakes")
+                        .status(200)
+                        .count(features.size())
+                        .build())
+                .features(features)
+                .build();
     }
 
-    private ResponseEntity<EarthquakeResponse> callEarthquakeService(String url) {
-        HttpEntity<String> entity = buildEarthquakeRequestHeader();
-        log.info("action=callEarthquakeService, url={}", url);
-        return restTemplate.exchange(url, HttpMethod.GET, entity, EarthquakeResponse.class);
+    private EarthquakeResponse callEarthquakeService(String action, String url, FeatureFilter filter, PageRequestDto page) {
+        if (page.isPaged()) {
+            return earthquakePager.fetchPage(url, filter, page,
+                    (batchUrl, batchFilter) -> callEarthquakeServiceBatch(action, batchUrl, batchFilter));
+        }
+        ResponseEntity<EarthquakeResponse> response = callEarthquakeService(action, url, filter);
+        return response.getStatusCode().is2xxSuccessful() ? response.getBody() : null;
+    }
+
+    // pages differ by their offset, they are read without the response cache and keep the upstream count
+    private EarthquakeResponse callEarthquakeServiceBatch(String action, String url, FeatureFilter filter) {
+        log.info("action=callEarthquakeServiceBatch, url={}, filter={}", url, filter);
+        List<Feature> features = new ArrayList<>();
+        EarthquakeResponse response = executeEarthquakeService(action, url,
+                request -> request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON)),
+                upstreamResponse -> geoJsonStreamingParser.parse(upstreamResponse.getBody(), filter, features::add));
+        countUpstreamFeatures(action, response, features.size());
+        response.setFeatures(features);
+        return response;
+    }
+
+    private ResponseEntity<EarthquakeResponse> callEarthquakeService(String action, String url) {
+        return callEarthquakeService(action, url, FeatureFilter.NONE);
+    }
+
+    /**
+     * Gets the response of the url from the cache or the EarthQuake USGS service. While the service is unavailable,
+     * the expired response of the url is served marked as stale, and revalidated in the background once the
+     * breaker lets a call through.
+     *
+     * @param action The action of the service method, tagging its metrics
+     * @param url    The url of the EarthQuake USGS service
+     * @param filter The predicates checked on every earthquake while parsing
+     * @return The response for the url
+     */
+    private ResponseEntity<EarthquakeResponse> callEarthquakeService(String action, String url, FeatureFilter filter) {
+        log.info("action=callEarthquakeService, url={}, filter={}", url, filter);
+        String cacheKey = filter.isEmpty() ? url : url + "#" + filter;
+        Function<ResponseEntity<EarthquakeResponse>, ResponseEntity<EarthquakeResponse>> loader =
+                stale -> executeEarthquakeService(action, url,
+                        request -> {
+                            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+                            setValidators(request.getHeaders(), stale);
+                        },
+                        response -> {
+                            if (stale != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                                log.info("action=callEarthquakeService, notModified=true, url={}", url);
+                                return stale;
+                            }
+                            List<Feature> features = new ArrayList<>();
+                            EarthquakeResponse earthquakeResponse =
+                                    geoJsonStreamingParser.parse(response.getBody(), filter, features::add);
+                            countUpstreamFeatures(action, earthquakeResponse, features.size());
+                            earthquakeResponse.setFeatures(features);
+                            if (earthquakeResponse.getMetadata() != null) {
+                                earthquakeResponse.getMetadata().setCount(features.size());
+                            }
+                            return new ResponseEntity<>(earthquakeResponse, response.getHeaders(), response.getStatusCode());
+                        });
+
+        if (earthquakeUpstreamGuard.getState() != EarthquakeUpstreamGuard.State.CLOSED) {
+            ResponseEntity<EarthquakeResponse> stale = earthquakeResponseCache.getStale(cacheKey);
+            if (stale != null) {
+                if (earthquakeUpstreamGuard.isCallPermitted()) {
+                    refreshInBackground(cacheKey, loader);
+                }
+                return serveStale(action, url, stale);
+            }
+        }
+        try {
+            return earthquakeResponseCache.getOrRevalidate(cacheKey, loader);
+        } catch (UpstreamErrorException | UpstreamUnavailableException ex) {
+            ResponseEntity<EarthquakeResponse> stale = earthquakeResponseCache.getStale(cacheKey);
+            if (stale == null) {
+                throw ex;
+            }
+            log.error("action=callEarthquakeService, url={}, error={}", url, ex.getMessage());
+            return serveStale(action, url, stale);
+        }
+    }
+
+    private ResponseEntity<EarthquakeResponse> serveStale(String action, String url, ResponseEntity<EarthquakeResponse> stale) {
+        log.info("action=callEarthquakeService, stale=true, url={}", url);
+        earthquakeMetrics.countStale(action);
+        if (stale.getBody() != null) {
+            stale.getBody().setStale(true);
+        }
+        return stale;
+    }
+
+    // the cache shares the call with the requests missing the url meanwhile
+    private void refreshInBackground(String cacheKey,
+                                     Function<ResponseEntity<EarthquakeResponse>, ResponseEntity<EarthquakeResponse>> loader) {
+        earthquakeTaskExecutor.execute(() -> {
+            try {
+                earthquakeResponseCache.getOrRevalidate(cacheKey, loader);
+                log.info("action=refreshInBackground, cacheKey={}", cacheKey);
+            } catch (RuntimeException ex) {
+                log.error("action=refreshInBackground, cacheKey={}, error={}", cacheKey, ex.getMessage());
+            }
+        });
+    }
+
+    // bypasses the response cache. The matching features are handed to the consumer once the call ends, so a slow
+    // client holds no permit of the bulkhead and its download is not timed as a slow call by the breaker. A call
+    // answers at most maxLimit earthquakes, like the windows of a wide date range.
+    private void streamEarthquakeService(String action, String url, FeatureFilter filter, Consumer<Feature> featureConsumer) {
+        log.info("action=streamEarthquakeService, url={}, filter={}", url, filter);
+        List<Feature> features = new ArrayList<>();
+        EarthquakeResponse response = executeEarthquakeService(action, url,
+                request -> request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON)),
+                upstreamResponse -> geoJsonStreamingParser.parse(upstreamResponse.getBody(), filter, features::add));
+        countUpstreamFeatures(action, response, features.size());
+        features.forEach(featureConsumer);
+    }
+
+    // times the whole call, and apart the reading of its body, which includes the filter checked while parsing.
+    // The calls run through the breaker and the bulkhead of the EarthQuake USGS service, and their failures are
+    // thrown as UpstreamErrorException.
+    private <T> T executeEarthquakeService(String action, String url, RequestCallback requestCallback,
+                                           ResponseExtractor<T> responseExtractor) {
+        try {
+            return earthquakeUpstreamGuard.execute(() -> {
+                Timer.Sample upstreamSample = earthquakeMetrics.startTimer();
+                String outcome = "error";
+                try {
+                    T result = restTemplate.execute(url, HttpMethod.GET, requestCallback, response -> {
+                        Timer.Sample parseSample = earthquakeMetrics.startTimer();
+                        try {
+                            return responseExtractor.extractData(response);
+                        } finally {
+                            earthquakeMetrics.stopParse(parseSample, action);
+                        }
+                    });
+                    outcome = "success";
+                    return result;
+                } finally {
+                    earthquakeMetrics.stopUpstream(upstreamSample, action, outcome);
+                }
+            });
+        } catch (RestClientException ex) {
+            throw new UpstreamErrorException(ex.getMessage(), ex);
+        }
+    }
+
+    // the metadata count is the number of earthquakes sent by the service, before the local filter
+    private void countUpstreamFeatures(String action, EarthquakeResponse response, long featuresOut) {
+        Metadata metadata = response != null ? response.getMetadata() : null;
+        long featuresIn = metadata != null && metadata.getCount() != null ? metadata.getCount() : featuresOut;
+        earthquakeMetrics.countFeatures(action, EarthquakeMetrics.SOURCE_UPSTREAM, featuresIn, featuresOut);
+    }
+
+    // makes the request conditional on the validators of the expired response, so an unchanged result is not downloaded again
+    private void setValidators(HttpHeaders requestHeaders, ResponseEntity<EarthquakeResponse> stale) {
+        if (stale == null) {
+            return;
+        }
+        HttpHeaders staleHeaders = stale.getHeaders();
+        if (staleHeaders.getETag() != null) {
+            requestHeaders.setIfNoneMatch(staleHeaders.getETag());
+        }
+        if (staleHeaders.getLastModified() > 0) {
+            requestHeaders.setIfModifiedSince(staleHeaders.getLastModified());
+        }
     }
 }
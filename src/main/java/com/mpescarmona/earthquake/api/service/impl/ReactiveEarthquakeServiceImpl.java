@@ -0,0 +1,231 @@
+package com.mpescarmona.earthquake.api.service.impl;
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.Metadata;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto;
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer;
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import com.mpescarmona.earthquake.api.service.IReactiveEarthquakeService;
+import com.mpescarmona.earthquake.api.store.EarthquakeStore;
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@NoArgsConstructor
+@AllArgsConstructor
+@ConditionalOnProperty(name = "earthquake.service.mode", havingValue = "reactive")
+public class ReactiveEarthquakeServiceImpl implements IReactiveEarthquakeService {
+    @Autowired
+    @Qualifier("earthquakeWebClient")
+    private WebClient earthquakeWebClient;
+    @Autowired
+    private EarthquakeUrlHelper earthquakeUrlHelper;
+    @Autowired
+    private EarthquakeStore earthquakeStore;
+    @Autowired
+    private CountryGazetteer countryGazetteer;
+
+    @Override
+    public Mono<EarthquakeResponse> getEarthquakesByDateRange(String startTime, String endTime) {
+        log.info("action=getEarthquakesByDateRange, startTime={}, endTime={}", startTime, endTime);
+        return findInStore(startTime, endTime, Collections.emptyList())
+                .map(this::buildStoreResponse)
+                .switchIfEmpty(Mono.defer(() -> callEarthquakeService(
+                        earthquakeUrlHelper.buildEarthquakeUrlByDates(startTime, endTime), FeatureFilter.NONE)))
+                .onErrorResume(ex -> logError("getEarthquakesByDateRange", ex));
+    }
+
+    @Override
+    public Mono<EarthquakeResponse> getEarthquakesByDateRanges(List<DateRangeRequestDto> dateRanges) {
+        log.info("action=getEarthquakesByDateRanges, dateRanges={}", dateRanges);
+        if (dateRanges.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Mono<Optional<EarthquakeResponse>>> responses = dateRanges.stream()
+                .map(dateRange -> getEarthquakesByDateRange(dateRange.getStartTime(), dateRange.getEndTime())
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty()))
+                .collect(Collectors.toList());
+        return Flux.mergeSequential(responses)
+                .collectList()
+                .flatMap(results -> {
+                    if (results.stream().anyMatch(result -> !result.isPresent())) {
+                        log.error("action=getEarthquakesByDateRanges, error=missing response for some of the date ranges");
+                        return Mono.empty();
+                    }
+                    EarthquakeResponse mergedResponse = results.get(0).get();
+                    List<Feature> allFeatures = new ArrayList<>();
+                    results.forEach(result -> allFeatures.addAll(result.get().getFeatures()));
+                    mergedResponse.setFeatures(allFeatures);
+                    mergedResponse.getMetadata().setCount(allFeatures.size());
+                    return Mono.just(mergedResponse);
+                });
+    }
+
+    @Override
+    public Mono<EarthquakeResponse> getEarthquakesByMagnitudeRange(String minMagnitude, String maxMagnitude) {
+        log.info("action=getEarthquakesByMagnitudeRanges, minMagnitude={}, maxMagnitude={}", minMagnitude, maxMagnitude);
+        return callEarthquakeService(earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes(minMagnitude, maxMagnitude),
+                FeatureFilter.NONE)
+                .onErrorResume(ex -> logError("getEarthquakesByMagnitudeRanges", ex));
+    }
+
+    @Override
+    public Mono<EarthquakeResponse> getEarthquakesByCountry(String country) {
+        log.info("action=getEarthquakesByCountry, country={}", country);
+        String url = countryGazetteer.findBoundingBox(country)
+                .map(earthquakeUrlHelper::buildEarthquakeUrlByBoundingBox)
+                .orElseGet(earthquakeUrlHelper::buildEarthQuakeBaseUrlAndFormat);
+        FeatureFilter filter = FeatureFilter.builder()
+                .countries(Collections.singletonList(country))
+                .build();
+        return callEarthquakeService(url, filter)
+                .onErrorResume(ex -> logError("getEarthquakesByCountry", ex));
+    }
+
+    @Override
+    public Mono<EarthquakeResponse> getEarthquakesByCountriesAndDateRange(String countryOne, String countryTwo,
+                                                                          String startTime, String endTime) {
+        log.info("action=getEarthquakesByCountriesAndDateRange, countryOne={}, countryTwo={}, startTime={}, endTime={}",
+                countryOne, countryTwo, startTime, endTime);
+        List<String> countries = Arrays.asList(countryOne, countryTwo);
+        return findInStore(startTime, endTime, countries)
+                .map(this::buildStoreResponse)
+                .switchIfEmpty(Mono.defer(() -> {
+                    BoundingBox boundingBox = countryGazetteer.findBoundingBox(countries).orElse(null);
+                    String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(startTime,
+                            endTime, null, null, boundingBox);
+                    return callEarthquakeService(url, FeatureFilter.builder().countries(countries).build());
+                }))
+                .onErrorResume(ex -> logError("getEarthquakesByCountriesAndDateRange", ex));
+    }
+
+    @Override
+    public Mono<EarthquakeResponse> getEarthquakesByDateRangeAndMagnitudeRangeAndCountry(String startTime, String endTime,
+                                                                                          String minMagnitude, String maxMagnitude,
+                                                                                          String country) {
+        log.info("action=getEarthquakesByDateRangeAndMagnitudeRangeAndCountry, startTime={}, endTime={}, " +
+                "minMagnitude={}, maxMagnitude={}, country={}", startTime, endTime, minMagnitude, maxMagnitude, country);
+        List<String> countries = Collections.singletonList(country);
+        return Mono.fromCallable(() -> FeatureFilter.builder()
+                .minMagnitude(parseMagnitude(minMagnitude))
+                .maxMagnitude(parseMagnitude(maxMagnitude))
+                .build())
+                .flatMap(magnitudeFilter -> findInStore(startTime, endTime, countries)
+                        .map(features -> buildStoreResponse(features.stream()
+                                .filter(magnitudeFilter::matches)
+                                .collect(Collectors.toList()))))
+                .switchIfEmpty(Mono.defer(() -> {
+                    BoundingBox boundingBox = countryGazetteer.findBoundingBox(country).orElse(null);
+                    String url = earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(startTime,
+                            endTime, minMagnitude, maxMagnitude, boundingBox);
+                    return callEarthquakeService(url, FeatureFilter.builder().countries(countries).build());
+                }))
+                .onErrorResume(ex -> logError("getEarthquakesByDateRangeAndMagnitudeRangeAndCountry", ex));
+    }
+
+    /**
+     * Gets the features of the date range from the store, loading first the days that are missing or stale
+     *
+     * @param startTime The start date of range
+     * @param endTime   The end date of range
+     * @param countries The countries the features must be located in, none to get every feature
+     * @return The features of the range, or empty when the range can not be served from the store
+     */
+    private Mono<List<Feature>> findInStore(String startTime, String endTime, List<String> countries) {
+        Optional<Long> startMillis = EarthquakeTimeUtil.parseEpochMillis(startTime);
+        Optional<Long> endMillis = EarthquakeTimeUtil.parseEpochMillis(endTime);
+        if (!startMillis.isPresent() || !endMillis.isPresent()
+                || !earthquakeStore.canHold(startMillis.get(), endMillis.get())) {
+            return Mono.empty();
+        }
+
+        Mono<Boolean> loaded = Mono.just(true);
+        List<LocalDate> missingDays = earthquakeStore.findMissingDays(startMillis.get(), endMillis.get());
+        if (!missingDays.isEmpty()) {
+            LocalDate firstDay = missingDays.get(0);
+            LocalDate endDay = missingDays.get(missingDays.size() - 1).plusDays(1);
+            String url = earthquakeUrlHelper.buildEarthquakeUrlByDates(firstDay.toString(), endDay.toString());
+            log.info("action=findInStore, missingDays={}, url={}", missingDays.size(), url);
+            loaded = callEarthquakeService(url, FeatureFilter.NONE)
+                    .filter(response -> response.getFeatures() != null)
+                    .map(response -> {
+                        earthquakeStore.putAll(response.getFeatures(),
+                                EarthquakeTimeUtil.startOfUtcDay(firstDay), EarthquakeTimeUtil.startOfUtcDay(endDay));
+                        return true;
+                    });
+        }
+
+        return loaded.map(ignored -> countries.isEmpty()
+                ? earthquakeStore.findByTimeRange(startMillis.get(), endMillis.get())
+                : earthquakeStore.findByTimeRangeAndCountries(startMillis.get(), endMillis.get(), countries));
+    }
+
+    private Mono<EarthquakeResponse> callEarthquakeService(String url, FeatureFilter filter) {
+        log.info("action=callEarthquakeService, url={}, filter={}", url, filter);
+        return earthquakeWebClient.get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(EarthquakeResponse.class)
+                .map(response -> filterResponse(response, filter));
+    }
+
+    private EarthquakeResponse filterResponse(EarthquakeResponse response, FeatureFilter filter) {
+        if (filter.isEmpty() || response.getFeatures() == null) {
+            return response;
+        }
+        List<Feature> filteredFeatures = response.getFeatures().stream()
+                .filter(filter::matches)
+                .collect(Collectors.toList());
+        response.setFeatures(filteredFeatures);
+        if (response.getMetadata() != null) {
+            response.getMetadata().setCount(filteredFeatures.size());
+        }
+        return response;
+    }
+
+    private Double parseMagnitude(String magnitude) {
+        return magnitude != null ? Double.valueOf(magnitude) : null;
+    }
+
+    private EarthquakeResponse buildStoreResponse(List<Feature> features) {
+        return EarthquakeResponse.builder()
+                .type("FeatureCollection")
+                .metadata(Metadata.builder()
+                        .generated(System.currentTimeMillis())
+                        .title("USGS Earthquakes")
+                        .status(200)
+                        .count(features.size())
+                        .build())
+                .features(features)
+                .build();
+    }
+
+    private Mono<EarthquakeResponse> logError(String action, Throwable ex) {
+        log.error("action={}, error={}", action, ex.getMessage());
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,439 @@
+package com.mpescarmona.earthquake.api.store;
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.util.PlaceUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Catalog of the store written to a binary segment file and mapped back in memory. A segment is written once,
+ * to a new file renamed over the previous one, and holds:
+ * <pre>
+ * header   magic, version, writtenAt, days, records, regions, strings
+ * days     epoch day, loadedAt, first record and number of records of every day
+ * records  RECORD_SIZE bytes per feature, its strings as references to the dictionary, -1 when null
+ * regions  references of the distinct normalized regions of the places
+ * strings  offset of every string, then the length and UTF-8 bytes of each one
+ * </pre>
+ * Records are read in place from the mapping, so opening a segment costs the same whatever the size of the
+ * catalog, and only the records matching a query become objects.
+ */
+final class CatalogSegment {
+    static final int MAGIC = 0x45514353;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int DAY_SIZE = 24;
+    static final int RECORD_SIZE = 176;
+    static final int MAX_COORDINATES = 3;
+    private static final int NO_STRING = -1;
+
+    private static final int ID = 0;
+    private static final int TYPE = 4;
+    private static final int GEOMETRY_TYPE = 8;
+    private static final int PLACE = 12;
+    private static final int URL = 16;
+    private static final int DETAIL = 20;
+    private static final int ALERT = 24;
+    private static final int STATUS = 28;
+    private static final int NET = 32;
+    private static final int CODE = 36;
+    private static final int IDS = 40;
+    private static final int SOURCES = 44;
+    private static final int TYPES = 48;
+    private static final int MAG_TYPE = 52;
+    private static final int PROPERTIES_TYPE = 56;
+    private static final int TITLE = 60;
+    private static final int REGION = 64;
+    private static final int COORDINATES = 68;
+    private static final int MAG = 92;
+    private static final int CDI = 100;
+    private static final int MMI = 108;
+    private static final int DMIN = 116;
+    private static final int RMS = 124;
+    private static final int TIME = 132;
+    private static final int UPDATED = 140;
+    private static final int TZ = 148;
+    private static final int FELT = 152;
+    private static final int TSUNAMI = 156;
+    private static final int SIG = 160;
+    private static final int NST = 164;
+    private static final int GAP = 168;
+    private static final int COORDINATE_COUNT = 172;
+    private static final int MISSING_COORDINATES = 173;
+    private static final int DERIVED = 174;
+
+    private final ByteBuffer buffer;
+    private final long writtenAt;
+    private final List<Day> days;
+    private final int recordsOffset;
+    private final int regionsOffset;
+    private final int regionCount;
+    private final int stringsOffset;
+    // the regions decoded by the first country lookup, a handful of strings
+    private volatile Map<Integer, String> regions;
+
+    private CatalogSegment(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a catalog segment of version " + VERSION);
+        }
+        writtenAt = buffer.getLong(8);
+        int dayCount = buffer.getInt(16);
+        int recordCount = buffer.getInt(20);
+        regionCount = buffer.getInt(24);
+        int stringCount = buffer.getInt(28);
+        // a truncated or foreign file is refused here, instead of failing the first query reading it
+        long stringsEnd = HEADER_SIZE + (long) dayCount * DAY_SIZE + (long) recordCount * RECORD_SIZE
+                + regionCount * 4L + stringCount * 4L;
+        if (dayCount < 0 || recordCount < 0 || regionCount < 0 || stringCount < 0 || stringsEnd > buffer.capacity()) {
+            throw new IOException("The sections of the catalog segment do not fit in its " + buffer.capacity() + " bytes");
+        }
+        recordsOffset = HEADER_SIZE + dayCount * DAY_SIZE;
+        regionsOffset = recordsOffset + recordCount * RECORD_SIZE;
+        stringsOffset = regionsOffset + regionCount * 4;
+        // the strings are written one after the other, the last one ends the file
+        long end = stringsEnd;
+        if (stringCount > 0) {
+            long lastString = buffer.getInt(stringsOffset + (stringCount - 1) * 4);
+            end = lastString >= stringsEnd && lastString + 4 <= buffer.capacity()
+                    ? lastString + 4 + buffer.getInt((int) lastString) : -1L;
+        }
+        if (end != buffer.capacity()) {
+            throw new IOException("The strings of the catalog segment do not end with the file");
+        }
+        List<Day> segmentDays = new ArrayList<>(dayCount);
+        for (int i = 0; i < dayCount; i++) {
+            int offset = HEADER_SIZE + i * DAY_SIZE;
+            int firstRecord = buffer.getInt(offset + 16);
+            int records = buffer.getInt(offset + 20);
+            if (firstRecord < 0 || records < 0 || (long) firstRecord + records > recordCount) {
+                throw new IOException("The records of a day are outside the catalog segment");
+            }
+            segmentDays.add(new Day(LocalDate.ofEpochDay(buffer.getLong(offset)), buffer.getLong(offset + 8),
+                    firstRecord, records));
+        }
+        days = Collections.unmodifiableList(segmentDays);
+    }
+
+    /**
+     * Maps a segment file in memory, reading only its header and the index of its days
+     *
+     * @param path The segment file
+     * @return The mapped segment
+     * @throws IOException when the file can not be read or is not a segment
+     */
+    static CatalogSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed, and after the file is replaced
+            return new CatalogSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the days to a new segment file through a memory mapping, and renames it over the given path
+     *
+     * @param path      The segment file
+     * @param days      The days to write, with their features
+     * @param writtenAt The time of the snapshot, in epoch millis
+     * @throws IOException when the file can not be written
+     */
+    static void write(Path path, Collection<DayContent> days, long writtenAt) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Set<Integer> regionRefs = new LinkedHashSet<>();
+        int recordCount = 0;
+        for (DayContent day : days) {
+            for (CompactFeature feature : day.features) {
+                // a record holds MAX_COORDINATES, the days with longer ones are left out by the store
+                if (feature.coordinates != null && feature.coordinates.length > MAX_COORDINATES) {
+                    throw new IllegalArgumentException("Feature " + feature.id + " has more than "
+                            + MAX_COORDINATES + " coordinates");
+                }
+                String[] values = stringsOf(feature);
+                for (String value : values) {
+                    ref(strings, value);
+                }
+                regionRefs.add(ref(strings, values[values.length - 1]));
+            }
+            recordCount += day.features.size();
+        }
+        regionRefs.remove(NO_STRING);
+
+        List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+        long stringBytes = 0;
+        for (String value : strings.keySet()) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            encodedStrings.add(encoded);
+            stringBytes += 4 + encoded.length;
+        }
+        long stringsOffset = HEADER_SIZE + (long) days.size() * DAY_SIZE + (long) recordCount * RECORD_SIZE
+                + regionRefs.size() * 4L;
+        long size = stringsOffset + encodedStrings.size() * 4L + stringBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The catalog does not fit in a segment of 2GB");
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(VERSION).putLong(writtenAt)
+                    .putInt(days.size()).putInt(recordCount).putInt(regionRefs.size()).putInt(strings.size())
+                    .putLong(0L);
+            int firstRecord = 0;
+            for (DayContent day : days) {
+                out.putLong(day.day.toEpochDay()).putLong(day.loadedAt).putInt(firstRecord).putInt(day.features.size());
+                firstRecord += day.features.size();
+            }
+            for (DayContent day : days) {
+                for (CompactFeature feature : day.features) {
+                    putRecord(out, feature, strings);
+                }
+            }
+            regionRefs.forEach(out::putInt);
+            int stringOffset = (int) (stringsOffset + encodedStrings.size() * 4L);
+            for (byte[] encoded : encodedStrings) {
+                out.putInt(stringOffset);
+                stringOffset += 4 + encoded.length;
+            }
+            for (byte[] encoded : encodedStrings) {
+                out.putInt(encoded.length).put(encoded);
+            }
+            out.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    long getWrittenAt() {
+        return writtenAt;
+    }
+
+    List<Day> getDays() {
+        return days;
+    }
+
+    /**
+     * Gets the references of the regions containing any of the countries
+     *
+     * @param normalizedCountries The normalized countries
+     * @return The references of the matching regions
+     */
+    Set<Integer> findRegions(Collection<String> normalizedCountries) {
+        Map<Integer, String> decodedRegions = regions;
+        if (decodedRegions == null) {
+            decodedRegions = new LinkedHashMap<>();
+            for (int i = 0; i < regionCount; i++) {
+                int ref = buffer.getInt(regionsOffset + i * 4);
+                decodedRegions.put(ref, string(ref));
+            }
+            regions = decodedRegions;
+        }
+        Set<Integer> matches = new HashSet<>();
+        decodedRegions.forEach((ref, region) -> {
+            if (normalizedCountries.stream().anyMatch(region::contains)) {
+                matches.add(ref);
+            }
+        });
+        return matches;
+    }
+
+    private static void putRecord(ByteBuffer out, CompactFeature feature, Map<String, Integer> strings) {
+        int start = out.position();
+        for (String value : stringsOf(feature)) {
+            out.putInt(ref(strings, value));
+        }
+        byte missing = 0;
+        for (int i = 0; i < MAX_COORDINATES; i++) {
+            boolean present = feature.coordinates != null && i < feature.coordinates.length;
+            out.putDouble(present ? feature.coordinates[i] : 0d);
+            if (present && feature.missingCoordinates != null && feature.missingCoordinates[i]) {
+                missing |= 1 << i;
+            }
+        }
+        out.putDouble(feature.mag)
+                .putDouble(feature.cdi)
+                .putDouble(feature.mmi)
+                .putDouble(feature.dmin)
+                .putDouble(feature.rms)
+                .putLong(feature.time)
+                .putLong(feature.updated)
+                .putInt(feature.tz)
+                .putInt(feature.felt)
+                .putInt(feature.tsunami)
+                .putInt(feature.sig)
+                .putInt(feature.nst)
+                .putInt(feature.gap)
+                .put((byte) (feature.coordinates != null ? feature.coordinates.length : -1))
+                .put(missing)
+                .put(feature.derived);
+        out.position(start + RECORD_SIZE);
+    }
+
+    // the strings of a record in the order of their references, the region last
+    private static String[] stringsOf(CompactFeature feature) {
+        return new String[]{feature.id, feature.type, feature.geometryType, feature.place, feature.url,
+                feature.detail, feature.alert, feature.status, feature.net, feature.code, feature.ids,
+                feature.sources, feature.types, feature.magType, feature.propertiesType, feature.title,
+                PlaceUtil.normalizeRegion(feature.place)};
+    }
+
+    private static int ref(Map<String, Integer> strings, String value) {
+        return value != null ? strings.computeIfAbsent(value, key -> strings.size()) : NO_STRING;
+    }
+
+    private CompactFeature read(int record) {
+        int offset = recordsOffset + record * RECORD_SIZE;
+        int coordinateCount = buffer.get(offset + COORDINATE_COUNT);
+        double[] coordinates = null;
+        boolean[] missingCoordinates = null;
+        if (coordinateCount >= 0) {
+            coordinates = new double[coordinateCount];
+            byte missing = buffer.get(offset + MISSING_COORDINATES);
+            for (int i = 0; i < coordinateCount; i++) {
+                coordinates[i] = buffer.getDouble(offset + COORDINATES + i * 8);
+            }
+            if (missing != 0) {
+                missingCoordinates = new boolean[coordinateCount];
+                for (int i = 0; i < coordinateCount; i++) {
+                    missingCoordinates[i] = (missing & (1 << i)) != 0;
+                }
+            }
+        }
+        return new CompactFeature(
+                string(buffer.getInt(offset + ID)),
+                string(buffer.getInt(offset + TYPE)),
+                string(buffer.getInt(offset + GEOMETRY_TYPE)),
+                coordinates,
+                missingCoordinates,
+                buffer.getDouble(offset + MAG),
+                string(buffer.getInt(offset + PLACE)),
+                buffer.getLong(offset + TIME),
+                buffer.getLong(offset + UPDATED),
+                buffer.getInt(offset + TZ),
+                string(buffer.getInt(offset + URL)),
+                string(buffer.getInt(offset + DETAIL)),
+                buffer.getInt(offset + FELT),
+                buffer.getDouble(offset + CDI),
+                buffer.getDouble(offset + MMI),
+                internedString(buffer.getInt(offset + ALERT)),
+                internedString(buffer.getInt(offset + STATUS)),
+                buffer.getInt(offset + TSUNAMI),
+                buffer.getInt(offset + SIG),
+                internedString(buffer.getInt(offset + NET)),
+                string(buffer.getInt(offset + CODE)),
+                string(buffer.getInt(offset + IDS)),
+                internedString(buffer.getInt(offset + SOURCES)),
+                internedString(buffer.getInt(offset + TYPES)),
+                buffer.getInt(offset + NST),
+                buffer.getDouble(offset + DMIN),
+                buffer.getDouble(offset + RMS),
+                buffer.getInt(offset + GAP),
+                internedString(buffer.getInt(offset + MAG_TYPE)),
+                internedString(buffer.getInt(offset + PROPERTIES_TYPE)),
+                string(buffer.getInt(offset + TITLE)),
+                buffer.get(offset + DERIVED));
+    }
+
+    private String string(int ref) {
+        if (ref == NO_STRING) {
+            return null;
+        }
+        int offset = buffer.getInt(stringsOffset + ref * 4);
+        byte[] encoded = new byte[buffer.getInt(offset)];
+        ByteBuffer value = buffer.duplicate();
+        value.position(offset + 4);
+        value.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    // the strings with few distinct values, interned like the ones of a loaded feature
+    private String internedString(int ref) {
+        String value = string(ref);
+        return value != null ? value.intern() : null;
+    }
+
+    /**
+     * Day written to a segment
+     */
+    static final class DayContent {
+        final LocalDate day;
+        final long loadedAt;
+        final List<CompactFeature> features;
+
+        DayContent(LocalDate day, long loadedAt, List<CompactFeature> features) {
+            this.day = day;
+            this.loadedAt = loadedAt;
+            this.features = features;
+        }
+    }
+
+    /**
+     * Day of a mapped segment, reading its records in place
+     */
+    final class Day {
+        final LocalDate day;
+        final long loadedAt;
+        private final int firstRecord;
+        private final int recordCount;
+
+        private Day(LocalDate day, long loadedAt, int firstRecord, int recordCount) {
+            this.day = day;
+            this.loadedAt = loadedAt;
+            this.firstRecord = firstRecord;
+            this.recordCount = recordCount;
+        }
+
+        CatalogSegment getSegment() {
+            return CatalogSegment.this;
+        }
+
+        void collect(long startMillis, long endMillis, Set<Integer> regionRefs, List<CompactFeature> result) {
+            for (int record = firstRecord; record < firstRecord + recordCount; record++) {
+                int offset = recordsOffset + record * RECORD_SIZE;
+                long time = buffer.getLong(offset + TIME);
+                if (time >= startMillis && time <= endMillis
+                        && (regionRefs == null || regionRefs.contains(buffer.getInt(offset + REGION)))) {
+                    result.add(read(record));
+                }
+            }
+        }
+
+        void collectInBoundingBox(long startMillis, long endMillis, BoundingBox boundingBox, List<CompactFeature> result) {
+            for (int record = firstRecord; record < firstRecord + recordCount; record++) {
+                int offset = recordsOffset + record * RECORD_SIZE;
+                long time = buffer.getLong(offset + TIME);
+                // the coordinates are longitude, latitude and depth
+                if (time >= startMillis && time <= endMillis && buffer.get(offset + COORDINATE_COUNT) >= 2
+                        && (buffer.get(offset + MISSING_COORDINATES) & 0b11) == 0
+                        && boundingBox.contains(buffer.getDouble(offset + COORDINATES + 8),
+                        buffer.getDouble(offset + COORDINATES))) {
+                    result.add(read(record));
+                }
+            }
+        }
+
+        void forEach(Consumer<CompactFeature> consumer) {
+            for (int record = firstRecord; record < firstRecord + recordCount; record++) {
+                consumer.accept(read(record));
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.mpescarmona.earthquake.api.store;
+
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.Geometry;
+import com.mpescarmona.earthquake.api.domain.Properties;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+
+/**
+ * Feature held by the store with primitive fields instead of boxed ones and the coordinates in a double array.
+ * Missing numbers are kept as NaN, Integer.MIN_VALUE or Long.MIN_VALUE, the strings with few distinct values
+ * are interned and the strings the EarthQuake USGS service derives from the id, place or magnitude are not kept
+ * when they match, so a stored feature takes a fraction of the heap of a {@link Feature}. Features are only
+ * rebuilt for the results of a query.
+ */
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class CompactFeature {
+    private static final int NO_INT = Integer.MIN_VALUE;
+    private static final long NO_LONG = Long.MIN_VALUE;
+    private static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+    private static final String DETAIL_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=";
+    private static final String DETAIL_FORMAT = "&format=geojson";
+    private static final byte DERIVED_URL = 1;
+    private static final byte DERIVED_DETAIL = 1 << 1;
+    private static final byte DERIVED_CODE = 1 << 2;
+    private static final byte DERIVED_IDS = 1 << 3;
+    private static final byte DERIVED_TITLE = 1 << 4;
+
+    final String id;
+    final String type;
+    final String geometryType;
+    final double[] coordinates;
+    final boolean[] missingCoordinates;
+
+    final double mag;
+    final String place;
+    final long time;
+    final long updated;
+    final int tz;
+    final String url;
+    final String detail;
+    final int felt;
+    final double cdi;
+    final double mmi;
+    final String alert;
+    final String status;
+    final int tsunami;
+    final int sig;
+    final String net;
+    final String code;
+    final String ids;
+    final String sources;
+    final String types;
+    final int nst;
+    final double dmin;
+    final double rms;
+    final int gap;
+    final String magType;
+    final String propertiesType;
+    final String title;
+    // the strings left null because they are rebuilt from other fields
+    final byte derived;
+
+    private CompactFeature(Feature feature) {
+        Properties properties = feature.getProperties() != null ? feature.getProperties() : new Properties();
+        Geometry geometry = feature.getGeometry();
+        id = feature.getId();
+        type = intern(feature.getType());
+        geometryType = geometry != null ? intern(geometry.getType()) : null;
+        Double[] boxedCoordinates = geometry != null ? geometry.getCoordinates() : null;
+        if (boxedCoordinates != null) {
+            coordinates = new double[boxedCoordinates.length];
+            boolean[] missing = null;
+            for (int i = 0; i < boxedCoordinates.length; i++) {
+                if (boxedCoordinates[i] == null) {
+                    missing = missing != null ? missing : new boolean[boxedCoordinates.length];
+                    missing[i] = true;
+                } else {
+                    coordinates[i] = boxedCoordinates[i];
+                }
+            }
+            missingCoordinates = missing;
+        } else {
+            coordinates = null;
+            missingCoordinates = null;
+        }
+
+        mag = toDouble(properties.getMag());
+        place = properties.getPlace();
+        net = intern(properties.getNet());
+        time = toLong(properties.getTime());
+        updated = toLong(properties.getUpdated());
+        tz = toInt(properties.getTz());
+        byte derivedStrings = 0;
+        String value = properties.getUrl();
+        if (value != null && value.equals(urlOf(id))) {
+            derivedStrings |= DERIVED_URL;
+            value = null;
+        }
+        url = value;
+        value = properties.getDetail();
+        if (value != null && value.equals(detailOf(id))) {
+            derivedStrings |= DERIVED_DETAIL;
+            value = null;
+        }
+        detail = value;
+        felt = toInt(properties.getFelt());
+        cdi = toDouble(properties.getCdi());
+        mmi = toDouble(properties.getMmi());
+        alert = intern(properties.getAlert());
+        status = intern(properties.getStatus());
+        tsunami = toInt(properties.getTsunami());
+        sig = toInt(properties.getSig());
+        value = properties.getCode();
+        if (value != null && value.equals(codeOf(id, net))) {
+            derivedStrings |= DERIVED_CODE;
+            value = null;
+        }
+        code = value;
+        value = properties.getIds();
+        if (value != null && value.equals(idsOf(id))) {
+            derivedStrings |= DERIVED_IDS;
+            value = null;
+        }
+        ids = value;
+        sources = intern(properties.getSources());
+        types = intern(properties.getTypes());
+        nst = toInt(properties.getNst());
+        dmin = toDouble(properties.getDmin());
+        rms = toDouble(properties.getRms());
+        gap = toInt(properties.getGap());
+        magType = intern(properties.getMagType());
+        propertiesType = intern(properties.getType());
+        value = properties.getTitle();
+        if (value != null && value.equals(titleOf(mag, place))) {
+            derivedStrings |= DERIVED_TITLE;
+            value = null;
+        }
+        title = value;
+        derived = derivedStrings;
+    }
+
+    /**
+     * Compacts a feature
+     *
+     * @param feature The feature, with an id and the time of its properties
+     * @return The compact copy of the feature
+     */
+    static CompactFeature of(Feature feature) {
+        return new CompactFeature(feature);
+    }
+
+    /**
+     * Checks whether the feature has a longitude and a latitude, the first two coordinates of its point
+     *
+     * @return true if both coordinates are present
+     */
+    boolean hasPosition() {
+        return coordinates != null && coordinates.length >= 2
+                && (missingCoordinates == null || (!missingCoordinates[0] && !missingCoordinates[1]));
+    }
+
+    double longitude() {
+        return coordinates[0];
+    }
+
+    double latitude() {
+        return coordinates[1];
+    }
+
+    /**
+     * Rebuilds the feature in the shape of the EarthQuake USGS service
+     *
+     * @return A new feature equal to the compacted one
+     */
+    Feature toFeature() {
+        Geometry geometry = null;
+        if (geometryType != null || coordinates != null) {
+            Double[] boxedCoordinates = null;
+            if (coordinates != null) {
+                boxedCoordinates = new Double[coordinates.length];
+                for (int i = 0; i < coordinates.length; i++) {
+                    boxedCoordinates[i] = missingCoordinates != null && missingCoordinates[i] ? null : coordinates[i];
+                }
+            }
+            geometry = new Geometry(geometryType, boxedCoordinates);
+        }
+        return Feature.builder()
+                .id(id)
+                .type(type)
+                .geometry(geometry)
+                .properties(Properties.builder()
+                        .mag(fromDouble(mag))
+                        .place(place)
+                        .time(fromLong(time))
+                        .updated(fromLong(updated))
+                        .tz(fromInt(tz))
+                        .url(isDerived(DERIVED_URL) ? urlOf(id) : url)
+                        .detail(isDerived(DERIVED_DETAIL) ? detailOf(id) : detail)
+                        .felt(fromInt(felt))
+                        .cdi(fromDouble(cdi))
+                        .mmi(fromDouble(mmi))
+                        .alert(alert)
+                        .status(status)
+                        .tsunami(fromInt(tsunami))
+                        .sig(fromInt(sig))
+                        .net(net)
+                        .code(isDerived(DERIVED_CODE) ? codeOf(id, net) : code)
+                        .ids(isDerived(DERIVED_IDS) ? idsOf(id) : ids)
+                        .sources(sources)
+                        .types(types)
+                        .nst(fromInt(nst))
+                        .dmin(fromDouble(dmin))
+                        .rms(fromDouble(rms))
+                        .gap(fromInt(gap))
+                        .magType(magType)
+                        .type(propertiesType)
+                        .title(isDerived(DERIVED_TITLE) ? titleOf(mag, place) : title)
+                        .build())
+                .build();
+    }
+
+    private boolean isDerived(byte field) {
+        return (derived & field) != 0;
+    }
+
+    private static String urlOf(String id) {
+        return EVENT_PAGE_URL + id;
+    }
+
+    private static String detailOf(String id) {
+        return DETAIL_URL + id + DETAIL_FORMAT;
+    }
+
+    private static String codeOf(String id, String net) {
+        return id != null && net != null && id.startsWith(net) ? id.substring(net.length()) : null;
+    }
+
+    private static String idsOf(String id) {
+        return "," + id + ",";
+    }
+
+    private static String titleOf(double mag, String place) {
+        return Double.isNaN(mag) ? null : "M " + mag + " - " + place;
+    }
+
+    private static String intern(String value) {
+        return value != null ? value.intern() : null;
+    }
+
+    private static double toDouble(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double fromDouble(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static long toLong(Long value) {
+        return value != null ? value : NO_LONG;
+    }
+
+    private static Long fromLong(long value) {
+        return value == NO_LONG ? null : value;
+    }
+
+    private static int toInt(Integer value) {
+        return value != null ? value : NO_INT;
+    }
+
+    private static Integer fromInt(int value) {
+        return value == NO_INT ? null : value;
+    }
+}
@@ -0,0 +1,155 @@
+package com.mpescarmona.earthquake.api.store;
+
+import com.mpescarmona.earthquake.api.domain.EarthquakeStats;
+import com.mpescarmona.earthquake.api.domain.StatsDimension;
+import com.mpescarmona.earthquake.api.util.PlaceUtil;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Statistics of the earthquakes of a day by magnitude bin and region, updated as the earthquakes are added to
+ * and removed from its partition, so they are never computed again for a query. The magnitudes of a group are
+ * counted by value, so its maximum stays exact when an earthquake is removed.
+ */
+final class DayRollup {
+    private static final double NO_MAGNITUDE = Double.NaN;
+
+    private final Map<Key, Rollup> rollups = new HashMap<>();
+
+    synchronized void add(CompactFeature feature) {
+        rollups.computeIfAbsent(Key.of(feature), key -> new Rollup()).add(feature);
+    }
+
+    synchronized void remove(CompactFeature feature) {
+        Key key = Key.of(feature);
+        Rollup rollup = rollups.get(key);
+        if (rollup != null && rollup.remove(feature)) {
+            rollups.remove(key);
+        }
+    }
+
+    /**
+     * Adds the statistics of the day to the groups they belong to
+     *
+     * @param day     The day of the statistics
+     * @param groupBy The dimensions of the groups
+     * @param groups  The statistics of every group, by the values of its dimensions
+     */
+    synchronized void mergeInto(LocalDate day, Set<StatsDimension> groupBy, Map<List<Object>, Accumulator> groups) {
+        String dayValue = groupBy.contains(StatsDimension.DAY) ? day.toString() : null;
+        for (Map.Entry<Key, Rollup> entry : rollups.entrySet()) {
+            Key key = entry.getKey();
+            List<Object> group = Arrays.asList(dayValue,
+                    groupBy.contains(StatsDimension.MAGNITUDE) && !Double.isNaN(key.bin) ? key.bin : null,
+                    groupBy.contains(StatsDimension.REGION) ? key.region : null);
+            groups.computeIfAbsent(group, ignored -> new Accumulator()).add(entry.getValue());
+        }
+    }
+
+    private static final class Key {
+        final double bin;
+        final String region;
+
+        private Key(double bin, String region) {
+            this.bin = bin;
+            this.region = region;
+        }
+
+        static Key of(CompactFeature feature) {
+            return new Key(Double.isNaN(feature.mag) ? NO_MAGNITUDE : Math.floor(feature.mag),
+                    PlaceUtil.normalizeRegion(feature.place));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Double.compare(bin, other.bin) == 0 && Objects.equals(region, other.region);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Double.hashCode(bin) + Objects.hashCode(region);
+        }
+    }
+
+    private static final class Rollup {
+        private final TreeMap<Double, Integer> magnitudes = new TreeMap<>();
+        private long count;
+        private long magnitudeCount;
+        private double magnitudeSum;
+        private long significance;
+
+        void add(CompactFeature feature) {
+            count++;
+            if (!Double.isNaN(feature.mag)) {
+                magnitudes.merge(feature.mag, 1, Integer::sum);
+                magnitudeCount++;
+                magnitudeSum += feature.mag;
+            }
+            if (feature.sig != Integer.MIN_VALUE) {
+                significance += feature.sig;
+            }
+        }
+
+        // returns true when the group is left empty
+        boolean remove(CompactFeature feature) {
+            count--;
+            if (!Double.isNaN(feature.mag)) {
+                magnitudes.computeIfPresent(feature.mag, (mag, times) -> times > 1 ? times - 1 : null);
+                magnitudeCount--;
+                magnitudeSum -= feature.mag;
+            }
+            if (feature.sig != Integer.MIN_VALUE) {
+                significance -= feature.sig;
+            }
+            return count <= 0;
+        }
+    }
+
+    /**
+     * Statistics of a group, merged from the rollups of its days
+     */
+    static final class Accumulator {
+        private long count;
+        private long magnitudeCount;
+        private double magnitudeSum;
+        private double maxMagnitude = Double.NEGATIVE_INFINITY;
+        private long significance;
+
+        private void add(Rollup rollup) {
+            count += rollup.count;
+            magnitudeCount += rollup.magnitudeCount;
+            magnitudeSum += rollup.magnitudeSum;
+            if (!rollup.magnitudes.isEmpty()) {
+                maxMagnitude = Math.max(maxMagnitude, rollup.magnitudes.lastKey());
+            }
+            significance += rollup.significance;
+        }
+
+        EarthquakeStats toStats(List<Object> group) {
+            return EarthquakeStats.builder()
+                    .day((String) group.get(0))
+                    .magnitude((Double) group.get(1))
+                    .region((String) group.get(2))
+                    .count(count)
+                    .maxMagnitude(magnitudeCount > 0 ? maxMagnitude : null)
+                    // rounded to thousandths, absorbing the error of the sums kept across removals
+                    .meanMagnitude(magnitudeCount > 0 ? Math.round(magnitudeSum / magnitudeCount * 1000) / 1000.0 : null)
+                    .significance(significance)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.mpescarmona.earthquake.api.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes the complete days of the store to a segment file every intervalMs and on shutdown, and restores them
+ * on startup, so a restarted service answers from the catalog it held instead of loading it again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "earthquake.snapshot.enabled", havingValue = "true")
+public class EarthquakeCatalogSnapshot {
+    private final EarthquakeStore earthquakeStore;
+    private final Path path;
+
+    public EarthquakeCatalogSnapshot(EarthquakeStore earthquakeStore,
+                                     @Value("${earthquake.snapshot.path}") String path) {
+        this.earthquakeStore = earthquakeStore;
+        this.path = Paths.get(path);
+    }
+
+    /**
+     * Maps the segment file written by the previous run, if any
+     */
+    @PostConstruct
+    public void restore() {
+        if (!Files.exists(path)) {
+            log.info("action=restore, path={}, days=0", path);
+            return;
+        }
+        try {
+            int days = earthquakeStore.restoreSnapshot(path);
+            log.info("action=restore, path={}, days={}", path, days);
+        } catch (IOException | RuntimeException ex) {
+            log.error("action=restore, path={}, error={}", path, ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes the complete days of the store to the segment file, replacing the previous one
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${earthquake.snapshot.intervalMs}",
+            initialDelayString = "${earthquake.snapshot.intervalMs}")
+    public void write() {
+        try {
+            long startNanos = System.nanoTime();
+            int days = earthquakeStore.writeSnapshot(path);
+            log.info("action=write, path={}, days={}, elapsedMs={}", path, days,
+                    (System.nanoTime() - startNanos) / 1000000);
+        } catch (IOException | RuntimeException ex) {
+            log.error("action=write, path={}, error={}", path, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,647 @@
+package com.mpescarmona.earthquake.api.store;
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox;
+import com.mpescarmona.earthquake.api.domain.EarthquakeStats;
+import com.mpescarmona.earthquake.api.domain.Feature;
+import com.mpescarmona.earthquake.api.domain.StatsDimension;
+import com.mpescarmona.earthquake.api.util.GeoUtil;
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import com.mpescarmona.earthquake.api.util.PlaceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory store of earthquake features partitioned by the UTC day of their time.
+ * A partition is complete when a whole day was loaded from the EarthQuake USGS service, and fresh while its
+ * load, or the last delta sync when it was loaded after the sync started, is younger than the ttl configured for
+ * its age.
+ * Every partition indexes its features by the normalized region of their place, so country lookups only
+ * visit the features of the matching regions, and by the cell of one degree of latitude and longitude containing
+ * their point, so area lookups only visit the features of the cells overlapping the area. Features are held as
+ * {@link CompactFeature} and rebuilt only when they are returned. Every partition also keeps a {@link DayRollup} of
+ * its features, so statistics are merged from the days instead of computed from their features.
+ * The complete partitions can be written to a {@link CatalogSegment} and restored from it on startup. A restored
+ * partition reads its features from the mapped segment until it first changes, when they are copied to the heap.
+ */
+@Slf4j
+@Component
+public class EarthquakeStore {
+    private static final String STATUS_DELETED = "deleted";
+    private static final Comparator<CompactFeature> BY_TIME_DESC =
+            Comparator.comparingLong((CompactFeature feature) -> feature.time).reversed();
+    private static final Comparator<List<Object>> BY_GROUP =
+            Comparator.comparing((List<Object> group) -> (String) group.get(0), Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(group -> (Double) group.get(1), Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(group -> (String) group.get(2), Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final ConcurrentSkipListMap<LocalDate, DayPartition> partitions = new ConcurrentSkipListMap<>();
+    private final int maxPartitions;
+    private final int recentDays;
+    private final long recentPartitionTtlMs;
+    private final long partitionTtlMs;
+    private final Clock clock;
+    // the delta sync kept every change between these times, 0 while it is not running
+    private volatile long syncedFrom;
+    private volatile long syncedUntil;
+    // the oldest load of the restored partitions, 0 when nothing was restored
+    private volatile long restoredAt;
+
+    @Autowired
+    public EarthquakeStore(@Value("${earthquake.store.maxPartitions}") int maxPartitions,
+                           @Value("${earthquake.store.recentDays}") int recentDays,
+                           @Value("${earthquake.store.recentPartitionTtlMs}") long recentPartitionTtlMs,
+                           @Value("${earthquake.store.partitionTtlMs}") long partitionTtlMs) {
+        this(maxPartitions, recentDays, recentPartitionTtlMs, partitionTtlMs, Clock.systemUTC());
+    }
+
+    EarthquakeStore(int maxPartitions, int recentDays, long recentPartitionTtlMs, long partitionTtlMs, Clock clock) {
+        this.maxPartitions = maxPartitions;
+        this.recentDays = recentDays;
+        this.recentPartitionTtlMs = recentPartitionTtlMs;
+        this.partitionTtlMs = partitionTtlMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether the whole time range fits in the store
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @return true if the days of the range do not exceed the maximum number of partitions
+     */
+    public boolean canHold(long startMillis, long endMillis) {
+        return startMillis <= endMillis && requiredDays(startMillis, endMillis).size() <= maxPartitions;
+    }
+
+    /**
+     * Gets the days of the time range whose partitions are missing or stale
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @return The days that must be loaded from the EarthQuake USGS service, in ascending order
+     */
+    public List<LocalDate> findMissingDays(long startMillis, long endMillis) {
+        List<LocalDate> missingDays = new ArrayList<>();
+        long now = clock.millis();
+        for (LocalDate day : requiredDays(startMillis, endMillis)) {
+            DayPartition partition = partitions.get(day);
+            if (partition == null || !isFresh(day, partition, now)) {
+                missingDays.add(day);
+            }
+        }
+        return missingDays;
+    }
+
+    /**
+     * Stores the features loaded from the EarthQuake USGS service for the given time range.
+     * The partitions of the days fully covered by the range are replaced, the rest are only added to.
+     *
+     * @param features    The features returned for the range
+     * @param startMillis The start of the loaded range, in epoch millis
+     * @param endMillis   The end of the loaded range, in epoch millis
+     */
+    public void putAll(Collection<Feature> features, long startMillis, long endMillis) {
+        long now = clock.millis();
+        Map<LocalDate, DayPartition> loaded = new HashMap<>();
+        for (LocalDate day : completeDays(startMillis, endMillis)) {
+            loaded.put(day, new DayPartition(now));
+        }
+        for (Feature feature : features) {
+            if (!isStorable(feature)) {
+                continue;
+            }
+            LocalDate day = EarthquakeTimeUtil.toUtcDay(feature.getProperties().getTime());
+            DayPartition partition = loaded.get(day);
+            if (partition == null) {
+                partition = partitions.computeIfAbsent(day, key -> new DayPartition(0L));
+            }
+            partition.put(CompactFeature.of(feature));
+        }
+        partitions.putAll(loaded);
+        evictPartitions();
+        log.info("action=putAll, features={}, completeDays={}, partitions={}", features.size(), loaded.size(),
+                partitions.size());
+    }
+
+    /**
+     * Applies an earthquake inserted, updated or deleted in the EarthQuake USGS service to the partition of its
+     * day, when the day is held. Older versions than the held one are ignored, so changes may be applied twice.
+     *
+     * @param feature The earthquake, deleted when its status is deleted
+     * @return true if a held partition changed
+     */
+    public boolean applyChange(Feature feature) {
+        if (!isStorable(feature)) {
+            return false;
+        }
+        LocalDate day = EarthquakeTimeUtil.toUtcDay(feature.getProperties().getTime());
+        boolean deleted = STATUS_DELETED.equals(feature.getProperties().getStatus());
+        boolean changed = false;
+        // a revised time may move the earthquake to a neighbouring day
+        for (LocalDate heldDay : Arrays.asList(day.minusDays(1), day, day.plusDays(1))) {
+            DayPartition partition = partitions.get(heldDay);
+            if (partition != null && (deleted || !heldDay.equals(day))) {
+                changed |= partition.remove(feature.getId());
+            }
+        }
+        DayPartition partition = partitions.get(day);
+        if (!deleted && partition != null) {
+            changed |= partition.putIfNewer(CompactFeature.of(feature));
+        }
+        return changed;
+    }
+
+    /**
+     * Records that every change between the given times was applied, so the partitions loaded since the sync
+     * started stay fresh without being loaded again. The first call starts the sync.
+     *
+     * @param from  The time the applied changes start at, in epoch millis
+     * @param until The time of the poll whose changes were applied, in epoch millis
+     */
+    public void markSynced(long from, long until) {
+        if (syncedFrom <= 0L) {
+            syncedFrom = from;
+        }
+        syncedUntil = until;
+    }
+
+    /**
+     * Stops treating the partitions as synced, when changes may have been missed
+     */
+    public void resetSync() {
+        syncedFrom = 0L;
+        syncedUntil = 0L;
+        restoredAt = 0L;
+    }
+
+    /**
+     * Writes the complete partitions to a segment file, replacing the previous one
+     *
+     * @param path The segment file
+     * @return The number of days written
+     * @throws IOException when the segment can not be written
+     */
+    public int writeSnapshot(Path path) throws IOException {
+        List<CatalogSegment.DayContent> days = new ArrayList<>();
+        long now = clock.millis();
+        for (Map.Entry<LocalDate, DayPartition> entry : partitions.entrySet()) {
+            DayPartition partition = entry.getValue();
+            if (partition.loadedAt <= 0L) {
+                continue;
+            }
+            List<CompactFeature> features = partition.snapshot();
+            if (features.stream().anyMatch(feature -> feature.coordinates != null
+                    && feature.coordinates.length > CatalogSegment.MAX_COORDINATES)) {
+                continue;
+            }
+            days.add(new CatalogSegment.DayContent(entry.getKey(), refreshedAt(partition), features));
+        }
+        if (days.isEmpty()) {
+            return 0;
+        }
+        CatalogSegment.write(path, days, now);
+        return days.size();
+    }
+
+    /**
+     * Restores the days of a segment file the store does not hold. Their features are read from the mapped file
+     * until they change, so restoring takes the same time whatever the size of the catalog.
+     *
+     * @param path The segment file
+     * @return The number of days restored
+     * @throws IOException when the file can not be read or is not a segment
+     */
+    public int restoreSnapshot(Path path) throws IOException {
+        CatalogSegment segment = CatalogSegment.open(path);
+        int restored = 0;
+        long oldestLoad = Long.MAX_VALUE;
+        for (CatalogSegment.Day day : segment.getDays()) {
+            if (partitions.putIfAbsent(day.day, new DayPartition(day)) == null) {
+                restored++;
+                oldestLoad = Math.min(oldestLoad, day.loadedAt);
+            }
+        }
+        if (restored > 0) {
+            restoredAt = oldestLoad;
+        }
+        evictPartitions();
+        return restored;
+    }
+
+    /**
+     * Gets the time the changes must be applied from for the restored partitions to be up to date
+     *
+     * @return The oldest load of the restored partitions, in epoch millis, or 0 when nothing was restored
+     */
+    public long getRestoredAt() {
+        return restoredAt;
+    }
+
+    /**
+     * Gets the first day held by the store
+     *
+     * @return The oldest day with a partition, or empty when the store is empty
+     */
+    public Optional<LocalDate> getFirstDay() {
+        Map.Entry<LocalDate, DayPartition> first = partitions.firstEntry();
+        return first != null ? Optional.of(first.getKey()) : Optional.empty();
+    }
+
+    /**
+     * Gets the held features between the given times, newest first
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @return The features whose time is within the range
+     */
+    public List<Feature> findByTimeRange(long startMillis, long endMillis) {
+        List<CompactFeature> result = new ArrayList<>();
+        long now = clock.millis();
+        for (DayPartition partition : partitions.subMap(EarthquakeTimeUtil.toUtcDay(startMillis), true,
+                EarthquakeTimeUtil.toUtcDay(endMillis), true).values()) {
+            partition.lastAccess = now;
+            partition.collect(startMillis, endMillis, result);
+        }
+        return toFeatures(result);
+    }
+
+    /**
+     * Gets the held features between the given times located in any of the given countries, newest first
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @param countries   The countries, looked for in the region of the place ignoring case
+     * @return The features whose time is within the range and whose region contains any of the countries
+     */
+    public List<Feature> findByTimeRangeAndCountries(long startMillis, long endMillis, Collection<String> countries) {
+        List<String> normalizedCountries = countries.stream()
+                .filter(Objects::nonNull)
+                .map(PlaceUtil::normalizeCountry)
+                .collect(Collectors.toList());
+        List<CompactFeature> result = new ArrayList<>();
+        long now = clock.millis();
+        for (DayPartition partition : partitions.subMap(EarthquakeTimeUtil.toUtcDay(startMillis), true,
+                EarthquakeTimeUtil.toUtcDay(endMillis), true).values()) {
+            partition.lastAccess = now;
+            partition.collect(startMillis, endMillis, normalizedCountries, result);
+        }
+        return toFeatures(result);
+    }
+
+    /**
+     * Gets the held features between the given times located inside a bounding box, newest first
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @param boundingBox The box the point of the features must be in
+     * @return The features whose time is within the range and whose point is inside the box
+     */
+    public List<Feature> findByTimeRangeAndBoundingBox(long startMillis, long endMillis, BoundingBox boundingBox) {
+        return toFeatures(collectInBoundingBox(startMillis, endMillis, boundingBox));
+    }
+
+    /**
+     * Gets the held features between the given times located within a distance of a point, newest first
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @param latitude    The latitude of the point, in degrees
+     * @param longitude   The longitude of the point, in degrees
+     * @param radiusKm    The maximum distance to the point, in kilometers
+     * @return The features whose time is within the range and whose point is within the distance
+     */
+    public List<Feature> findByTimeRangeAndRadius(long startMillis, long endMillis, double latitude, double longitude,
+                                                  double radiusKm) {
+        List<CompactFeature> result = collectInBoundingBox(startMillis, endMillis,
+                BoundingBox.around(latitude, longitude, radiusKm));
+        result.removeIf(feature ->
+                GeoUtil.distanceKm(latitude, longitude, feature.latitude(), feature.longitude()) > radiusKm);
+        return toFeatures(result);
+    }
+
+    /**
+     * Gets the statistics of the held features between the given times, grouped by the given dimensions. The
+     * days fully within the range are merged from their rollups, only the features of the first and last days
+     * are visited when the range starts or ends within them.
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @param groupBy     The dimensions of the groups, none to get the statistics of the whole range
+     * @return The statistics of every group, ordered by day, magnitude and region
+     */
+    public List<EarthquakeStats> findStats(long startMillis, long endMillis, Set<StatsDimension> groupBy) {
+        Map<List<Object>, DayRollup.Accumulator> groups = new HashMap<>();
+        long now = clock.millis();
+        for (Map.Entry<LocalDate, DayPartition> entry : partitions.subMap(EarthquakeTimeUtil.toUtcDay(startMillis), true,
+                EarthquakeTimeUtil.toUtcDay(endMillis), true).entrySet()) {
+            LocalDate day = entry.getKey();
+            DayPartition partition = entry.getValue();
+            partition.lastAccess = now;
+            if (startMillis <= EarthquakeTimeUtil.startOfUtcDay(day)
+                    && endMillis >= EarthquakeTimeUtil.startOfUtcDay(day.plusDays(1)) - 1) {
+                partition.rollup().mergeInto(day, groupBy, groups);
+            } else {
+                List<CompactFeature> features = new ArrayList<>();
+                partition.collect(startMillis, endMillis, features);
+                DayRollup rollup = new DayRollup();
+                features.forEach(rollup::add);
+                rollup.mergeInto(day, groupBy, groups);
+            }
+        }
+        return groups.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(BY_GROUP))
+                .map(group -> group.getValue().toStats(group.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    public int getMaxPartitions() {
+        return maxPartitions;
+    }
+
+    private List<CompactFeature> collectInBoundingBox(long startMillis, long endMillis, BoundingBox boundingBox) {
+        List<CompactFeature> result = new ArrayList<>();
+        long now = clock.millis();
+        for (DayPartition partition : partitions.subMap(EarthquakeTimeUtil.toUtcDay(startMillis), true,
+                EarthquakeTimeUtil.toUtcDay(endMillis), true).values()) {
+            partition.lastAccess = now;
+            partition.collect(startMillis, endMillis, boundingBox, result);
+        }
+        return result;
+    }
+
+    private List<Feature> toFeatures(List<CompactFeature> compactFeatures) {
+        compactFeatures.sort(BY_TIME_DESC);
+        List<Feature> features = new ArrayList<>(compactFeatures.size());
+        for (CompactFeature compactFeature : compactFeatures) {
+            features.add(compactFeature.toFeature());
+        }
+        return features;
+    }
+
+    private boolean isStorable(Feature feature) {
+        return Objects.nonNull(feature.getId())
+                && Objects.nonNull(feature.getProperties())
+                && Objects.nonNull(feature.getProperties().getTime());
+    }
+
+    private boolean isFresh(LocalDate day, DayPartition partition, long now) {
+        if (partition.loadedAt <= 0L) {
+            return false;
+        }
+        LocalDate recentLimit = EarthquakeTimeUtil.toUtcDay(now).minusDays(recentDays);
+        long ttl = day.isBefore(recentLimit) ? partitionTtlMs : recentPartitionTtlMs;
+        return now - refreshedAt(partition) <= ttl;
+    }
+
+    private long refreshedAt(DayPartition partition) {
+        long from = syncedFrom;
+        return from > 0L && partition.loadedAt >= from
+                ? Math.max(partition.loadedAt, syncedUntil)
+                : partition.loadedAt;
+    }
+
+    // the days whose events may be returned for the range; the end day is not needed when the range ends at its midnight
+    private List<LocalDate> requiredDays(long startMillis, long endMillis) {
+        List<LocalDate> days = new ArrayList<>();
+        LocalDate last = EarthquakeTimeUtil.toUtcDay(endMillis - 1);
+        for (LocalDate day = EarthquakeTimeUtil.toUtcDay(startMillis); !day.isAfter(last); day = day.plusDays(1)) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    // the days whose every instant is within the range
+    private List<LocalDate> completeDays(long startMillis, long endMillis) {
+        List<LocalDate> days = new ArrayList<>();
+        LocalDate first = EarthquakeTimeUtil.toUtcDay(startMillis);
+        if (EarthquakeTimeUtil.startOfUtcDay(first) < startMillis) {
+            first = first.plusDays(1);
+        }
+        LocalDate last = EarthquakeTimeUtil.toUtcDay(endMillis + 1).minusDays(1);
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    private void evictPartitions() {
+        while (partitions.size() > maxPartitions) {
+            partitions.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .ifPresent(entry -> {
+                        partitions.remove(entry.getKey(), entry.getValue());
+                        log.info("action=evictPartitions, day={}", entry.getKey());
+                    });
+        }
+    }
+
+    private static class DayPartition {
+        private static final String NO_REGION = "";
+
+        private final Map<String, CompactFeature> features = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> regionIndex = new ConcurrentHashMap<>();
+        private final Map<Integer, Set<String>> cellIndex = new ConcurrentHashMap<>();
+        private DayRollup rollup = new DayRollup();
+        // whether the rollup holds the features of the mapped day
+        private boolean mappedRolledUp;
+        private final long loadedAt;
+        private volatile long lastAccess;
+        // the day of the segment the features are read from, until they are copied to the maps
+        private volatile CatalogSegment.Day mapped;
+
+        DayPartition(long loadedAt) {
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+
+        DayPartition(CatalogSegment.Day mapped) {
+            this(mapped.loadedAt);
+            this.mapped = mapped;
+        }
+
+        void collect(long startMillis, long endMillis, List<CompactFeature> result) {
+            CatalogSegment.Day day = mapped;
+            if (day != null) {
+                day.collect(startMillis, endMillis, null, result);
+                return;
+            }
+            for (CompactFeature feature : features.values()) {
+                if (feature.time >= startMillis && feature.time <= endMillis) {
+                    result.add(feature);
+                }
+            }
+        }
+
+        void collect(long startMillis, long endMillis, List<String> normalizedCountries, List<CompactFeature> result) {
+            CatalogSegment.Day day = mapped;
+            if (day != null) {
+                day.collect(startMillis, endMillis, day.getSegment().findRegions(normalizedCountries), result);
+                return;
+            }
+            for (Map.Entry<String, Set<String>> region : regionIndex.entrySet()) {
+                if (normalizedCountries.stream().noneMatch(country -> region.getKey().contains(country))) {
+                    continue;
+                }
+                for (String id : region.getValue()) {
+                    CompactFeature feature = features.get(id);
+                    if (feature != null && feature.time >= startMillis && feature.time <= endMillis) {
+                        result.add(feature);
+                    }
+                }
+            }
+        }
+
+        void collect(long startMillis, long endMillis, BoundingBox boundingBox, List<CompactFeature> result) {
+            CatalogSegment.Day day = mapped;
+            if (day != null) {
+                day.collectInBoundingBox(startMillis, endMillis, boundingBox, result);
+                return;
+            }
+            int firstLatitude = latitudeCell(boundingBox.getMinLatitude());
+            int latitudes = latitudeCell(boundingBox.getMaxLatitude()) - firstLatitude + 1;
+            int firstLongitude = (int) Math.floor(boundingBox.getMinLongitude() + 180);
+            int longitudes = boundingBox.coversAllLongitudes() ? 360
+                    : Math.min(360, (int) Math.floor(boundingBox.getMaxLongitude() + 180) - firstLongitude + 1);
+            if ((long) latitudes * longitudes >= features.size()) {
+                // a wide box visits more cells than features
+                for (CompactFeature feature : features.values()) {
+                    addIfInside(feature, startMillis, endMillis, boundingBox, result);
+                }
+                return;
+            }
+            for (int latitude = firstLatitude; latitude < firstLatitude + latitudes; latitude++) {
+                for (int longitude = firstLongitude; longitude < firstLongitude + longitudes; longitude++) {
+                    Set<String> ids = cellIndex.get(latitude * 360 + Math.floorMod(longitude, 360));
+                    if (ids == null) {
+                        continue;
+                    }
+                    for (String id : ids) {
+                        CompactFeature feature = features.get(id);
+                        if (feature != null) {
+                            addIfInside(feature, startMillis, endMillis, boundingBox, result);
+                        }
+                    }
+                }
+            }
+        }
+
+        synchronized DayRollup rollup() {
+            CatalogSegment.Day day = mapped;
+            if (day != null && !mappedRolledUp) {
+                day.forEach(rollup::add);
+                mappedRolledUp = true;
+            }
+            return rollup;
+        }
+
+        synchronized List<CompactFeature> snapshot() {
+            CatalogSegment.Day day = mapped;
+            if (day != null) {
+                List<CompactFeature> result = new ArrayList<>();
+                day.forEach(result::add);
+                return result;
+            }
+            return new ArrayList<>(features.values());
+        }
+
+        synchronized boolean putIfNewer(CompactFeature feature) {
+            materialize();
+            CompactFeature previous = features.get(feature.id);
+            if (previous != null && previous.updated > feature.updated) {
+                return false;
+            }
+            put(feature);
+            return true;
+        }
+
+        synchronized boolean remove(String id) {
+            materialize();
+            CompactFeature previous = features.remove(id);
+            if (previous == null) {
+                return false;
+            }
+            unindex(previous);
+            return true;
+        }
+
+        synchronized void put(CompactFeature feature) {
+            materialize();
+            index(feature);
+        }
+
+        // copies the features of the mapped day to the maps before they change
+        private void materialize() {
+            CatalogSegment.Day day = mapped;
+            if (day != null) {
+                rollup = new DayRollup();
+                day.forEach(this::index);
+                mapped = null;
+            }
+        }
+
+        private void index(CompactFeature feature) {
+            CompactFeature previous = features.put(feature.id, feature);
+            if (previous != null) {
+                unindex(previous);
+            }
+            rollup.add(feature);
+            regionIndex.computeIfAbsent(regionOf(feature), key -> ConcurrentHashMap.newKeySet()).add(feature.id);
+            if (feature.hasPosition()) {
+                cellIndex.computeIfAbsent(cellOf(feature), key -> ConcurrentHashMap.newKeySet()).add(feature.id);
+            }
+        }
+
+        private void unindex(CompactFeature feature) {
+            rollup.remove(feature);
+            Set<String> ids = regionIndex.get(regionOf(feature));
+            if (ids != null) {
+                ids.remove(feature.id);
+            }
+            ids = feature.hasPosition() ? cellIndex.get(cellOf(feature)) : null;
+            if (ids != null) {
+                ids.remove(feature.id);
+            }
+        }
+
+        private static void addIfInside(CompactFeature feature, long startMillis, long endMillis,
+                                        BoundingBox boundingBox, List<CompactFeature> result) {
+            if (feature.time >= startMillis && feature.time <= endMillis && feature.hasPosition()
+                    && boundingBox.contains(feature.latitude(), feature.longitude())) {
+                result.add(feature);
+            }
+        }
+
+        private static int cellOf(CompactFeature feature) {
+            return latitudeCell(feature.latitude()) * 360 + Math.floorMod((int) Math.floor(feature.longitude() + 180), 360);
+        }
+
+        private static int latitudeCell(double latitude) {
+            return Math.max(0, Math.min(179, (int) Math.floor(latitude + 90)));
+        }
+
+        private static String regionOf(CompactFeature feature) {
+            String region = PlaceUtil.normalizeRegion(feature.place);
+            return region != null ? region : NO_REGION;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.mpescarmona.earthquake.api.sync;
+
+import com.mpescarmona.earthquake.api.domain.FeatureFilter;
+import com.mpescarmona.earthquake.api.domain.Metadata;
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse;
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics;
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser;
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard;
+import com.mpescarmona.earthquake.api.store.EarthquakeStore;
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the partitions of the store up to date by polling the EarthQuake USGS service for the earthquakes
+ * updated since the last poll, deleted ones included, instead of loading whole days again. A poll downloads
+ * only the changed earthquakes and streams them into the store, so it can run often.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "earthquake.sync.enabled", havingValue = "true")
+public class EarthquakeDeltaSync {
+    static final String ACTION = "sync";
+
+    private final RestTemplate restTemplate;
+    private final EarthquakeUrlHelper earthquakeUrlHelper;
+    private final EarthquakeStore earthquakeStore;
+    private final GeoJsonStreamingParser geoJsonStreamingParser;
+    private final EarthquakeUpstreamGuard earthquakeUpstreamGuard;
+    private final EarthquakeMetrics earthquakeMetrics;
+    private final long overlapMs;
+    private final int maxLimit;
+    // the start of the last poll whose changes were all applied, 0 before the first poll
+    private volatile long watermark;
+
+    public EarthquakeDeltaSync(RestTemplate restTemplate, EarthquakeUrlHelper earthquakeUrlHelper,
+                               EarthquakeStore earthquakeStore, GeoJsonStreamingParser geoJsonStreamingParser,
+                               EarthquakeUpstreamGuard earthquakeUpstreamGuard, EarthquakeMetrics earthquakeMetrics,
+                               @Value("${earthquake.sync.overlapMs}") long overlapMs,
+                               @Value("${earthquake.page.maxLimit}") int maxLimit) {
+        this.restTemplate = restTemplate;
+        this.earthquakeUrlHelper = earthquakeUrlHelper;
+        this.earthquakeStore = earthquakeStore;
+        this.geoJsonStreamingParser = geoJsonStreamingParser;
+        this.earthquakeUpstreamGuard = earthquakeUpstreamGuard;
+        this.earthquakeMetrics = earthquakeMetrics;
+        this.overlapMs = overlapMs;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Applies to the store the earthquakes updated since the previous poll, overlapping it by overlapMs. The first
+     * poll reads the changes since the oldest restored partition, or only sets the watermark when nothing was
+     * restored, the days held before it are reloaded when their ttl expires. When a poll fails, the next one reads
+     * the changes since the last successful one.
+     */
+    @Scheduled(fixedDelayString = "${earthquake.sync.intervalMs}")
+    public void sync() {
+        long pollStartedAt = System.currentTimeMillis();
+        long from = watermark > 0L ? watermark : earthquakeStore.getRestoredAt();
+        Optional<LocalDate> firstDay = earthquakeStore.getFirstDay();
+        if (from <= 0L || !firstDay.isPresent()) {
+            // no held day can miss a change made before this poll
+            advance(pollStartedAt, pollStartedAt);
+            return;
+        }
+
+        String url = earthquakeUrlHelper.buildEarthquakeUrlByUpdatedAfter(
+                EarthquakeTimeUtil.formatUtc(EarthquakeTimeUtil.startOfUtcDay(firstDay.get())),
+                EarthquakeTimeUtil.formatUtc(from - overlapMs));
+        log.info("action=sync, url={}", url);
+        AtomicLong changed = new AtomicLong();
+        Timer.Sample upstreamSample = earthquakeMetrics.startTimer();
+        String outcome = "error";
+        try {
+            EarthquakeResponse response = earthquakeUpstreamGuard.execute(() -> restTemplate.execute(url, HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON)),
+                    upstreamResponse -> geoJsonStreamingParser.parse(upstreamResponse.getBody(), FeatureFilter.NONE,
+                            feature -> {
+                                if (earthquakeStore.applyChange(feature)) {
+                                    changed.incrementAndGet();
+                                }
+                            })));
+            outcome = "success";
+            Metadata metadata = response != null ? response.getMetadata() : null;
+            long changes = metadata != null && metadata.getCount() != null ? metadata.getCount() : changed.get();
+            earthquakeMetrics.countFeatures(ACTION, EarthquakeMetrics.SOURCE_UPSTREAM, changes, changed.get());
+            if (changes >= maxLimit) {
+                // the service truncated the changes, the held days are reloaded when their ttl expires
+                log.error("action=sync, error=more than {} changes, the sync starts again", maxLimit);
+                earthquakeStore.resetSync();
+                watermark = 0L;
+                return;
+            }
+            advance(from, pollStartedAt);
+            log.info("action=sync, changes={}, applied={}", changes, changed.get());
+        } catch (RuntimeException ex) {
+            log.error("action=sync, url={}, error={}", url, ex.getMessage());
+        } finally {
+            earthquakeMetrics.stopUpstream(upstreamSample, ACTION, outcome);
+        }
+    }
+
+    private void advance(long from, long pollStartedAt) {
+        watermark = pollStartedAt;
+        earthquakeStore.markSynced(from, pollStartedAt);
+    }
+}
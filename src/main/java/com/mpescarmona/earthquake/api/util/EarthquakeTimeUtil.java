@@ -0,0 +1,75 @@
+package com.mpescarmona.earthquake.api.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+public final class EarthquakeTimeUtil {
+    private static final DateTimeFormatter UTC_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    private EarthquakeTimeUtil() {
+    }
+
+    /**
+     * Parses a time value the way the EarthQuake USGS service does: an ISO8601 date or date-time,
+     * interpreted as UTC when no offset is given
+     *
+     * @param time The date or date-time string
+     * @return The epoch millis of the given time, or empty when it can not be parsed
+     */
+    public static Optional<Long> parseEpochMillis(String time) {
+        if (time == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(LocalDate.parse(time).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli());
+        } catch (DateTimeParseException ignored) {
+            // not a plain date, try with time
+        }
+        try {
+            return Optional.of(OffsetDateTime.parse(time).toInstant().toEpochMilli());
+        } catch (DateTimeParseException ignored) {
+            // no offset, try as UTC local date-time
+        }
+        try {
+            return Optional.of(LocalDateTime.parse(time).toInstant(ZoneOffset.UTC).toEpochMilli());
+        } catch (DateTimeParseException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the UTC day of the given epoch millis
+     *
+     * @param epochMillis The epoch millis
+     * @return The UTC day containing the given instant
+     */
+    public static LocalDate toUtcDay(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * Returns the epoch millis of the start of the given UTC day
+     *
+     * @param day The UTC day
+     * @return The epoch millis at midnight of the given day
+     */
+    public static long startOfUtcDay(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Formats epoch millis as an ISO8601 date-time without offset, which the EarthQuake USGS service reads as UTC
+     *
+     * @param epochMillis The epoch millis
+     * @return The UTC date-time string, with millis
+     */
+    public static String formatUtc(long epochMillis) {
+        return UTC_DATE_TIME.format(Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC));
+    }
+}
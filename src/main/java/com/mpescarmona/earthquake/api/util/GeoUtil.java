@@ -0,0 +1,25 @@
+package com.mpescarmona.earthquake.api.util;
+
+public final class GeoUtil {
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private GeoUtil() {
+    }
+
+    /**
+     * Returns the great-circle distance between two points, by the haversine formula
+     *
+     * @param latitude1  The latitude of the first point, in degrees
+     * @param longitude1 The longitude of the first point, in degrees
+     * @param latitude2  The latitude of the second point, in degrees
+     * @param longitude2 The longitude of the second point, in degrees
+     * @return The distance between the points, in kilometers
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinHalfLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfLatitude * sinHalfLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitude * sinHalfLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,44 @@
+package com.mpescarmona.earthquake.api.util;
+
+import java.util.Locale;
+
+public final class PlaceUtil {
+
+    private PlaceUtil() {
+    }
+
+    /**
+     * Returns the index where the region of a place starts. The EarthQuake USGS service names places as
+     * "&lt;distance&gt; of &lt;locality&gt;, &lt;region&gt;", or just "&lt;region&gt;" for remote areas.
+     *
+     * @param place The place of a feature
+     * @return The index of the first char of the region, after the last comma and the spaces following it
+     */
+    public static int regionStart(String place) {
+        int start = place.lastIndexOf(',') + 1;
+        while (start < place.length() && Character.isWhitespace(place.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the normalized region of a place, the country or area it belongs to
+     *
+     * @param place The place of a feature
+     * @return The trimmed, lower case region of the place, or null when there is no place
+     */
+    public static String normalizeRegion(String place) {
+        return place == null ? null : place.substring(regionStart(place)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Normalizes a country name the same way as the regions of the places
+     *
+     * @param country The country name
+     * @return The trimmed, lower case country name
+     */
+    public static String normalizeCountry(String country) {
+        return country.trim().toLowerCase(Locale.ROOT);
+    }
+}
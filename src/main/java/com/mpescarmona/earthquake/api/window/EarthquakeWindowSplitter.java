@@ -0,0 +1,160 @@
+package com.mpescarmona.earthquake.api.window;
+
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeCountResponse;
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper;
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard;
+import com.mpescarmona.earthquake.api.resilience.UpstreamUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Splits wide date ranges in time windows small enough for one call to the EarthQuake USGS service, sized from
+ * the number of earthquakes the count method reports for them, and reads the windows in parallel.
+ */
+@Slf4j
+@Component
+public class EarthquakeWindowSplitter {
+    private final RestTemplate restTemplate;
+    private final EarthquakeUrlHelper earthquakeUrlHelper;
+    private final EarthquakeUpstreamGuard earthquakeUpstreamGuard;
+    private final TaskExecutor earthquakeWindowExecutor;
+    private final int maxFeatures;
+    private final long minWindowMs;
+    private final int parallelism;
+
+    public EarthquakeWindowSplitter(RestTemplate restTemplate, EarthquakeUrlHelper earthquakeUrlHelper,
+                                    EarthquakeUpstreamGuard earthquakeUpstreamGuard,
+                                    @Qualifier("earthquakeWindowExecutor") TaskExecutor earthquakeWindowExecutor,
+                                    @Value("${earthquake.window.maxFeatures}") int maxFeatures,
+                                    @Value("${earthquake.window.minWindowMs}") long minWindowMs,
+                                    @Value("${earthquake.window.parallelism}") int parallelism) {
+        this.restTemplate = restTemplate;
+        this.earthquakeUrlHelper = earthquakeUrlHelper;
+        this.earthquakeUpstreamGuard = earthquakeUpstreamGuard;
+        this.earthquakeWindowExecutor = earthquakeWindowExecutor;
+        this.maxFeatures = maxFeatures;
+        this.minWindowMs = minWindowMs;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Splits a time range in windows of at most maxFeatures earthquakes. Windows over the limit are divided
+     * evenly and counted again, all the windows of a level at the same time, until they fit or reach the
+     * minimum window length. Ranges shorter than two minimum windows are not counted.
+     *
+     * @param startMillis The start of the range, in epoch millis
+     * @param endMillis   The end of the range, in epoch millis
+     * @return The windows covering the range, newest first like the earthquakes of the service
+     */
+    public List<TimeWindow> split(long startMillis, long endMillis) {
+        List<TimeWindow> windows = new ArrayList<>();
+        List<TimeWindow> windowsToCount = new ArrayList<>();
+        TimeWindow range = new TimeWindow(startMillis, endMillis);
+        if (isDivisible(range)) {
+            windowsToCount.add(range);
+        } else {
+            windows.add(range);
+        }
+
+        while (!windowsToCount.isEmpty()) {
+            List<CompletableFuture<Integer>> counts = windowsToCount.stream()
+                    .map(window -> CompletableFuture.supplyAsync(() -> count(window), earthquakeWindowExecutor))
+                    .collect(Collectors.toList());
+            List<TimeWindow> windowsToDivide = new ArrayList<>();
+            for (int i = 0; i < windowsToCount.size(); i++) {
+                TimeWindow window = windowsToCount.get(i);
+                Integer count = counts.get(i).join();
+                if (count == null || count <= maxFeatures) {
+                    windows.add(window);
+                } else {
+                    windowsToDivide.addAll(divide(window, count));
+                }
+            }
+            windowsToCount = new ArrayList<>();
+            for (TimeWindow window : windowsToDivide) {
+                if (isDivisible(window)) {
+                    windowsToCount.add(window);
+                } else {
+                    windows.add(window);
+                }
+            }
+        }
+
+        windows.sort(Comparator.comparingLong(TimeWindow::getStartMillis).reversed());
+        log.info("action=split, startMillis={}, endMillis={}, windows={}", startMillis, endMillis, windows.size());
+        return windows;
+    }
+
+    /**
+     * Reads the windows in parallel, at most parallelism at a time, handing their results to the consumer in
+     * the order of the windows. Only the windows being read or waiting for the consumer are held in memory.
+     *
+     * @param windows        The windows to read
+     * @param windowReader   Reads one window
+     * @param resultConsumer The consumer of the results of the windows
+     * @param <T>            The type of the result of a window
+     */
+    public <T> void readInOrder(List<TimeWindow> windows, Function<TimeWindow, T> windowReader, Consumer<T> resultConsumer) {
+        Deque<CompletableFuture<T>> inFlight = new ArrayDeque<>();
+        try {
+            for (TimeWindow window : windows) {
+                if (inFlight.size() >= parallelism) {
+                    resultConsumer.accept(inFlight.poll().join());
+                }
+                inFlight.add(CompletableFuture.supplyAsync(() -> windowReader.apply(window), earthquakeWindowExecutor));
+            }
+            while (!inFlight.isEmpty()) {
+                resultConsumer.accept(inFlight.poll().join());
+            }
+        } catch (CompletionException ex) {
+            inFlight.forEach(future -> future.cancel(true));
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+    }
+
+    private boolean isDivisible(TimeWindow window) {
+        return window.getEndMillis() - window.getStartMillis() >= 2 * minWindowMs;
+    }
+
+    // even parts of the window, so each one holds about maxFeatures earthquakes and lasts at least minWindowMs
+    private List<TimeWindow> divide(TimeWindow window, int count) {
+        long length = window.getEndMillis() - window.getStartMillis() + 1;
+        long parts = Math.min((count + maxFeatures - 1) / maxFeatures, length / minWindowMs);
+        long partLength = (length + parts - 1) / parts;
+        List<TimeWindow> subWindows = new ArrayList<>();
+        for (long start = window.getStartMillis(); start <= window.getEndMillis(); start += partLength) {
+            subWindows.add(new TimeWindow(start, Math.min(window.getEndMillis(), start + partLength - 1)));
+        }
+        return subWindows;
+    }
+
+    private Integer count(TimeWindow window) {
+        String url = earthquakeUrlHelper.buildEarthquakeCountUrlByDates(window.getStartTime(), window.getEndTime());
+        try {
+            EarthquakeCountResponse response = earthquakeUpstreamGuard.execute(
+                    () -> restTemplate.getForObject(url, EarthquakeCountResponse.class));
+            log.info("action=count, url={}, result={}", url, response);
+            return response != null ? response.getCount() : null;
+        } catch (RestClientException | UpstreamUnavailableException ex) {
+            // the window is read whole, as it was before splitting
+            log.error("action=count, url={}, error={}", url, ex.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.mpescarmona.earthquake.api.window;
+
+import com.mpescarmona.earthquake.api.util.EarthquakeTimeUtil;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Time range queried in one call to the EarthQuake USGS service. Both ends are included, as the service does.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeWindow {
+    long startMillis;
+    long endMillis;
+
+    public String getStartTime() {
+        return EarthquakeTimeUtil.formatUtc(startMillis);
+    }
+
+    public String getEndTime() {
+        return EarthquakeTimeUtil.formatUtc(endMillis);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mpescarmona.earthquake.api.batch
+
+import com.mpescarmona.earthquake.api.domain.BatchQueryType
+import com.mpescarmona.earthquake.api.dto.BatchQueryRequestDto
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer
+import org.springframework.core.io.ClassPathResource
+import spock.lang.Specification
+
+class EarthquakeBatchPlannerTest extends Specification {
+    EarthquakeBatchPlanner planner = new EarthquakeBatchPlanner(
+            new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0))
+
+    def "overlapping and touching date ranges are read in one fetch"() {
+        when:
+        List<BatchFetch> fetches = planner.plan([
+                dateRange("2019-11-20", "2019-11-22"),
+                dateRange("2019-11-01", "2019-11-03"),
+                dateRange("2019-11-21", "2019-11-25"),
+                dateRange("2019-11-25", "2019-11-26")
+        ])
+
+        then:
+        fetches*.window*.startTime == ["2019-11-01T00:00:00.000", "2019-11-20T00:00:00.000"]
+        fetches*.window*.endTime == ["2019-11-03T00:00:00.000", "2019-11-26T00:00:00.000"]
+        fetches*.queries == [[1], [0, 2, 3]]
+    }
+
+    def "overlapping magnitude ranges share a fetch, unbounded ends stay unbounded"() {
+        when:
+        List<BatchFetch> fetches = planner.plan([
+                magnitudeRange("6.0", "7.0"),
+                magnitudeRange("2.0", "3.0"),
+                magnitudeRange("6.5", null),
+                magnitudeRange(null, "2.5")
+        ])
+
+        then:
+        fetches.collect { [it.minMagnitude, it.maxMagnitude, it.queries] } == [
+                [null, 3.0d, [1, 3]],
+                [6.0d, null, [0, 2]]
+        ]
+    }
+
+    def "countries with overlapping areas share a fetch, unknown ones the whole world"() {
+        when:
+        List<BatchFetch> fetches = planner.plan([
+                country("Chile"),
+                country("Japan"),
+                country("Atlantis"),
+                country("Argentina"),
+                country("Lemuria"),
+                country("chile")
+        ])
+
+        then:
+        fetches.size() == 3
+        fetches.find { it.queries == [2, 4] }.boundingBox == null
+        fetches.find { it.queries == [2, 4] }.countries == ["Atlantis", "Lemuria"]
+        fetches.find { it.queries == [0, 3, 5] }.countries*.toLowerCase().toSet() == ["chile", "argentina"].toSet()
+        fetches.find { it.queries == [1] }.boundingBox != null
+    }
+
+    def "queries that can not be parsed are left out of every fetch"() {
+        when:
+        List<BatchFetch> fetches = planner.plan([
+                dateRange("2019-11-22", "2019-11-20"),
+                magnitudeRange("big", null),
+                magnitudeRange("7.0", "6.0"),
+                country(" "),
+                BatchQueryRequestDto.builder().id("untyped").build(),
+                magnitudeRange("5.0", null)
+        ])
+
+        then:
+        fetches*.queries == [[5]]
+    }
+
+    private static BatchQueryRequestDto dateRange(String startTime, String endTime) {
+        return BatchQueryRequestDto.builder().type(BatchQueryType.DATE_RANGE).startTime(startTime).endTime(endTime).build()
+    }
+
+    private static BatchQueryRequestDto magnitudeRange(String minMagnitude, String maxMagnitude) {
+        return BatchQueryRequestDto.builder().type(BatchQueryType.MAGNITUDE_RANGE)
+                .minMagnitude(minMagnitude).maxMagnitude(maxMagnitude).build()
+    }
+
+    private static BatchQueryRequestDto country(String country) {
+        return BatchQueryRequestDto.builder().type(BatchQueryType.COUNTRY).country(country).build()
+    }
+}
@@ -0,0 +1,130 @@
+package com.mpescarmona.earthquake.api.cache
+
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Metadata
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class EarthquakeResponseCacheTest extends Specification {
+    EarthquakeResponseCache earthquakeResponseCache = new EarthquakeResponseCache(60000, 1000)
+
+    def "get calls the loader once and then serves from the cache"() {
+        given:
+        AtomicInteger calls = new AtomicInteger()
+
+        when:
+        3.times {
+            earthquakeResponseCache.get("http://fakequakes/query", {
+                calls.incrementAndGet()
+                buildResponse(2)
+            })
+        }
+
+        then:
+        calls.get() == 1
+        earthquakeResponseCache.statistics.misses == 1
+        earthquakeResponseCache.statistics.hits == 2
+    }
+
+    def "get hands out copies that callers can change"() {
+        given:
+        ResponseEntity<EarthquakeResponse> first = earthquakeResponseCache.get("http://fakequakes/query", { buildResponse(2) })
+
+        when:
+        first.body.features.clear()
+        first.body.metadata.count = 0
+        ResponseEntity<EarthquakeResponse> second = earthquakeResponseCache.get("http://fakequakes/query", { buildResponse(5) })
+
+        then:
+        second.body.features.size() == 2
+        second.body.metadata.count == 2
+    }
+
+    def "get does not cache unsuccessful responses"() {
+        given:
+        AtomicInteger calls = new AtomicInteger()
+
+        when:
+        2.times {
+            earthquakeResponseCache.get("http://fakequakes/query", {
+                calls.incrementAndGet()
+                new ResponseEntity<EarthquakeResponse>(HttpStatus.NO_CONTENT)
+            })
+        }
+
+        then:
+        calls.get() == 2
+    }
+
+    def "concurrent gets of the same url share a single call"() {
+        given:
+        def executor = Executors.newFixedThreadPool(4)
+        CountDownLatch loading = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        AtomicInteger calls = new AtomicInteger()
+
+        when:
+        def leader = executor.submit({
+            earthquakeResponseCache.get("http://fakequakes/query", {
+                calls.incrementAndGet()
+                loading.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                buildResponse(1)
+            })
+        } as Callable)
+        loading.await(5, TimeUnit.SECONDS)
+        def followers = (1..3).collect {
+            executor.submit({ earthquakeResponseCache.get("http://fakequakes/query", { calls.incrementAndGet(); buildResponse(1) }) } as Callable)
+        }
+        while (earthquakeResponseCache.statistics.coalesced < 3) {
+            Thread.sleep(10)
+        }
+        release.countDown()
+
+        then:
+        leader.get().body.features.size() == 1
+        followers.every { it.get().body.features.size() == 1 }
+        calls.get() == 1
+        earthquakeResponseCache.statistics.coalesced == 3
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "getOrRevalidate hands expired responses to the loader and keeps them when they did not change"() {
+        given:
+        EarthquakeResponseCache expiringCache = new EarthquakeResponseCache(0, 60000, 1000)
+        ResponseEntity<EarthquakeResponse> original = buildResponse(2)
+        List<ResponseEntity<EarthquakeResponse>> staleResponses = []
+
+        when:
+        2.times {
+            expiringCache.getOrRevalidate("http://fakequakes/query", { stale ->
+                staleResponses.add(stale)
+                stale != null ? stale : original
+            })
+        }
+
+        then:
+        staleResponses == [null, original]
+        expiringCache.statistics.misses == 2
+        expiringCache.statistics.revalidated == 1
+    }
+
+    private static ResponseEntity<EarthquakeResponse> buildResponse(int featureCount) {
+        List<Feature> features = (1..featureCount).collect { Feature.builder().id("fake" + it).build() }
+        return new ResponseEntity<>(EarthquakeResponse.builder()
+                .type("Fake")
+                .metadata(Metadata.builder().count(featureCount).build())
+                .features(features)
+                .build(), HttpStatus.OK)
+    }
+}
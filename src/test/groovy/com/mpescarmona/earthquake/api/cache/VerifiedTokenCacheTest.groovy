@@ -0,0 +1,62 @@
+package com.mpescarmona.earthquake.api.cache
+
+import com.mpescarmona.earthquake.api.service.impl.JwtUserDetailsService
+import com.mpescarmona.earthquake.api.util.JwtTokenUtil
+import org.springframework.security.core.userdetails.User
+import org.springframework.security.core.userdetails.UserDetails
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+
+class VerifiedTokenCacheTest extends Specification {
+    JwtTokenUtil jwtTokenUtil = Spy(JwtTokenUtil)
+    JwtUserDetailsService jwtUserDetailsService = Mock(JwtUserDetailsService)
+    UserDetails userDetails = new User("testuser", "password", [])
+    String token
+
+    void setup() {
+        ReflectionTestUtils.setField(jwtTokenUtil, "secret", "fakesecret")
+        token = jwtTokenUtil.generateToken(userDetails)
+    }
+
+    def "a token is verified once and then looked up"() {
+        given:
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(jwtTokenUtil, jwtUserDetailsService, 100, 60000)
+
+        when:
+        List<UserDetails> results = (1..3).collect { verifiedTokenCache.getUserDetails(token) }
+
+        then:
+        1 * jwtTokenUtil.getAllClaimsFromToken(token)
+        1 * jwtUserDetailsService.loadUserByUsername("testuser") >> userDetails
+        results == [userDetails] * 3
+    }
+
+    def "tokens failing the verification are not cached"() {
+        given:
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(jwtTokenUtil, jwtUserDetailsService, 100, 60000)
+        // the last characters of the signature may carry padding bits, so one in the middle of it is changed
+        int position = token.length() - 10
+        String tamperedToken = token.substring(0, position) + (token.charAt(position) == 'a' ? 'b' : 'a') +
+                token.substring(position + 1)
+
+        when:
+        List<UserDetails> results = (1..2).collect { verifiedTokenCache.getUserDetails(tamperedToken) }
+
+        then:
+        2 * jwtTokenUtil.getAllClaimsFromToken(tamperedToken)
+        0 * jwtUserDetailsService.loadUserByUsername(_)
+        results == [null, null]
+    }
+
+    def "tokens are verified again after the ttl"() {
+        given:
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(jwtTokenUtil, jwtUserDetailsService, 100, 0)
+
+        when:
+        2.times { verifiedTokenCache.getUserDetails(token) }
+
+        then:
+        2 * jwtTokenUtil.getAllClaimsFromToken(token)
+        2 * jwtUserDetailsService.loadUserByUsername("testuser") >> userDetails
+    }
+}
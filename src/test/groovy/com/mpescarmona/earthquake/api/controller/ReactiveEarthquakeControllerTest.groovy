@@ -0,0 +1,132 @@
+package com.mpescarmona.earthquake.api.controller
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.cache.VerifiedTokenCache
+import com.mpescarmona.earthquake.api.configuration.JwtAuthenticationEntryPoint
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Metadata
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import com.mpescarmona.earthquake.api.dto.CountryRequestDto
+import com.mpescarmona.earthquake.api.helper.EarthquakeHttpCacheHelper
+import com.mpescarmona.earthquake.api.service.IReactiveEarthquakeService
+import com.mpescarmona.earthquake.api.service.impl.JwtUserDetailsService
+import com.mpescarmona.earthquake.api.util.JwtTokenUtil
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest
+import org.springframework.boot.test.context.TestConfiguration
+import org.springframework.context.annotation.Bean
+import org.springframework.http.MediaType
+import org.springframework.security.test.context.support.WithMockUser
+import org.springframework.test.web.servlet.MockMvc
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.mock.DetachedMockFactory
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+
+@WebMvcTest(controllers = [ReactiveEarthquakeController], properties = "earthquake.service.mode=reactive")
+class ReactiveEarthquakeControllerTest extends Specification {
+
+    @Autowired
+    protected MockMvc mockMvc
+
+    @Autowired
+    IReactiveEarthquakeService earthquakeService
+
+    EarthquakeResponse earthQuakeResponseCountry = EarthquakeResponse.builder()
+            .type("Fake")
+            .metadata(Metadata.builder().count(1).build())
+            .features([Feature.builder().properties(Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build()).build()])
+            .build()
+
+    @WithMockUser(roles = ['FULL_ACCESS'])
+    def "GetEarthquakesByCountry with a JSON body"() {
+        given:
+        earthquakeService.getEarthquakesByCountry('Chile') >> Mono.just(earthQuakeResponseCountry)
+
+        when:
+        def started = mockMvc.perform(get('/country')
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(new ObjectMapper().writeValueAsString(CountryRequestDto.builder().country('Chile').build()))
+        ).andExpect(request().asyncStarted()).andReturn()
+        def results = mockMvc.perform(asyncDispatch(started))
+
+        then:
+        results.andExpect(status().isOk())
+        results.andExpect(header().doesNotExist("ETag"))
+        results.andExpect(jsonPath('$.features.length()').value(1))
+    }
+
+    @WithMockUser(roles = ['FULL_ACCESS'])
+    def "GetEarthquakesByCountry with query parameters is cacheable"() {
+        given:
+        earthquakeService.getEarthquakesByCountry('Chile') >> Mono.just(earthQuakeResponseCountry)
+
+        when:
+        def started = mockMvc.perform(get('/country').param("country", 'Chile'))
+                .andExpect(request().asyncStarted()).andReturn()
+        def results = mockMvc.perform(asyncDispatch(started))
+
+        then:
+        results.andExpect(status().isOk())
+        results.andExpect(header().exists("ETag"))
+        results.andExpect(header().string("Cache-Control", "max-age=60, private"))
+        results.andExpect(jsonPath('$.features.length()').value(1))
+    }
+
+    @WithMockUser(roles = ['FULL_ACCESS'])
+    def "GetEarthquakesByMagnitudeRange answers 502 when the earthquakes can not be retrieved"() {
+        given:
+        earthquakeService.getEarthquakesByMagnitudeRange('6.1', '7.4') >> Mono.empty()
+
+        when:
+        def started = mockMvc.perform(get('/magnituderange').param("minMagnitude", '6.1').param("maxMagnitude", '7.4'))
+                .andExpect(request().asyncStarted()).andReturn()
+        def results = mockMvc.perform(asyncDispatch(started))
+
+        then:
+        results.andExpect(status().isBadGateway())
+        results.andExpect(header().string("Cache-Control", "no-store"))
+    }
+
+    @TestConfiguration
+    static class StubConfig {
+        DetachedMockFactory detachedMockFactory = new DetachedMockFactory()
+
+        @Bean
+        IReactiveEarthquakeService earthquakeService() {
+            return detachedMockFactory.Stub(IReactiveEarthquakeService)
+        }
+
+        @Bean
+        EarthquakeHttpCacheHelper earthquakeHttpCacheHelper(ObjectMapper objectMapper) {
+            return new EarthquakeHttpCacheHelper(objectMapper, 60)
+        }
+
+        @Bean
+        JwtUserDetailsService jwtUserDetailsService() {
+            return detachedMockFactory.Stub(JwtUserDetailsService)
+        }
+
+        @Bean
+        JwtTokenUtil jwtTokenUtil() {
+            return detachedMockFactory.Stub(JwtTokenUtil)
+        }
+
+        @Bean
+        VerifiedTokenCache verifiedTokenCache() {
+            return detachedMockFactory.Stub(VerifiedTokenCache)
+        }
+
+        @Bean
+        JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint() {
+            return detachedMockFactory.Stub(JwtAuthenticationEntryPoint)
+        }
+    }
+}
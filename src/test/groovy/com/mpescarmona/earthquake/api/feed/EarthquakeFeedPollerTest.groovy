@@ -0,0 +1,87 @@
+package com.mpescarmona.earthquake.api.feed
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Metadata
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.client.MockClientHttpResponse
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+class EarthquakeFeedPollerTest extends Specification {
+    static ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+
+    RestTemplate restTemplate = Mock()
+    EarthquakeUrlHelper earthquakeUrlHelper = Mock()
+    EarthquakeFeed earthquakeFeed = Mock()
+    EarthquakeMetrics earthquakeMetrics = new EarthquakeMetrics(new SimpleMeterRegistry())
+    EarthquakeFeedPoller earthquakeFeedPoller = new EarthquakeFeedPoller(restTemplate, earthquakeUrlHelper,
+            new GeoJsonStreamingParser(objectMapper),
+            new EarthquakeUpstreamGuard(earthquakeMetrics, 50, 20, 10, 10000, 60000, 20, 500),
+            earthquakeMetrics, earthquakeFeed, 86400000, 60000, 20000)
+
+    def "polls nothing while nobody is subscribed"() {
+        given:
+        earthquakeFeed.getSubscriberCount() >> 0
+
+        when:
+        earthquakeFeedPoller.poll()
+
+        then:
+        0 * restTemplate._
+        0 * earthquakeFeed.publish(_)
+    }
+
+    def "publishes every version of an earthquake once, whatever the subscribers"() {
+        given:
+        earthquakeFeed.getSubscriberCount() >> 1000
+        earthquakeUrlHelper.buildEarthquakeUrlByUpdatedAfter(_, _) >> "updated"
+        long updated = System.currentTimeMillis()
+        EarthquakeResponse firstPoll = buildEarthquakeResponse([buildFeature("a", updated), buildFeature("b", updated)])
+        EarthquakeResponse secondPoll = buildEarthquakeResponse([buildFeature("a", updated), buildFeature("b", updated + 1),
+                                                                 buildFeature("c", updated)])
+        List<String> published = []
+        earthquakeFeed.publish(_) >> { args -> published << args[0].id }
+
+        when:
+        earthquakeFeedPoller.poll()
+        earthquakeFeedPoller.poll()
+
+        then:
+        2 * restTemplate.execute("updated", HttpMethod.GET, _, _) >> { args -> extractData(args, firstPoll) } >>
+                { args -> extractData(args, secondPoll) }
+        published == ["a", "b", "b", "c"]
+    }
+
+    private static EarthquakeResponse extractData(args, EarthquakeResponse response) {
+        return args[3].extractData(new MockClientHttpResponse(objectMapper.writeValueAsBytes(response), HttpStatus.OK))
+    }
+
+    private static EarthquakeResponse buildEarthquakeResponse(List<Feature> features) {
+        return EarthquakeResponse.builder()
+                .type("FeatureCollection")
+                .metadata(Metadata.builder().count(features.size()).build())
+                .features(features)
+                .build()
+    }
+
+    private static Feature buildFeature(String id, Long updated) {
+        return Feature.builder()
+                .id(id)
+                .properties(Properties.builder()
+                        .place("83km W of Copiapo, Chile")
+                        .time(System.currentTimeMillis())
+                        .updated(updated)
+                        .build())
+                .build()
+    }
+}
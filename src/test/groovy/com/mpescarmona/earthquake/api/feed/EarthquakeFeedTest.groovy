@@ -0,0 +1,124 @@
+package com.mpescarmona.earthquake.api.feed
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.FeatureFilter
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.core.task.SyncTaskExecutor
+import org.springframework.core.task.TaskExecutor
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import spock.lang.Specification
+
+class EarthquakeFeedTest extends Specification {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    EarthquakeMetrics earthquakeMetrics = new EarthquakeMetrics(meterRegistry)
+
+    def "sends every subscriber the earthquakes matching its filter"() {
+        given:
+        EarthquakeFeed earthquakeFeed = buildFeed(new SyncTaskExecutor(), 16, 10)
+        RecordingEmitter chile = new RecordingEmitter()
+        RecordingEmitter strong = new RecordingEmitter()
+        earthquakeFeed.subscribe(FeatureFilter.builder().countries(["Chile"]).build(), chile)
+        earthquakeFeed.subscribe(FeatureFilter.builder().minMagnitude(6.0).build(), strong)
+
+        when:
+        earthquakeFeed.publish(buildFeature("a", "83km W of Copiapo, Chile", 7.4, null))
+        earthquakeFeed.publish(buildFeature("b", "62km SE of Molibagu, Indonesia", 6.1, null))
+        earthquakeFeed.publish(buildFeature("c", "12km N of Arica, Chile", 4.2, "deleted"))
+
+        then:
+        chile.events == [":heartbeat", "id:a:1\nevent:earthquake", "id:c:1\nevent:deleted"]
+        strong.events == [":heartbeat", "id:a:1\nevent:earthquake", "id:b:1\nevent:earthquake"]
+        earthquakeFeed.subscriberCount == 2
+    }
+
+    def "drops a subscriber whose buffer fills"() {
+        given:
+        List<Runnable> drains = []
+        EarthquakeFeed earthquakeFeed = buildFeed({ Runnable task -> drains << task } as TaskExecutor, 2, 10)
+        RecordingEmitter emitter = new RecordingEmitter()
+        earthquakeFeed.subscribe(FeatureFilter.NONE, emitter)
+
+        when:
+        earthquakeFeed.publish(buildFeature("a", "83km W of Copiapo, Chile", 7.4, null))
+        earthquakeFeed.publish(buildFeature("b", "83km W of Copiapo, Chile", 5.0, null))
+
+        then:
+        earthquakeFeed.subscriberCount == 0
+        meterRegistry.get("earthquake.feed.dropped").tag("reason", EarthquakeFeed.DROPPED_FULL).counter().count() == 1
+
+        when:
+        drains.each { it.run() }
+
+        then:
+        drains.size() == 1
+        emitter.events.isEmpty()
+        emitter.completed
+    }
+
+    def "drops a subscriber whose connection failed"() {
+        given:
+        EarthquakeFeed earthquakeFeed = buildFeed(new SyncTaskExecutor(), 16, 10)
+        RecordingEmitter emitter = new RecordingEmitter()
+        earthquakeFeed.subscribe(FeatureFilter.NONE, emitter)
+        emitter.failing = true
+
+        when:
+        earthquakeFeed.heartbeat()
+
+        then:
+        earthquakeFeed.subscriberCount == 0
+        meterRegistry.get("earthquake.feed.dropped").tag("reason", EarthquakeFeed.DROPPED_ERROR).counter().count() == 1
+    }
+
+    def "refuses the subscribers over the maximum and parses their filters"() {
+        given:
+        EarthquakeFeed earthquakeFeed = buildFeed(new SyncTaskExecutor(), 16, 1)
+
+        expect:
+        earthquakeFeed.subscribe(FeatureFilter.NONE, new RecordingEmitter()).isPresent()
+        !earthquakeFeed.subscribe(FeatureFilter.NONE, new RecordingEmitter()).isPresent()
+        earthquakeFeed.buildFilter("4.5", null, " Chile ").get() == FeatureFilter.builder().minMagnitude(4.5).countries(["Chile"]).build()
+        !earthquakeFeed.buildFilter("strong", null, null).isPresent()
+        !earthquakeFeed.buildFilter("6", "5", null).isPresent()
+    }
+
+    private EarthquakeFeed buildFeed(TaskExecutor executor, int bufferSize, int maxSubscribers) {
+        return new EarthquakeFeed(new ObjectMapper(), executor, earthquakeMetrics, bufferSize, maxSubscribers, 60000)
+    }
+
+    private static Feature buildFeature(String id, String place, Double mag, String status) {
+        return Feature.builder()
+                .id(id)
+                .properties(Properties.builder()
+                        .place(place)
+                        .mag(mag)
+                        .updated(1L)
+                        .status(status)
+                        .build())
+                .build()
+    }
+
+    // keeps the id and name of the events, or the comment of a heartbeat
+    static class RecordingEmitter extends SseEmitter {
+        List<String> events = []
+        boolean failing
+        boolean completed
+
+        @Override
+        void send(SseEmitter.SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe")
+            }
+            String text = builder.build()*.data.join("")
+            events << text.readLines().findAll { !it.startsWith("data:") && !it.isEmpty() }.join("\n")
+        }
+
+        @Override
+        void complete() {
+            completed = true
+        }
+    }
+}
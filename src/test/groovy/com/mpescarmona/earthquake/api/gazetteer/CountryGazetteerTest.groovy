@@ -0,0 +1,50 @@
+package com.mpescarmona.earthquake.api.gazetteer
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox
+import org.springframework.core.io.ByteArrayResource
+import org.springframework.core.io.ClassPathResource
+import spock.lang.Specification
+
+class CountryGazetteerTest extends Specification {
+    CountryGazetteer gazetteer = new CountryGazetteer(new ByteArrayResource((
+            "name,minLatitude,maxLatitude,minLongitude,maxLongitude\n" +
+            "Chile,-56.0,-17.5,-75.7,-66.4\n" +
+            "Guinea,7.2,12.7,-15.1,-7.6\n" +
+            "Papua New Guinea,-11.7,-1.0,140.8,159.5\n" +
+            "Fiji,-21.0,-12.4,176.0,182.0\n" +
+            "Russia,41.2,81.9,19.6,191.0\n" +
+            "Alaska,51.2,71.5,-188.0,-129.9\n").bytes), 1.0)
+
+    def "finds the padded bounding box of a country ignoring case"() {
+        expect:
+        gazetteer.findBoundingBox("chile ").get() == new BoundingBox(-57.0, -16.5, -76.7, -65.4)
+    }
+
+    def "covers every name containing the country"() {
+        expect:
+        gazetteer.findBoundingBox("Guinea").get() == new BoundingBox(-12.7, 13.7, -16.1, 160.5)
+    }
+
+    def "joins the bounding boxes of several countries"() {
+        expect:
+        gazetteer.findBoundingBox(["Chile", "Fiji"]).get() == new BoundingBox(-57.0, -11.4, -76.7, 183.0)
+    }
+
+    def "does not narrow the query for unknown countries or boxes around the globe"() {
+        expect:
+        !gazetteer.findBoundingBox("Atlantis").isPresent()
+        !gazetteer.findBoundingBox(["Chile", "Atlantis"]).isPresent()
+        !gazetteer.findBoundingBox((String) null).isPresent()
+        !gazetteer.findBoundingBox(["Russia", "Alaska"]).isPresent()
+    }
+
+    def "loads the bundled gazetteer"() {
+        when:
+        CountryGazetteer bundled = new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0)
+
+        then:
+        bundled.findBoundingBox("Indonesia").isPresent()
+        bundled.findBoundingBox("Japan").isPresent()
+        bundled.findBoundingBox("Alaska").isPresent()
+    }
+}
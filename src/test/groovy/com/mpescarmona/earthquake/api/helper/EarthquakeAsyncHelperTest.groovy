@@ -0,0 +1,71 @@
+package com.mpescarmona.earthquake.api.helper
+
+import com.mpescarmona.earthquake.api.resilience.UpstreamUnavailableException
+import org.springframework.core.task.SyncTaskExecutor
+import org.springframework.core.task.TaskExecutor
+import org.springframework.core.task.TaskRejectedException
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.web.context.request.async.DeferredResult
+import spock.lang.Specification
+
+import java.util.function.Supplier
+
+class EarthquakeAsyncHelperTest extends Specification {
+    Supplier<ResponseEntity<?>> query = Mock()
+
+    def "the response of the query answers the request"() {
+        given:
+        EarthquakeAsyncHelper helper = new EarthquakeAsyncHelper(new SyncTaskExecutor(), 60000)
+
+        when:
+        DeferredResult<ResponseEntity<?>> result = helper.supplyAsync("getEarthquakesByCountry", query)
+
+        then:
+        1 * query.get() >> ResponseEntity.ok("earthquakes")
+        result.result == ResponseEntity.ok("earthquakes")
+    }
+
+    def "the exceptions of the query are left to the exception handlers"() {
+        given:
+        EarthquakeAsyncHelper helper = new EarthquakeAsyncHelper(new SyncTaskExecutor(), 60000)
+        UpstreamUnavailableException unavailable = new UpstreamUnavailableException("breaker open", 13000)
+
+        when:
+        DeferredResult<ResponseEntity<?>> result = helper.supplyAsync("getEarthquakesByCountry", query)
+
+        then:
+        1 * query.get() >> { throw unavailable }
+        result.result.is(unavailable)
+    }
+
+    def "queries rejected by the saturated executor answer 503"() {
+        given:
+        TaskExecutor saturatedExecutor = { task -> throw new TaskRejectedException("queue full") } as TaskExecutor
+        EarthquakeAsyncHelper helper = new EarthquakeAsyncHelper(saturatedExecutor, 60000)
+
+        when:
+        DeferredResult<ResponseEntity<?>> result = helper.supplyAsync("getEarthquakesByCountry", query)
+
+        then:
+        0 * query.get()
+        ((ResponseEntity) result.result).statusCode == HttpStatus.SERVICE_UNAVAILABLE
+        ((ResponseEntity) result.result).headers.getFirst("Retry-After") == "1"
+    }
+
+    def "requests timing out answer 504, and their queries still queued are not run"() {
+        given:
+        List<Runnable> queued = []
+        TaskExecutor queueingExecutor = { task -> queued << task } as TaskExecutor
+        EarthquakeAsyncHelper helper = new EarthquakeAsyncHelper(queueingExecutor, 10)
+
+        when:
+        DeferredResult<ResponseEntity<?>> result = helper.supplyAsync("getEarthquakesByCountry", query)
+        result.interceptor.handleTimeout(null, result)
+        queued.each { it.run() }
+
+        then:
+        0 * query.get()
+        ((ResponseEntity) result.result).statusCode == HttpStatus.GATEWAY_TIMEOUT
+    }
+}
@@ -1,5 +1,6 @@
 package com.mpescarmona.earthquake.api.helper
 
+import com.mpescarmona.earthquake.api.domain.BoundingBox
 import spock.lang.Specification
 import spock.lang.Unroll
 
@@ -8,11 +9,24 @@ class EarthquakeUrlHelperTest extends Specification {
 
     void setup() {
         earthquakeUrlHelper.setEarthquakeBaseUrl("http://fakequakes/query")
+        earthquakeUrlHelper.setEarthquakeCountUrl("http://fakequakes/count")
         earthquakeUrlHelper.setEarthquakeFormat("format=any")
         earthquakeUrlHelper.setSearchByDatesStartTime("startTime")
         earthquakeUrlHelper.setSearchByDatesEndTime("endTime")
         earthquakeUrlHelper.setSearchByMagnitudesMinMagnitude("minMagnitude")
         earthquakeUrlHelper.setSearchByMagnitudesMaxMagnitude("maxMagnitude")
+        earthquakeUrlHelper.setSearchByBoundingBoxMinLatitude("minLatitude")
+        earthquakeUrlHelper.setSearchByBoundingBoxMaxLatitude("maxLatitude")
+        earthquakeUrlHelper.setSearchByBoundingBoxMinLongitude("minLongitude")
+        earthquakeUrlHelper.setSearchByBoundingBoxMaxLongitude("maxLongitude")
+        earthquakeUrlHelper.setSearchByCircleLatitude("latitude")
+        earthquakeUrlHelper.setSearchByCircleLongitude("longitude")
+        earthquakeUrlHelper.setSearchByCircleMaxRadiusKm("maxradiuskm")
+        earthquakeUrlHelper.setSearchByPageLimit("limit")
+        earthquakeUrlHelper.setSearchByPageOffset("offset")
+        earthquakeUrlHelper.setSearchByPageOrderBy("orderby")
+        earthquakeUrlHelper.setSearchByUpdatedAfter("updatedafter")
+        earthquakeUrlHelper.setSearchIncludeDeleted("includedeleted=true")
     }
 
     def "buildEarthQuakeBaseUrlAndFormat"() {
@@ -51,4 +65,51 @@ class EarthquakeUrlHelperTest extends Specification {
         null         | "7.4"        | "http://fakequakes/query?format=any&maxMagnitude=7.4"
         null         | null         | "http://fakequakes/query?format=any"
     }
+
+    def "BuildEarthquakeUrlByBoundingBox"() {
+        given:
+        BoundingBox boundingBox = new BoundingBox(-61.0, -12.5, -80.7, -61.4)
+
+        expect:
+        earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox(boundingBox) ==
+                "http://fakequakes/query?format=any&minLatitude=-61.0&maxLatitude=-12.5&minLongitude=-80.7&maxLongitude=-61.4"
+    }
+
+    @Unroll
+    def "BuildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox(#boundingBox) == #expectedUrl"(BoundingBox boundingBox, String expectedUrl) {
+        expect:
+        earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndBoundingBox("2019-11-20", "2019-11-21", "4.1", null, boundingBox) == expectedUrl
+
+        where:
+        boundingBox                         | expectedUrl
+        new BoundingBox(-0.5, 10, 170, 190)    | "http://fakequakes/query?format=any&startTime=2019-11-20&endTime=2019-11-21&minMagnitude=4.1&minLatitude=-0.5&maxLatitude=10.0&minLongitude=170.0&maxLongitude=190.0"
+        null                                | "http://fakequakes/query?format=any&startTime=2019-11-20&endTime=2019-11-21&minMagnitude=4.1"
+    }
+
+    def "buildPagedUrl counts the offset from 1"() {
+        expect:
+        earthquakeUrlHelper.buildPagedUrl("http://fakequakes/query?format=any", 50, 100, "magnitude") ==
+                "http://fakequakes/query?format=any&limit=50&offset=101&orderby=magnitude"
+        earthquakeUrlHelper.buildPagedUrl("http://fakequakes/query", 50, 0, null) ==
+                "http://fakequakes/query?limit=50&offset=1"
+    }
+
+    def "buildEarthquakeCountUrlByDates uses the count method"() {
+        expect:
+        earthquakeUrlHelper.buildEarthquakeCountUrlByDates("2019-01-01", "2019-12-31T23:59:59.999") ==
+                "http://fakequakes/count?format=any&startTime=2019-01-01&endTime=2019-12-31T23:59:59.999"
+    }
+
+    def "buildEarthquakeUrlByUpdatedAfter includes the deleted earthquakes"() {
+        expect:
+        earthquakeUrlHelper.buildEarthquakeUrlByUpdatedAfter("2019-11-01T00:00:00.000", "2019-11-28T10:15:00.000") ==
+                "http://fakequakes/query?format=any&startTime=2019-11-01T00:00:00.000&updatedafter=2019-11-28T10:15:00.000&includedeleted=true"
+    }
+
+    def "buildEarthquakeUrlByDatesAndMagnitudesAndCircle"() {
+        expect:
+        earthquakeUrlHelper.buildEarthquakeUrlByDatesAndMagnitudesAndCircle("2019-11-01", "2019-11-30", "4.5", null,
+                -33.45, -70.66, 250) ==
+                "http://fakequakes/query?format=any&startTime=2019-11-01&endTime=2019-11-30&minMagnitude=4.5&latitude=-33.45&longitude=-70.66&maxradiuskm=250.0"
+    }
 }
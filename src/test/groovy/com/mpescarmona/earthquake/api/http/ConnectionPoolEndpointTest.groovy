@@ -0,0 +1,21 @@
+package com.mpescarmona.earthquake.api.http
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager
+import spock.lang.Specification
+
+class ConnectionPoolEndpointTest extends Specification {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager()
+    ConnectionPoolEndpoint connectionPoolEndpoint = new ConnectionPoolEndpoint(connectionManager)
+
+    def "statistics exposes the limits and usage of the pool"() {
+        given:
+        connectionManager.setMaxTotal(50)
+        connectionManager.setDefaultMaxPerRoute(20)
+
+        when:
+        ConnectionPoolStatistics statistics = connectionPoolEndpoint.statistics()
+
+        then:
+        statistics == new ConnectionPoolStatistics(0, 0, 0, 50, 20, 0)
+    }
+}
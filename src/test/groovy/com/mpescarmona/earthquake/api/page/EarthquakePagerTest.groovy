@@ -0,0 +1,110 @@
+package com.mpescarmona.earthquake.api.page
+
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.FeatureFilter
+import com.mpescarmona.earthquake.api.domain.Metadata
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import com.mpescarmona.earthquake.api.dto.PageRequestDto
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper
+import spock.lang.Specification
+
+class EarthquakePagerTest extends Specification {
+    static final FeatureFilter CHILE = FeatureFilter.builder().countries(["Chile"]).build()
+
+    EarthquakeUrlHelper earthquakeUrlHelper = new EarthquakeUrlHelper()
+    EarthquakePager earthquakePager = new EarthquakePager(earthquakeUrlHelper, 100, 4)
+    // every third upstream earthquake is located in Chile
+    List<Feature> upstream = (0..<20).collect { i -> buildFeature("e" + i, i % 3 == 0 ? "Chile" : "Peru", 4.0 + i / 10) }
+    List<String> requestedUrls = []
+
+    void setup() {
+        earthquakeUrlHelper.setSearchByPageLimit("limit")
+        earthquakeUrlHelper.setSearchByPageOffset("offset")
+        earthquakeUrlHelper.setSearchByPageOrderBy("orderby")
+    }
+
+    def "fetchPage asks the service for the page only when nothing is filtered locally"() {
+        when:
+        EarthquakeResponse first = fetchPage(FeatureFilter.NONE, PageRequestDto.builder().limit(5).build())
+        EarthquakeResponse second = fetchPage(FeatureFilter.NONE, PageRequestDto.builder().limit(5).cursor(first.nextCursor).build())
+
+        then:
+        first.features*.id == ["e0", "e1", "e2", "e3", "e4"]
+        second.features*.id == ["e5", "e6", "e7", "e8", "e9"]
+        second.metadata.count == 5
+        requestedUrls == ["http://fakequakes?limit=5&offset=1&orderby=time", "http://fakequakes?limit=5&offset=6&orderby=time"]
+    }
+
+    def "fetchPage fills the page across batches and resumes inside a batch"() {
+        when:
+        List<List<String>> pages = []
+        String cursor = null
+        while (true) {
+            EarthquakeResponse page = fetchPage(CHILE, PageRequestDto.builder().limit(3).cursor(cursor).build())
+            pages << page.features*.id
+            cursor = page.nextCursor
+            if (cursor == null) {
+                break
+            }
+        }
+
+        then:
+        pages.flatten() == ["e0", "e3", "e6", "e9", "e12", "e15", "e18"]
+        pages.every { it.size() <= 3 }
+    }
+
+    def "pageFeatures orders and pages the features in memory"() {
+        given:
+        EarthquakeResponse response = EarthquakeResponse.builder()
+                .metadata(Metadata.builder().count(upstream.size()).build())
+                .features(upstream)
+                .build()
+
+        when:
+        EarthquakeResponse page = earthquakePager.pageFeatures(response,
+                PageRequestDto.builder().limit(2).orderBy("magnitude").cursor(new PageCursor(2, 0).encode()).build())
+
+        then:
+        page.features*.id == ["e17", "e16"]
+        page.metadata.count == 2
+        PageCursor.decode(page.nextCursor) == new PageCursor(4, 0)
+    }
+
+    def "unknown orders and malformed cursors are rejected"() {
+        when:
+        earthquakePager.fetchPage("http://fakequakes", FeatureFilter.NONE, pageRequest, { url, filter -> null })
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        pageRequest << [PageRequestDto.builder().orderBy("depth").build(),
+                 PageRequestDto.builder().cursor("not a cursor").build(),
+                 PageRequestDto.builder().limit(0).build()]
+    }
+
+    private EarthquakeResponse fetchPage(FeatureFilter featureFilter, PageRequestDto page) {
+        return earthquakePager.fetchPage("http://fakequakes", featureFilter, page, { String url, FeatureFilter filter ->
+            requestedUrls << url
+            Map<String, String> parameters = url.substring(url.indexOf('?') + 1).split('&').collectEntries { it.split('=') as List }
+            int offset = parameters.offset as int
+            int limit = parameters.limit as int
+            List<Feature> batch = upstream.subList(Math.min(offset - 1, upstream.size()), Math.min(offset - 1 + limit, upstream.size()))
+            return EarthquakeResponse.builder()
+                    .metadata(Metadata.builder().count(batch.size()).build())
+                    .features(batch.findAll { filter.matches(it) })
+                    .build()
+        })
+    }
+
+    private static Feature buildFeature(String id, String country, double mag) {
+        return Feature.builder()
+                .id(id)
+                .properties(Properties.builder()
+                        .place("10km N of Somewhere, " + country)
+                        .mag(mag)
+                        .build())
+                .build()
+    }
+}
@@ -0,0 +1,80 @@
+package com.mpescarmona.earthquake.api.parser
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.FeatureFilter
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class GeoJsonStreamingParserTest extends Specification {
+    static final String GEOJSON = '''{
+        "type": "FeatureCollection",
+        "metadata": {"generated": 1575400000000, "url": "http://fakequakes/query", "title": "USGS Earthquakes", "status": 200, "api": "1.8.1", "count": 3},
+        "features": [
+            {"type": "Feature", "geometry": {"type": "Point", "coordinates": [-71.2, -27.3, 10.0]}, "id": "us1",
+             "properties": {"mag": 7.4, "place": "83km W of Copiapo, Chile", "time": 1574856000000, "extra": {"nested": [1, 2]}}},
+            {"type": "Feature", "id": "us2",
+             "properties": {"mag": 6.1, "place": "62km SE of Molibagu, Indonesia", "time": 1574859600000},
+             "geometry": {"type": "Point", "coordinates": [124.1, 0.3, 35.0]}},
+            {"type": "Feature", "id": "us3",
+             "properties": {"mag": null, "place": null, "time": 1574863200000},
+             "geometry": {"type": "Point", "coordinates": [-82.8, 8.0, 20.0]}}
+        ],
+        "bbox": [-82.8, -27.3, 10.0, 124.1, 8.0, 35.0]
+    }'''
+
+    GeoJsonStreamingParser geoJsonStreamingParser = new GeoJsonStreamingParser(
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false))
+
+    def "parse without filter binds every feature"() {
+        when:
+        EarthquakeResponse response = geoJsonStreamingParser.parse(stream(GEOJSON), FeatureFilter.NONE)
+
+        then:
+        response.type == "FeatureCollection"
+        response.metadata.title == "USGS Earthquakes"
+        response.metadata.count == 3
+        response.features*.id == ["us1", "us2", "us3"]
+        response.features[0].geometry.coordinates == [-71.2d, -27.3d, 10.0d] as Double[]
+        response.bbox.length == 6
+    }
+
+    @Unroll
+    def "parse with #filter keeps #expectedIds"(FeatureFilter filter, List<String> expectedIds) {
+        when:
+        EarthquakeResponse response = geoJsonStreamingParser.parse(stream(GEOJSON), filter)
+
+        then:
+        response.features*.id == expectedIds
+        response.metadata.count == expectedIds.size()
+
+        where:
+        filter                                                                      | expectedIds
+        FeatureFilter.builder().countries(["chile"]).build()                        | ["us1"]
+        FeatureFilter.builder().countries(["CHILE", "indonesia"]).build()           | ["us1", "us2"]
+        FeatureFilter.builder().minMagnitude(6.5d).build()                          | ["us1"]
+        FeatureFilter.builder().maxMagnitude(6.5d).build()                          | ["us2"]
+        FeatureFilter.builder().startTime(1574859600000L).build()                   | ["us2", "us3"]
+        FeatureFilter.builder().countries(["panama"]).build()                       | []
+    }
+
+    def "parse hands the matching features to the consumer as they are read"() {
+        given:
+        List<Feature> consumed = []
+
+        when:
+        EarthquakeResponse response = geoJsonStreamingParser.parse(stream(GEOJSON),
+                FeatureFilter.builder().countries(["indonesia"]).build(), { consumed.add(it) })
+
+        then:
+        consumed*.id == ["us2"]
+        consumed[0].properties.mag == 6.1d
+        response.features == null
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes("UTF-8"))
+    }
+}
@@ -0,0 +1,107 @@
+package com.mpescarmona.earthquake.api.resilience
+
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpStatus
+import org.springframework.web.client.HttpClientErrorException
+import org.springframework.web.client.ResourceAccessException
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+class EarthquakeUpstreamGuardTest extends Specification {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    def "opens when the failure rate reaches the threshold"() {
+        given:
+        EarthquakeUpstreamGuard guard = buildGuard(60000, 1)
+        int sent = 0
+
+        when:
+        [true, false, true, false].each { failing -> callIgnoringErrors(guard) { sent++; if (failing) throw new ResourceAccessException("Read timed out") } }
+
+        then:
+        guard.state == EarthquakeUpstreamGuard.State.OPEN
+        !guard.isCallPermitted()
+
+        when:
+        guard.execute { sent++ }
+
+        then:
+        UpstreamUnavailableException ex = thrown()
+        ex.retryAfterMs > 0
+        sent == 4
+        meterRegistry.get("earthquake.upstream.rejected").tag("reason", "open").counter().count() == 1
+        meterRegistry.get("earthquake.breaker.state").gauge().value() == 1
+    }
+
+    def "client errors do not open the breaker"() {
+        given:
+        EarthquakeUpstreamGuard guard = buildGuard(60000, 1)
+
+        when:
+        4.times { callIgnoringErrors(guard) { throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", null, null, null) } }
+
+        then:
+        guard.state == EarthquakeUpstreamGuard.State.CLOSED
+    }
+
+    def "lets a trial call through once open for openMs, closing on its success"() {
+        given:
+        EarthquakeUpstreamGuard guard = buildGuard(0, 1)
+        4.times { callIgnoringErrors(guard) { throw new ResourceAccessException("Read timed out") } }
+
+        expect:
+        guard.state == EarthquakeUpstreamGuard.State.OPEN
+        guard.isCallPermitted()
+
+        when:
+        String result = guard.execute { "trial" }
+
+        then:
+        result == "trial"
+        guard.state == EarthquakeUpstreamGuard.State.CLOSED
+    }
+
+    def "rejects the calls that can not start while the bulkhead is full"() {
+        given:
+        EarthquakeUpstreamGuard guard = buildGuard(60000, 1)
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        CompletableFuture<String> running = CompletableFuture.supplyAsync {
+            guard.execute {
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                "running"
+            }
+        }
+        started.await(5, TimeUnit.SECONDS)
+
+        when:
+        guard.execute { "rejected" }
+
+        then:
+        thrown(UpstreamUnavailableException)
+        meterRegistry.get("earthquake.upstream.rejected").tag("reason", "full").counter().count() == 1
+
+        cleanup:
+        release.countDown()
+        running.join()
+    }
+
+    private EarthquakeUpstreamGuard buildGuard(long openMs, int maxConcurrentCalls) {
+        return new EarthquakeUpstreamGuard(new EarthquakeMetrics(meterRegistry), 50, 4, 4, 10000, openMs,
+                maxConcurrentCalls, 50)
+    }
+
+    private void callIgnoringErrors(EarthquakeUpstreamGuard guard, Supplier call) {
+        try {
+            guard.execute(call)
+        } catch (RuntimeException ignored) {
+            // the outcome is recorded by the guard
+        }
+    }
+}
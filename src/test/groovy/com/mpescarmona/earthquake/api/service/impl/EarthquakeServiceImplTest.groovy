@@ -1,21 +1,64 @@
 package com.mpescarmona.earthquake.api.service.impl
 
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.batch.EarthquakeBatchPlanner
+import com.mpescarmona.earthquake.api.cache.EarthquakeResponseCache
+import com.mpescarmona.earthquake.api.domain.BatchQueryType
 import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Geometry
 import com.mpescarmona.earthquake.api.domain.Metadata
 import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.StatsDimension
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeBatchResponse
 import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeStatsResponse
+import com.mpescarmona.earthquake.api.dto.BatchQueryRequestDto
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto
+import com.mpescarmona.earthquake.api.dto.PageRequestDto
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer
 import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics
+import com.mpescarmona.earthquake.api.page.EarthquakePager
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard
+import com.mpescarmona.earthquake.api.resilience.UpstreamErrorException
+import com.mpescarmona.earthquake.api.resilience.UpstreamUnavailableException
+import com.mpescarmona.earthquake.api.store.EarthquakeStore
+import com.mpescarmona.earthquake.api.window.EarthquakeWindowSplitter
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.core.io.ClassPathResource
+import org.springframework.core.task.SimpleAsyncTaskExecutor
+import org.springframework.core.task.SyncTaskExecutor
+import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpMethod
 import org.springframework.http.HttpStatus
-import org.springframework.http.ResponseEntity
+import org.springframework.http.client.ClientHttpRequest
+import org.springframework.mock.http.client.MockClientHttpResponse
+import org.springframework.web.client.HttpServerErrorException
+import org.springframework.web.client.ResourceAccessException
+import org.springframework.web.client.ResponseExtractor
 import org.springframework.web.client.RestTemplate
 import spock.lang.Specification
 
+import java.time.Instant
+import java.time.LocalDate
+
 class EarthquakeServiceImplTest extends Specification {
+    static ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
 
     RestTemplate restTemplate = Mock {}
     EarthquakeUrlHelper earthquakeUrlHelper = Mock {}
-    EarthquakeServiceImpl earthquakeService = new EarthquakeServiceImpl(restTemplate, earthquakeUrlHelper)
+    EarthquakeStore earthquakeStore = new EarthquakeStore(10, 2, 60000, 3600000)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    EarthquakeUpstreamGuard earthquakeUpstreamGuard = new EarthquakeUpstreamGuard(new EarthquakeMetrics(meterRegistry),
+            50, 20, 10, 10000, 60000, 20, 500)
+    EarthquakeServiceImpl earthquakeService = new EarthquakeServiceImpl(restTemplate, earthquakeUrlHelper, earthquakeStore,
+            new SimpleAsyncTaskExecutor(), new EarthquakeResponseCache(60000, 1000), new GeoJsonStreamingParser(objectMapper),
+            new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0), new EarthquakePager(earthquakeUrlHelper, 20000, 1000),
+            new EarthquakeWindowSplitter(restTemplate, earthquakeUrlHelper, earthquakeUpstreamGuard, new SyncTaskExecutor(), 5000, 86400000, 4),
+            new EarthquakeMetrics(meterRegistry), earthquakeUpstreamGuard,
+            new EarthquakeBatchPlanner(new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0)))
 
     def "GetEarthquakesByDateRanges"() {
         given:
@@ -31,11 +74,12 @@ class EarthquakeServiceImplTest extends Specification {
                 Properties.builder()
                         .place("83km W of Copiapo, Chile")
                         .mag(4.6)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli())
                         .build()
         );
         List<Feature> features = buildFeaturesFromProperties(properties);
         EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(features);
-        restTemplate.exchange(url, HttpMethod.GET, _, EarthquakeResponse.class) >> new ResponseEntity(earthQuakeResponse, HttpStatus.OK)
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
 
         response = earthquakeService.getEarthquakesByDateRange(startTime, endTime)
 
@@ -45,6 +89,88 @@ class EarthquakeServiceImplTest extends Specification {
         response.metadata.count == 1
     }
 
+    def "GetEarthquakesByDateRange is served from the store once the days are loaded"() {
+        given:
+        String startTime = "2019-11-27"
+        String endTime = "2019-11-28"
+        String url = "http://fakeearthquakeservice?format=geoformat&startTime=" + startTime + "&endTime=" + endTime
+        earthquakeUrlHelper.buildEarthquakeUrlByDates(startTime, endTime) >> url
+
+        List<Properties> properties = Arrays.asList(
+                Properties.builder()
+                        .place("83km W of Copiapo, Chile")
+                        .mag(4.6)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli())
+                        .build()
+        )
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties(properties))
+
+        when:
+        EarthquakeResponse first = earthquakeService.getEarthquakesByDateRange(startTime, endTime)
+        EarthquakeResponse second = earthquakeService.getEarthquakesByDateRange("2019-11-27T06:00:00", "2019-11-27T18:00:00")
+
+        then:
+        1 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        first.features.size() == 1
+        second.features.size() == 1
+        second.metadata.count == 1
+    }
+
+    def "GetEarthquakesNearby is answered from the store by distance and magnitude"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat&startTime=2019-11-27&endTime=2019-11-28"
+        earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-27", "2019-11-28") >> url
+        List<Feature> features = buildFeaturesFromProperties([
+                Properties.builder().place("near Santiago, Chile").mag(4.6)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli()).build(),
+                Properties.builder().place("near Valparaiso, Chile").mag(3.1)
+                        .time(Instant.parse("2019-11-27T13:00:00Z").toEpochMilli()).build(),
+                Properties.builder().place("near Lima, Peru").mag(5.2)
+                        .time(Instant.parse("2019-11-27T14:00:00Z").toEpochMilli()).build()
+        ])
+        [[-70.66, -33.45], [-71.62, -33.05], [-77.04, -12.05]].eachWithIndex { coordinates, i ->
+            features[i].geometry = Geometry.builder().type("Point").coordinates(coordinates as Double[]).build()
+        }
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(features)
+
+        when:
+        EarthquakeResponse nearby = earthquakeService.getEarthquakesNearby(-33.45, -70.66, 150, "2019-11-27",
+                "2019-11-28", null, null, PageRequestDto.UNPAGED)
+        EarthquakeResponse strong = earthquakeService.getEarthquakesNearby(-33.45, -70.66, 150, "2019-11-27",
+                "2019-11-28", "4", null, PageRequestDto.UNPAGED)
+
+        then:
+        1 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        nearby.features*.id == ["near Valparaiso, Chile", "near Santiago, Chile"]
+        strong.features*.id == ["near Santiago, Chile"]
+    }
+
+    def "GetEarthquakeStats loads the missing days and groups their rollups"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat&startTime=2019-11-27&endTime=2019-11-28"
+        earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-27", "2019-11-28") >> url
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("near Santiago, Chile").mag(4.6).sig(326)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli()).build(),
+                Properties.builder().place("near Lima, Peru").mag(5.2).sig(416)
+                        .time(Instant.parse("2019-11-27T14:00:00Z").toEpochMilli()).build()
+        ]))
+
+        when:
+        EarthquakeStatsResponse stats = earthquakeService.getEarthquakeStats("2019-11-27", "2019-11-28", ["day"])
+        EarthquakeStatsResponse invalid = earthquakeService.getEarthquakeStats("2019-11-27", "2019-11-28", ["week"])
+
+        then:
+        1 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        stats.groupBy == [StatsDimension.DAY]
+        stats.stats.size() == 1
+        stats.stats[0].day == "2019-11-27"
+        stats.stats[0].count == 2
+        stats.stats[0].maxMagnitude == 5.2
+        stats.stats[0].significance == 742
+        invalid == null
+    }
+
     def "GetEarthquakesByMagnitudeRange"() {
         given:
         EarthquakeResponse response
@@ -71,7 +197,7 @@ class EarthquakeServiceImplTest extends Specification {
         );
         List<Feature> features = buildFeaturesFromProperties(properties);
         EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(features);
-        restTemplate.exchange(url, HttpMethod.GET, _, EarthquakeResponse.class) >> new ResponseEntity(earthQuakeResponse, HttpStatus.OK)
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
 
         response = earthquakeService.getEarthquakesByMagnitudeRange(minMagnitude, maxMagnitude)
 
@@ -99,10 +225,12 @@ class EarthquakeServiceImplTest extends Specification {
                 Properties.builder()
                         .place("62km SE of Molibagu, Indonesia")
                         .mag(6.1)
+                        .time(Instant.parse("2019-11-20T12:00:00Z").toEpochMilli())
                         .build(),
                 Properties.builder()
                         .place("83km W of Copiapo, Chile")
                         .mag(7.2)
+                        .time(Instant.parse("2019-11-20T12:00:00Z").toEpochMilli())
                         .build()
         );
         List<Feature> features1 = buildFeaturesFromProperties(properties1);
@@ -112,13 +240,14 @@ class EarthquakeServiceImplTest extends Specification {
                 Properties.builder()
                         .place("7km N of Zonda, Argentina")
                         .mag(7.1)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli())
                         .build()
         )
         List<Feature> features2 = buildFeaturesFromProperties(properties2)
         EarthquakeResponse earthQuakeResponse2 = buildEarthquakeResponse(features2)
 
-        restTemplate.exchange(url1, HttpMethod.GET, _, EarthquakeResponse.class) >> new ResponseEntity(earthQuakeResponse1, HttpStatus.OK)
-        restTemplate.exchange(url2, HttpMethod.GET, _, EarthquakeResponse.class) >> new ResponseEntity(earthQuakeResponse2, HttpStatus.OK)
+        restTemplate.execute(url1, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse1) }
+        restTemplate.execute(url2, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse2) }
 
         response = earthquakeService.getEarthquakesByDateRanges(startTime1, endTime1, startTime2, endTime2)
 
@@ -128,13 +257,94 @@ class EarthquakeServiceImplTest extends Specification {
         response.metadata.count == 3
     }
 
+    def "GetEarthquakesByDateRanges merges any number of ranges"() {
+        given:
+        List<DateRangeRequestDto> dateRanges = ["2019-11-20", "2019-11-23", "2019-11-27"].collect { day ->
+            DateRangeRequestDto.builder().startTime(day + "T00:00:00").endTime(day + "T12:00:00").build()
+        }
+        dateRanges.each { dateRange ->
+            String day = dateRange.startTime.substring(0, 10)
+            String nextDay = LocalDate.parse(day).plusDays(1).toString()
+            String url = "http://fakeearthquakeservice?format=geoformat&startTime=" + day + "&endTime=" + nextDay
+            earthquakeUrlHelper.buildEarthquakeUrlByDates(day, nextDay) >> url
+
+            List<Properties> properties = Arrays.asList(
+                    Properties.builder()
+                            .place("83km W of Copiapo, Chile")
+                            .mag(6.1)
+                            .time(Instant.parse(day + "T06:00:00Z").toEpochMilli())
+                            .build(),
+                    Properties.builder()
+                            .place("7km N of Zonda, Argentina")
+                            .mag(5.2)
+                            .time(Instant.parse(day + "T18:00:00Z").toEpochMilli())
+                            .build()
+            )
+            EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties(properties))
+            restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        }
+
+        when:
+        EarthquakeResponse response = earthquakeService.getEarthquakesByDateRanges(dateRanges)
+
+        then:
+        response != null
+        response.features.size() == 3
+        response.metadata.count == 3
+    }
+
+    def "GetEarthquakesInBatch answers overlapping queries from one fetch each"() {
+        given:
+        String datesUrl = "http://fakeearthquakeservice?format=geoformat&startTime=2019-11-27&endTime=2019-11-30"
+        String magnitudesUrl = "http://fakeearthquakeservice?format=geoformat&minMagnitude=6.0&maxMagnitude=7.5"
+        earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-27", "2019-11-30") >> datesUrl
+        earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes("6.0", "7.5") >> magnitudesUrl
+        EarthquakeResponse datesResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("83km W of Copiapo, Chile").mag(4.6)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli()).build(),
+                Properties.builder().place("62km SE of Molibagu, Indonesia").mag(5.1)
+                        .time(Instant.parse("2019-11-29T12:00:00Z").toEpochMilli()).build()
+        ]))
+        EarthquakeResponse magnitudesResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build(),
+                Properties.builder().place("62km SE of Molibagu, Indonesia").mag(6.1).build(),
+                Properties.builder().place("24km ESE of Punta de Burica, Panama").mag(6.5).build()
+        ]))
+
+        when:
+        EarthquakeBatchResponse response = earthquakeService.getEarthquakesInBatch([
+                BatchQueryRequestDto.builder().id("first days").type(BatchQueryType.DATE_RANGE)
+                        .startTime("2019-11-27").endTime("2019-11-28").build(),
+                BatchQueryRequestDto.builder().id("strong").type(BatchQueryType.MAGNITUDE_RANGE)
+                        .minMagnitude("6.0").maxMagnitude("7.0").build(),
+                BatchQueryRequestDto.builder().id("last days").type(BatchQueryType.DATE_RANGE)
+                        .startTime("2019-11-28").endTime("2019-11-30").build(),
+                BatchQueryRequestDto.builder().id("stronger").type(BatchQueryType.MAGNITUDE_RANGE)
+                        .minMagnitude("6.4").maxMagnitude("7.5").build(),
+                BatchQueryRequestDto.builder().id("no type").build()
+        ])
+
+        then:
+        1 * restTemplate.execute(datesUrl, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, datesResponse) }
+        1 * restTemplate.execute(magnitudesUrl, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, magnitudesResponse) }
+        response.fetches == 2
+        response.results*.id == ["first days", "strong", "last days", "stronger", "no type"]
+        response.results[0].response.features*.properties*.place == ["83km W of Copiapo, Chile"]
+        response.results[1].response.features*.properties*.mag == [6.1d, 6.5d]
+        response.results[2].response.features*.properties*.place == ["62km SE of Molibagu, Indonesia"]
+        response.results[3].response.features*.properties*.mag == [7.4d, 6.5d]
+        response.results[3].response.metadata.count == 2
+        response.results[4].response == null
+        response.results[4].error == "invalid query"
+    }
+
     def "GetEarthquakesByCountry"() {
         given:
         EarthquakeResponse response
-        String url = "http://fakeearthquakeservice?format=geoformat";
+        String url = "http://fakeearthquakeservice?format=geoformat&minlatitude=-61.0";
 
         when:
-        earthquakeUrlHelper.buildEarthQuakeBaseUrlAndFormat() >> url
+        earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox({ it.minLatitude == -61.0d && it.maxLongitude == -61.4d }) >> url
 
         List<Properties> properties = Arrays.asList(
                 Properties.builder()
@@ -152,7 +362,7 @@ class EarthquakeServiceImplTest extends Specification {
         );
         List<Feature> features = buildFeaturesFromProperties(properties);
         EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(features);
-        restTemplate.exchange(url, HttpMethod.GET, _, EarthquakeResponse.class) >> new ResponseEntity(earthQuakeResponse, HttpStatus.OK)
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
 
         response = earthquakeService.getEarthquakesByCountry("Chile")
 
@@ -162,6 +372,46 @@ class EarthquakeServiceImplTest extends Specification {
         response.metadata.count == 1
     }
 
+    def "GetEarthquakesByCountry records the upstream call and the earthquakes read and kept"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat"
+        earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox(_) >> url
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build(),
+                Properties.builder().place("62km SE of Molibagu, Indonesia").mag(6.1).build(),
+                Properties.builder().place("24km ESE of Punta de Burica, Panama").mag(6.5).build()
+        ]))
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+
+        when:
+        earthquakeService.getEarthquakesByCountry("Chile")
+
+        then:
+        meterRegistry.get("earthquake.upstream").tags("action", "getEarthquakesByCountry", "outcome", "success").timer().count() == 1
+        meterRegistry.get("earthquake.parse").tag("action", "getEarthquakesByCountry").timer().count() == 1
+        meterRegistry.get("earthquake.features.in").tags("action", "getEarthquakesByCountry", "source", "upstream").counter().count() == 3
+        meterRegistry.get("earthquake.features.out").tags("action", "getEarthquakesByCountry", "source", "upstream").counter().count() == 1
+    }
+
+    def "GetEarthquakesByCountry for an unknown country queries the whole world"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat"
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("10km N of Atlantis").mag(5.0).build(),
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build()
+        ]))
+
+        when:
+        EarthquakeResponse response = earthquakeService.getEarthquakesByCountry("Atlantis")
+
+        then:
+        1 * earthquakeUrlHelper.buildEarthQuakeBaseUrlAndFormat() >> url
+        0 * earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox(_)
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        response.features.size() == 1
+        response.features[0].properties.place == "10km N of Atlantis"
+    }
+
     def "GetEarthquakesByCountriesAndDateRanges"() {
         given:
         EarthquakeResponse response
@@ -176,19 +426,22 @@ class EarthquakeServiceImplTest extends Specification {
                 Properties.builder()
                         .place("83km W of Copiapo, Chile")
                         .mag(7.4)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli())
                         .build(),
                 Properties.builder()
                         .place("62km SE of Molibagu, Indonesia")
                         .mag(6.1)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli())
                         .build(),
                 Properties.builder()
                         .place("24km ESE of Punta de Burica, Panama")
                         .mag(6.5)
+                        .time(Instant.parse("2019-11-27T12:00:00Z").toEpochMilli())
                         .build()
         );
         List<Feature> features = buildFeaturesFromProperties(properties);
         EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(features);
-        restTemplate.exchange(url, HttpMethod.GET, _, EarthquakeResponse.class) >> new ResponseEntity(earthQuakeResponse, HttpStatus.OK)
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
 
         response = earthquakeService.getEarthquakesByCountriesAndDateRange("Chile", "Indonesia", startTime, endTime);
 
@@ -198,6 +451,173 @@ class EarthquakeServiceImplTest extends Specification {
         response.metadata.count == 2
     }
 
+    def "StreamEarthquakesByCountry hands the matching features to the consumer"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat&minlatitude=-61.5&maxlatitude=-12.5"
+        earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox(_) >> url
+        List<Properties> properties = Arrays.asList(
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build(),
+                Properties.builder().place("41km SW of Tacna, Peru").mag(5.2).build(),
+                Properties.builder().place("Offshore Valparaiso, Chile").mag(4.9).build()
+        )
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties(properties))
+        List<Feature> streamed = []
+
+        when:
+        earthquakeService.streamEarthquakesByCountry("Chile", { streamed << it })
+
+        then:
+        1 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        streamed*.properties*.place == ["83km W of Copiapo, Chile", "Offshore Valparaiso, Chile"]
+    }
+
+    def "a slow streaming client is not timed as a slow call of the upstream service"() {
+        given:
+        EarthquakeUpstreamGuard slowCallGuard = new EarthquakeUpstreamGuard(new EarthquakeMetrics(meterRegistry),
+                50, 1, 1, 50, 60000, 1, 500)
+        EarthquakeServiceImpl slowCallService = buildService(new EarthquakeResponseCache(60000, 1000), slowCallGuard)
+        String url = "http://fakeearthquakeservice?format=geoformat&minmagnitude=6.0"
+        earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes("6.0", null) >> url
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build(),
+                Properties.builder().place("41km SW of Tacna, Peru").mag(6.2).build()
+        ]))
+        List<Boolean> callPermitted = []
+
+        when:
+        slowCallService.streamEarthquakesByMagnitudeRange("6.0", null, {
+            // the only permit of the bulkhead is free while the client reads
+            callPermitted << (slowCallGuard.permits.availablePermits() == 1)
+            Thread.sleep(100)
+        })
+
+        then:
+        1 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) }
+        callPermitted == [true, true]
+        slowCallGuard.state == EarthquakeUpstreamGuard.State.CLOSED
+    }
+
+    def "revalidates expired upstream responses with their ETag"() {
+        given:
+        EarthquakeServiceImpl revalidatingService = new EarthquakeServiceImpl(restTemplate, earthquakeUrlHelper, earthquakeStore,
+                new SimpleAsyncTaskExecutor(), new EarthquakeResponseCache(0, 60000, 1000), new GeoJsonStreamingParser(objectMapper),
+                new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0), new EarthquakePager(earthquakeUrlHelper, 20000, 1000),
+                new EarthquakeWindowSplitter(restTemplate, earthquakeUrlHelper, earthquakeUpstreamGuard, new SyncTaskExecutor(), 5000, 86400000, 4),
+                new EarthquakeMetrics(meterRegistry), earthquakeUpstreamGuard,
+                new EarthquakeBatchPlanner(new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0)))
+        String url = "http://fakeearthquakeservice?format=geoformat&minmagnitude=6.0"
+        earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes("6.0", null) >> url
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build()
+        ]))
+        List<String> ifNoneMatch = []
+        restTemplate.execute(url, HttpMethod.GET, _, _) >> { args ->
+            HttpHeaders requestHeaders = new HttpHeaders()
+            args[2].doWithRequest(Stub(ClientHttpRequest) { getHeaders() >> requestHeaders })
+            ifNoneMatch.add(requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH))
+            MockClientHttpResponse upstream = ifNoneMatch.size() == 1
+                    ? new MockClientHttpResponse(objectMapper.writeValueAsBytes(earthQuakeResponse), HttpStatus.OK)
+                    : new MockClientHttpResponse(new byte[0], HttpStatus.NOT_MODIFIED)
+            upstream.headers.setETag('"v1"')
+            return args[3].extractData(upstream)
+        }
+
+        when:
+        EarthquakeResponse first = revalidatingService.getEarthquakesByMagnitudeRange("6.0", null)
+        EarthquakeResponse second = revalidatingService.getEarthquakesByMagnitudeRange("6.0", null)
+
+        then:
+        ifNoneMatch == [null, '"v1"']
+        first.features.size() == 1
+        second.features.size() == 1
+    }
+
+    def "serves the expired response marked as stale while the upstream service is unavailable"() {
+        given:
+        EarthquakeUpstreamGuard breakingGuard = new EarthquakeUpstreamGuard(new EarthquakeMetrics(meterRegistry),
+                50, 4, 1, 10000, 60000, 20, 500)
+        EarthquakeServiceImpl staleService = buildService(new EarthquakeResponseCache(0, 60000, 1000), breakingGuard)
+        String url = "http://fakeearthquakeservice?format=geoformat&minmagnitude=6.0"
+        earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes("6.0", null) >> url
+        EarthquakeResponse earthQuakeResponse = buildEarthquakeResponse(buildFeaturesFromProperties([
+                Properties.builder().place("83km W of Copiapo, Chile").mag(7.4).build()
+        ]))
+
+        when:
+        EarthquakeResponse fresh = staleService.getEarthquakesByMagnitudeRange("6.0", null)
+        EarthquakeResponse failed = staleService.getEarthquakesByMagnitudeRange("6.0", null)
+        EarthquakeResponse rejected = staleService.getEarthquakesByMagnitudeRange("6.0", null)
+
+        then: "the breaker opens on the failed call and the last one is not sent"
+        2 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { args -> extractUpstream(args, earthQuakeResponse) } >>
+                { throw new ResourceAccessException("Read timed out") }
+        fresh.stale == null
+        failed.stale
+        failed.features.size() == 1
+        rejected.stale
+        rejected.features.size() == 1
+        breakingGuard.state == EarthquakeUpstreamGuard.State.OPEN
+        meterRegistry.get("earthquake.stale").counter().count() == 2
+    }
+
+    def "rejects the calls while the breaker is open when there is no stale response"() {
+        given:
+        EarthquakeUpstreamGuard breakingGuard = new EarthquakeUpstreamGuard(new EarthquakeMetrics(meterRegistry),
+                50, 4, 1, 10000, 60000, 20, 500)
+        EarthquakeServiceImpl breakingService = buildService(new EarthquakeResponseCache(60000, 1000), breakingGuard)
+        String url = "http://fakeearthquakeservice?format=geoformat&minmagnitude=6.0"
+        earthquakeUrlHelper.buildEarthquakeUrlByMagnitudes("6.0", null) >> url
+
+        when:
+        breakingService.getEarthquakesByMagnitudeRange("6.0", null)
+
+        then:
+        1 * restTemplate.execute(url, HttpMethod.GET, _, _) >> { throw new ResourceAccessException("Read timed out") }
+        thrown(UpstreamErrorException)
+
+        when:
+        breakingService.getEarthquakesByMagnitudeRange("6.0", null)
+
+        then:
+        0 * restTemplate.execute(url, HttpMethod.GET, _, _)
+        UpstreamUnavailableException ex = thrown()
+        ex.retryAfterMs > 0
+        meterRegistry.get("earthquake.upstream.rejected").tag("reason", "open").counter().count() == 1
+    }
+
+    def "throws the failure of the upstream service when there is no cached response"() {
+        given:
+        String datesUrl = "http://fakeearthquakeservice?format=geoformat&startTime=2019-11-27&endTime=2019-11-28"
+        earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-27", "2019-11-28") >> datesUrl
+        earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox(_) >> "http://fakeearthquakeservice?format=geoformat&country"
+
+        when:
+        earthquakeService.getEarthquakesByDateRange("2019-11-27", "2019-11-28")
+
+        then:
+        1 * restTemplate.execute(datesUrl, HttpMethod.GET, _, _) >>
+                { throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR) }
+        UpstreamErrorException ex = thrown()
+        ex.cause instanceof HttpServerErrorException
+
+        when:
+        earthquakeService.getEarthquakesByCountry("Chile")
+
+        then:
+        1 * restTemplate.execute(_, HttpMethod.GET, _, _) >>
+                { throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR) }
+        thrown(UpstreamErrorException)
+    }
+
+    private EarthquakeServiceImpl buildService(EarthquakeResponseCache earthquakeResponseCache, EarthquakeUpstreamGuard guard) {
+        return new EarthquakeServiceImpl(restTemplate, earthquakeUrlHelper, earthquakeStore,
+                new SimpleAsyncTaskExecutor(), earthquakeResponseCache, new GeoJsonStreamingParser(objectMapper),
+                new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0), new EarthquakePager(earthquakeUrlHelper, 20000, 1000),
+                new EarthquakeWindowSplitter(restTemplate, earthquakeUrlHelper, guard, new SyncTaskExecutor(), 5000, 86400000, 4),
+                new EarthquakeMetrics(meterRegistry), guard,
+                new EarthquakeBatchPlanner(new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0)))
+    }
+
     private EarthquakeResponse buildEarthquakeResponse(List<Feature> features) {
         return EarthquakeResponse.builder()
                 .type("Fake")
@@ -213,10 +633,16 @@ class EarthquakeServiceImplTest extends Specification {
         properties.forEach({ property ->
             features.add(
                     Feature.builder()
+                            .id(property.place)
                             .properties(property)
                             .build()
             )
         })
         return features;
     }
+
+    private static Object extractUpstream(List args, EarthquakeResponse earthquakeResponse) {
+        ResponseExtractor extractor = args[3]
+        return extractor.extractData(new MockClientHttpResponse(objectMapper.writeValueAsBytes(earthquakeResponse), HttpStatus.OK))
+    }
 }
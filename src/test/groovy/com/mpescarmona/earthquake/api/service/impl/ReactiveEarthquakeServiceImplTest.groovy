@@ -0,0 +1,123 @@
+package com.mpescarmona.earthquake.api.service.impl
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Metadata
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import com.mpescarmona.earthquake.api.dto.DateRangeRequestDto
+import com.mpescarmona.earthquake.api.gazetteer.CountryGazetteer
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper
+import com.mpescarmona.earthquake.api.store.EarthquakeStore
+import org.springframework.core.io.ClassPathResource
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.http.codec.json.Jackson2JsonDecoder
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeStrategies
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Instant
+
+class ReactiveEarthquakeServiceImplTest extends Specification {
+    static ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+
+    Map<String, EarthquakeResponse> upstream = [:]
+    List<String> requestedUrls = []
+    WebClient webClient = WebClient.builder()
+            .exchangeStrategies(ExchangeStrategies.builder()
+                    .codecs({ it.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper)) })
+                    .build())
+            .exchangeFunction({ request ->
+                String url = request.url().toString()
+                requestedUrls.add(url)
+                EarthquakeResponse response = upstream[url]
+                return Mono.just(response == null
+                        ? ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build()
+                        : ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(objectMapper.writeValueAsString(response))
+                        .build())
+            })
+            .build()
+    EarthquakeUrlHelper earthquakeUrlHelper = Mock {}
+    ReactiveEarthquakeServiceImpl earthquakeService = new ReactiveEarthquakeServiceImpl(webClient, earthquakeUrlHelper,
+            new EarthquakeStore(10, 2, 60000, 3600000),
+            new CountryGazetteer(new ClassPathResource("gazetteer/countries.csv"), 5.0))
+
+    def "GetEarthquakesByDateRange loads the days into the store"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat&startTime=2019-11-27&endTime=2019-11-28"
+        earthquakeUrlHelper.buildEarthquakeUrlByDates("2019-11-27", "2019-11-28") >> url
+        upstream[url] = buildEarthquakeResponse([
+                buildProperties("83km W of Copiapo, Chile", 7.4, "2019-11-27T10:00:00Z"),
+                buildProperties("62km SE of Molibagu, Indonesia", 6.1, "2019-11-27T12:00:00Z")
+        ])
+
+        when:
+        EarthquakeResponse first = earthquakeService.getEarthquakesByDateRange("2019-11-27", "2019-11-28").block()
+        EarthquakeResponse second = earthquakeService.getEarthquakesByCountriesAndDateRange("Chile", "Panama",
+                "2019-11-27", "2019-11-28").block()
+
+        then:
+        first.features*.properties*.place == ["62km SE of Molibagu, Indonesia", "83km W of Copiapo, Chile"]
+        second.features*.properties*.place == ["83km W of Copiapo, Chile"]
+        second.metadata.count == 1
+        requestedUrls == [url]
+    }
+
+    def "GetEarthquakesByCountry narrows the query to the country and filters by place"() {
+        given:
+        String url = "http://fakeearthquakeservice?format=geoformat&minlatitude=-61.0"
+        earthquakeUrlHelper.buildEarthquakeUrlByBoundingBox({ it.minLatitude == -61.0d }) >> url
+        upstream[url] = buildEarthquakeResponse([
+                buildProperties("83km W of Copiapo, Chile", 7.4, "2019-11-27T10:00:00Z"),
+                buildProperties("10km N of Chilecito, Argentina", 5.1, "2019-11-27T11:00:00Z")
+        ])
+
+        when:
+        EarthquakeResponse response = earthquakeService.getEarthquakesByCountry("Chile").block()
+
+        then:
+        response.features*.properties*.place == ["83km W of Copiapo, Chile"]
+        response.metadata.count == 1
+    }
+
+    def "GetEarthquakesByDateRanges merges the ranges and is empty when any of them fails"() {
+        given:
+        earthquakeUrlHelper.buildEarthquakeUrlByDates(_, _) >> { String start, String end -> "http://fake?start=" + start }
+        upstream["http://fake?start=2019-11-20"] = buildEarthquakeResponse([buildProperties("a, Chile", 5.0, "2019-11-20T10:00:00Z")])
+        upstream["http://fake?start=2019-11-24"] = buildEarthquakeResponse([buildProperties("b, Chile", 5.0, "2019-11-24T10:00:00Z")])
+
+        expect:
+        earthquakeService.getEarthquakesByDateRanges([
+                DateRangeRequestDto.builder().startTime("2019-11-20").endTime("2019-11-21").build(),
+                DateRangeRequestDto.builder().startTime("2019-11-24").endTime("2019-11-25").build()
+        ]).block().metadata.count == 2
+        !earthquakeService.getEarthquakesByDateRanges([
+                DateRangeRequestDto.builder().startTime("2019-11-20").endTime("2019-11-21").build(),
+                DateRangeRequestDto.builder().startTime("2019-11-26").endTime("2019-11-27").build()
+        ]).blockOptional().isPresent()
+    }
+
+    private static Properties buildProperties(String place, Double mag, String time) {
+        return Properties.builder()
+                .place(place)
+                .mag(mag)
+                .time(Instant.parse(time).toEpochMilli())
+                .build()
+    }
+
+    private static EarthquakeResponse buildEarthquakeResponse(List<Properties> properties) {
+        List<Feature> features = properties.collect { Feature.builder().id(it.place).properties(it).build() }
+        return EarthquakeResponse.builder()
+                .type("Fake")
+                .metadata(Metadata.builder().count(features.size()).build())
+                .features(features)
+                .build()
+    }
+}
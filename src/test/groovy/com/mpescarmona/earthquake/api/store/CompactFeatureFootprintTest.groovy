@@ -0,0 +1,64 @@
+package com.mpescarmona.earthquake.api.store
+
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Geometry
+import com.mpescarmona.earthquake.api.domain.Properties
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Heap footprint of the features held by the store, run with -Dbenchmark=true
+ */
+@Requires({ sys.benchmark })
+class CompactFeatureFootprintTest extends Specification {
+    static final int FEATURES = 200000
+
+    def "compact features take less than half the heap of features"() {
+        when:
+        long featureBytes = measure { (0..<FEATURES).collect { buildFeature(it) } }
+        long compactBytes = measure { (0..<FEATURES).collect { CompactFeature.of(buildFeature(it)) } }
+        println String.format("features=%d, featureBytes=%d (%d per feature), compactBytes=%d (%d per feature)",
+                FEATURES, featureBytes, featureBytes.intdiv(FEATURES), compactBytes, compactBytes.intdiv(FEATURES))
+
+        then:
+        compactBytes * 2 < featureBytes
+    }
+
+    private static long measure(Closure<List> allocate) {
+        long before = usedHeap()
+        List held = allocate()
+        long after = usedHeap()
+        assert held.size() == FEATURES
+        return after - before
+    }
+
+    private static long usedHeap() {
+        3.times { System.gc() }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()
+    }
+
+    // distinct strings per feature, as read from a response, and repeated low cardinality values
+    private static Feature buildFeature(int index) {
+        String code = String.format("%08d", index)
+        double mag = 4.5d + index % 30 / 10d
+        String place = index + "km W of Copiapo, Chile"
+        return Feature.builder()
+                .type(new String("Feature"))
+                .id("us" + code)
+                .geometry(new Geometry(new String("Point"), [-71.2931d + index % 100, -27.3434d, 35.0d] as Double[]))
+                .properties(Properties.builder()
+                        .mag(mag).place(place)
+                        .time(1574251712890L + index).updated(1574252988040L + index).tz(-240)
+                        .url("https://earthquake.usgs.gov/earthquakes/eventpage/us" + code)
+                        .detail("https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=us" + code + "&format=geojson")
+                        .felt(index % 7).cdi(2.7d).mmi(3.1d).alert(new String("green")).status(new String("reviewed"))
+                        .tsunami(0).sig(312 + index % 500).net(new String("us")).code(code).ids(",us" + code + ",")
+                        .sources(new String(",us,")).types(new String(",geoserve,origin,phase-data,"))
+                        .nst(42).dmin(0.9d + index % 10).rms(1.07d).gap(84 + index % 90).magType(new String("mb"))
+                        .type(new String("earthquake")).title("M " + mag + " - " + place)
+                        .build())
+                .build()
+    }
+}
@@ -0,0 +1,69 @@
+package com.mpescarmona.earthquake.api.store
+
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Geometry
+import com.mpescarmona.earthquake.api.domain.Properties
+import spock.lang.Specification
+
+class CompactFeatureTest extends Specification {
+
+    def "toFeature rebuilds every field of the compacted feature"() {
+        given:
+        Feature feature = Feature.builder()
+                .type("Feature")
+                .id("us70006d0m")
+                .geometry(new Geometry("Point", [-71.2931, -27.3434, 35.0] as Double[]))
+                .properties(Properties.builder()
+                        .mag(4.5d).place("83km W of Copiapo, Chile").time(1574251712890L).updated(1574252988040L)
+                        .tz(-240).url("https://earthquake.usgs.gov/earthquakes/eventpage/us70006d0m")
+                        .detail("https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=us70006d0m&format=geojson")
+                        .felt(3).cdi(2.7d).mmi(3.1d).alert("green").status("reviewed").tsunami(0).sig(312)
+                        .net("us").code("70006d0m").ids(",us70006d0m,").sources(",us,").types(",geoserve,origin,")
+                        .nst(42).dmin(0.9d).rms(1.07d).gap(84).magType("mb").type("earthquake")
+                        .title("M 4.5 - 83km W of Copiapo, Chile")
+                        .build())
+                .build()
+
+        expect:
+        CompactFeature.of(feature).toFeature() == feature
+    }
+
+    def "toFeature keeps the missing values missing"() {
+        given:
+        Feature feature = Feature.builder()
+                .id("ci38012345")
+                .geometry(new Geometry("Point", [-117.5d, null, 8.2d] as Double[]))
+                .properties(Properties.builder().time(1574251712890L).build())
+                .build()
+
+        when:
+        Feature rebuilt = CompactFeature.of(feature).toFeature()
+
+        then:
+        rebuilt == feature
+        rebuilt.properties.mag == null
+        rebuilt.properties.tz == null
+        rebuilt.geometry.coordinates[1] == null
+    }
+
+    def "toFeature keeps the strings not derived from the id"() {
+        given:
+        Feature feature = Feature.builder()
+                .id("ak0199xyz")
+                .properties(Properties.builder()
+                        .mag(1.2d).place("Alaska Peninsula").time(1574251712890L).net("ak").code("0199xyz")
+                        .url("https://example.org/ak0199xyz").ids(",ak0199xyz,us60006abc,")
+                        .title("M 1.2 - 40km SSW of Perryville, Alaska")
+                        .build())
+                .build()
+
+        when:
+        CompactFeature compactFeature = CompactFeature.of(feature)
+
+        then:
+        compactFeature.code == null
+        compactFeature.url == "https://example.org/ak0199xyz"
+        compactFeature.ids == ",ak0199xyz,us60006abc,"
+        compactFeature.toFeature() == feature
+    }
+}
@@ -0,0 +1,356 @@
+package com.mpescarmona.earthquake.api.store
+
+import com.mpescarmona.earthquake.api.domain.BoundingBox
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Geometry
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.StatsDimension
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Instant
+import java.time.LocalDate
+
+class EarthquakeStoreTest extends Specification {
+    static final long HOUR = 3600000L
+
+    Instant now = Instant.parse("2019-12-01T00:00:00Z")
+    Clock clock = Stub(Clock) {
+        millis() >> { now.toEpochMilli() }
+    }
+    EarthquakeStore earthquakeStore = new EarthquakeStore(3, 2, 60000, HOUR, clock)
+
+    def "findMissingDays returns the days never loaded"() {
+        expect:
+        earthquakeStore.findMissingDays(millis("2019-11-20T00:00:00Z"), millis("2019-11-22T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 20), LocalDate.of(2019, 11, 21)]
+    }
+
+    def "putAll completes the fully covered days only"() {
+        given:
+        List<Feature> features = [
+                buildFeature("a", "2019-11-20T10:00:00Z"),
+                buildFeature("b", "2019-11-21T10:00:00Z")
+        ]
+
+        when:
+        earthquakeStore.putAll(features, millis("2019-11-20T00:00:00Z"), millis("2019-11-21T12:00:00Z"))
+
+        then:
+        earthquakeStore.findMissingDays(millis("2019-11-20T00:00:00Z"), millis("2019-11-22T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 21)]
+        earthquakeStore.findByTimeRange(millis("2019-11-20T00:00:00Z"), millis("2019-11-22T00:00:00Z"))*.id == ["b", "a"]
+        earthquakeStore.findByTimeRange(millis("2019-11-20T12:00:00Z"), millis("2019-11-22T00:00:00Z"))*.id == ["b"]
+    }
+
+    def "partitions become stale after their ttl"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z"), buildFeature("b", "2019-11-30T10:00:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        earthquakeStore.putAll([buildFeature("b", "2019-11-30T10:00:00Z")],
+                millis("2019-11-30T00:00:00Z"), millis("2019-12-01T00:00:00Z"))
+
+        when:
+        now = now.plusSeconds(120)
+
+        then:
+        earthquakeStore.findMissingDays(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z")).isEmpty()
+        earthquakeStore.findMissingDays(millis("2019-11-30T00:00:00Z"), millis("2019-12-01T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 30)]
+    }
+
+    def "least recently used partitions are evicted over the maximum"() {
+        when:
+        (1..4).each { day ->
+            String date = String.format("2019-11-%02d", day)
+            earthquakeStore.putAll([buildFeature(date, date + "T10:00:00Z")],
+                    millis(date + "T00:00:00Z"), millis(date + "T00:00:00Z") + 24 * HOUR)
+            now = now.plusMillis(1)
+        }
+
+        then:
+        earthquakeStore.findMissingDays(millis("2019-11-01T00:00:00Z"), millis("2019-11-05T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 1)]
+        !earthquakeStore.canHold(millis("2019-11-01T00:00:00Z"), millis("2019-11-05T00:00:00Z"))
+    }
+
+    def "findByTimeRangeAndCountries looks the countries up in the region index"() {
+        given:
+        earthquakeStore.putAll([
+                buildFeature("a", "2019-11-20T10:00:00Z", "83km W of Copiapo, Chile"),
+                buildFeature("b", "2019-11-20T11:00:00Z", "62km SE of Molibagu, Indonesia"),
+                buildFeature("c", "2019-11-20T12:00:00Z", "10km N of Chilecito, Argentina"),
+                buildFeature("d", "2019-11-20T13:00:00Z", "150km N of Lae, Papua New Guinea"),
+                buildFeature("e", "2019-11-20T14:00:00Z", "south of the Fiji Islands"),
+                buildFeature("f", "2019-11-20T15:00:00Z", null)
+        ], millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+
+        expect:
+        find(["chile"]) == ["a"]
+        find(["CHILE", "Indonesia"]) == ["b", "a"]
+        find(["guinea"]) == ["d"]
+        find(["fiji"]) == ["e"]
+        find(["panama"]) == []
+    }
+
+    def "replaced features move to their new region"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z", "near the coast of Chile")],
+                millis("2019-11-20T10:00:00Z"), millis("2019-11-20T11:00:00Z"))
+
+        when:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z", "offshore Peru")],
+                millis("2019-11-20T10:00:00Z"), millis("2019-11-20T11:00:00Z"))
+
+        then:
+        find(["chile"]) == []
+        find(["peru"]) == ["a"]
+    }
+
+    def "applyChange inserts, updates and deletes the earthquakes of the held days"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z"), buildFeature("b", "2019-11-20T11:00:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        Feature revised = buildFeature("a", "2019-11-20T23:59:00Z", "offshore Peru")
+        revised.properties.updated = 2L
+        Feature outdated = buildFeature("a", "2019-11-20T10:00:00Z")
+        outdated.properties.updated = 1L
+        Feature deleted = buildFeature("b", "2019-11-20T11:00:00Z")
+        deleted.properties.status = "deleted"
+
+        expect:
+        earthquakeStore.applyChange(buildFeature("c", "2019-11-20T12:00:00Z"))
+        !earthquakeStore.applyChange(buildFeature("d", "2019-11-25T12:00:00Z"))
+        earthquakeStore.applyChange(revised)
+        !earthquakeStore.applyChange(outdated)
+        earthquakeStore.applyChange(deleted)
+        find(["chile"]) == ["c"]
+        find(["peru"]) == ["a"]
+        earthquakeStore.findMissingDays(millis("2019-11-25T00:00:00Z"), millis("2019-11-26T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 25)]
+    }
+
+    def "applyChange moves an earthquake whose time changed to another day"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T23:59:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-22T00:00:00Z"))
+
+        when:
+        earthquakeStore.applyChange(buildFeature("a", "2019-11-21T00:01:00Z"))
+
+        then:
+        earthquakeStore.findByTimeRange(millis("2019-11-20T00:00:00Z"), millis("2019-11-22T00:00:00Z"))*.properties*.time ==
+                [millis("2019-11-21T00:01:00Z")]
+    }
+
+    def "partitions loaded since the sync started stay fresh while it runs"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-29T10:00:00Z")],
+                millis("2019-11-29T00:00:00Z"), millis("2019-11-30T00:00:00Z"))
+        now = now.plusSeconds(10)
+        earthquakeStore.markSynced(now.toEpochMilli(), now.toEpochMilli())
+        earthquakeStore.putAll([buildFeature("b", "2019-11-30T10:00:00Z")],
+                millis("2019-11-30T00:00:00Z"), millis("2019-12-01T00:00:00Z"))
+
+        when:
+        now = now.plusSeconds(120)
+        earthquakeStore.markSynced(now.toEpochMilli(), now.toEpochMilli())
+
+        then:
+        earthquakeStore.findMissingDays(millis("2019-11-29T00:00:00Z"), millis("2019-12-01T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 29)]
+
+        when:
+        earthquakeStore.resetSync()
+
+        then:
+        earthquakeStore.findMissingDays(millis("2019-11-29T00:00:00Z"), millis("2019-12-01T00:00:00Z")) ==
+                [LocalDate.of(2019, 11, 29), LocalDate.of(2019, 11, 30)]
+    }
+
+    def "area lookups return the earthquakes whose point is inside the area"() {
+        given:
+        earthquakeStore.putAll([
+                buildFeature("santiago", "2019-11-20T10:00:00Z", -33.45, -70.66),
+                buildFeature("valparaiso", "2019-11-20T11:00:00Z", -33.05, -71.62),
+                buildFeature("lima", "2019-11-20T12:00:00Z", -12.05, -77.04),
+                buildFeature("fiji", "2019-11-20T13:00:00Z", -17.7, 179.9),
+                buildFeature("tonga", "2019-11-20T14:00:00Z", -21.2, -175.2),
+                buildFeature("nowhere", "2019-11-20T15:00:00Z")
+        ], millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        long start = millis("2019-11-20T00:00:00Z")
+        long end = millis("2019-11-21T00:00:00Z")
+
+        expect:
+        earthquakeStore.findByTimeRangeAndRadius(start, end, -33.45, -70.66, 100)*.id == ["valparaiso", "santiago"]
+        earthquakeStore.findByTimeRangeAndRadius(start, end, -33.45, -70.66, 50)*.id == ["santiago"]
+        earthquakeStore.findByTimeRangeAndBoundingBox(start, end, new BoundingBox(-35, -10, -80, -70))*.id ==
+                ["lima", "valparaiso", "santiago"]
+        earthquakeStore.findByTimeRangeAndBoundingBox(start, end, new BoundingBox(-25, -15, 175, 186))*.id ==
+                ["tonga", "fiji"]
+        earthquakeStore.findByTimeRangeAndBoundingBox(millis("2019-11-20T10:30:00Z"), end,
+                new BoundingBox(-90, 90, -180, 180))*.id == ["tonga", "fiji", "lima", "valparaiso"]
+    }
+
+    def "findStats merges the rollups kept up to date as earthquakes are added and removed"() {
+        given:
+        earthquakeStore.putAll([
+                buildFeature("a", "2019-11-20T10:00:00Z", "83km W of Copiapo, Chile", 4.6, 100),
+                buildFeature("b", "2019-11-20T11:00:00Z", "83km W of Copiapo, Chile", 4.2, 50),
+                buildFeature("c", "2019-11-20T12:00:00Z", "offshore Peru", 5.5, 400),
+                buildFeature("d", "2019-11-21T12:00:00Z", "offshore Peru", 4.9, 300)
+        ], millis("2019-11-20T00:00:00Z"), millis("2019-11-22T00:00:00Z"))
+        long start = millis("2019-11-20T00:00:00Z")
+        long end = millis("2019-11-22T00:00:00Z")
+
+        when:
+        Feature deleted = buildFeature("a", "2019-11-20T10:00:00Z")
+        deleted.properties.status = "deleted"
+        earthquakeStore.applyChange(deleted)
+
+        then:
+        earthquakeStore.findStats(start, end, EnumSet.noneOf(StatsDimension))*.count == [3]
+        earthquakeStore.findStats(start, end, EnumSet.of(StatsDimension.DAY)).collect { [it.day, it.count, it.maxMagnitude, it.significance] } ==
+                [["2019-11-20", 2, 5.5, 450], ["2019-11-21", 1, 4.9, 300]]
+        earthquakeStore.findStats(start, end, EnumSet.of(StatsDimension.MAGNITUDE, StatsDimension.REGION)).collect { [it.magnitude, it.region, it.count] } ==
+                [[4.0, "chile", 1], [4.0, "offshore peru", 1], [5.0, "offshore peru", 1]]
+        earthquakeStore.findStats(millis("2019-11-20T11:30:00Z"), end, EnumSet.of(StatsDimension.REGION)).collect { [it.region, it.count, it.meanMagnitude] } ==
+                [["offshore peru", 2, 5.2]]
+    }
+
+    def "a snapshot is restored mapped and copied to the heap when it changes"() {
+        given:
+        Path path = Files.createTempFile("earthquake-catalog", ".seg")
+        Feature feature = buildFeature("a", "2019-11-20T10:00:00Z", "83km W of Copiapó, Chile")
+        feature.type = "Feature"
+        feature.geometry = Geometry.builder().type("Point").coordinates([-71.3, -27.1, null] as Double[]).build()
+        feature.properties.mag = 4.5
+        feature.properties.url = "https://earthquake.usgs.gov/earthquakes/eventpage/a"
+        earthquakeStore.putAll([feature, buildFeature("b", "2019-11-20T11:00:00Z", "offshore Peru")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        earthquakeStore.putAll([buildFeature("c", "2019-11-21T10:00:00Z")],
+                millis("2019-11-21T09:00:00Z"), millis("2019-11-21T11:00:00Z"))
+        EarthquakeStore restoredStore = new EarthquakeStore(3, 2, 60000, HOUR, clock)
+
+        when:
+        int written = earthquakeStore.writeSnapshot(path)
+        int restored = restoredStore.restoreSnapshot(path)
+
+        then:
+        written == 1
+        restored == 1
+        restoredStore.restoredAt == now.toEpochMilli()
+        restoredStore.findMissingDays(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z")).isEmpty()
+        restoredStore.findByTimeRange(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z")) ==
+                earthquakeStore.findByTimeRange(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        restoredStore.findByTimeRangeAndCountries(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"),
+                ["chile"])*.id == ["a"]
+        restoredStore.findByTimeRangeAndRadius(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"),
+                -27.1, -71.3, 10)*.id == ["a"]
+
+        when:
+        restoredStore.applyChange(buildFeature("d", "2019-11-20T12:00:00Z", "offshore Peru"))
+
+        then:
+        restoredStore.findByTimeRangeAndCountries(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"),
+                ["peru"])*.id == ["d", "b"]
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    def "restoreSnapshot refuses a file that is not a segment"() {
+        given:
+        Path path = Files.createTempFile("earthquake-catalog", ".seg")
+        Files.write(path, "not a segment".bytes)
+
+        when:
+        earthquakeStore.restoreSnapshot(path)
+
+        then:
+        thrown(IOException)
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    def "restoreSnapshot refuses a truncated segment"() {
+        given:
+        Path path = Files.createTempFile("earthquake-catalog", ".seg")
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z"), buildFeature("b", "2019-11-20T11:00:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        earthquakeStore.writeSnapshot(path)
+        byte[] segment = Files.readAllBytes(path)
+        Files.write(path, Arrays.copyOf(segment, segment.length - length))
+
+        when:
+        earthquakeStore.restoreSnapshot(path)
+
+        then:
+        thrown(IOException)
+
+        cleanup:
+        Files.deleteIfExists(path)
+
+        where:
+        length << [1, 200]
+    }
+
+    def "a snapshot leaves out the days of features with more than three coordinates"() {
+        given:
+        Path path = Files.createTempFile("earthquake-catalog", ".seg")
+        Feature feature = buildFeature("a", "2019-11-20T10:00:00Z")
+        feature.geometry = Geometry.builder().type("Point").coordinates([-71.3, -27.1, 10.0, 99.0] as Double[]).build()
+        earthquakeStore.putAll([feature], millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+
+        when:
+        int written = earthquakeStore.writeSnapshot(path)
+        CatalogSegment.write(path, [new CatalogSegment.DayContent(LocalDate.parse("2019-11-20"), 0L,
+                [CompactFeature.of(feature)])], 0L)
+
+        then:
+        written == 0
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        Files.deleteIfExists(path)
+    }
+
+    private List<String> find(List<String> countries) {
+        return earthquakeStore.findByTimeRangeAndCountries(millis("2019-11-20T00:00:00Z"),
+                millis("2019-11-21T00:00:00Z"), countries)*.id
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli()
+    }
+
+    private static Feature buildFeature(String id, String time) {
+        return buildFeature(id, time, "83km W of Copiapo, Chile")
+    }
+
+    private static Feature buildFeature(String id, String time, double latitude, double longitude) {
+        Feature feature = buildFeature(id, time)
+        feature.geometry = Geometry.builder().type("Point").coordinates([longitude, latitude, 10.0] as Double[]).build()
+        return feature
+    }
+
+    private static Feature buildFeature(String id, String time, String place, double mag, int sig) {
+        Feature feature = buildFeature(id, time, place)
+        feature.properties.mag = mag
+        feature.properties.sig = sig
+        return feature
+    }
+
+    private static Feature buildFeature(String id, String time, String place) {
+        return Feature.builder()
+                .id(id)
+                .properties(Properties.builder()
+                        .place(place)
+                        .time(Instant.parse(time).toEpochMilli())
+                        .build())
+                .build()
+    }
+}
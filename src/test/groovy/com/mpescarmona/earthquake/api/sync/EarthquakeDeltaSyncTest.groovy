@@ -0,0 +1,110 @@
+package com.mpescarmona.earthquake.api.sync
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.mpescarmona.earthquake.api.domain.Feature
+import com.mpescarmona.earthquake.api.domain.Metadata
+import com.mpescarmona.earthquake.api.domain.Properties
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeResponse
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics
+import com.mpescarmona.earthquake.api.parser.GeoJsonStreamingParser
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard
+import com.mpescarmona.earthquake.api.store.EarthquakeStore
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.client.MockClientHttpResponse
+import org.springframework.web.client.ResourceAccessException
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import java.time.Instant
+
+class EarthquakeDeltaSyncTest extends Specification {
+    static ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+
+    RestTemplate restTemplate = Mock()
+    EarthquakeUrlHelper earthquakeUrlHelper = Mock()
+    EarthquakeStore earthquakeStore = new EarthquakeStore(10, 2, 60000, 3600000)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    EarthquakeMetrics earthquakeMetrics = new EarthquakeMetrics(meterRegistry)
+    EarthquakeDeltaSync earthquakeDeltaSync = new EarthquakeDeltaSync(restTemplate, earthquakeUrlHelper, earthquakeStore,
+            new GeoJsonStreamingParser(objectMapper),
+            new EarthquakeUpstreamGuard(earthquakeMetrics, 50, 20, 10, 10000, 60000, 20, 500),
+            earthquakeMetrics, 60000, 3)
+
+    def "the first poll only sets the watermark"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+
+        when:
+        earthquakeDeltaSync.sync()
+
+        then:
+        0 * restTemplate._
+    }
+
+    def "polls the earthquakes updated since the last poll into the store"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z"), buildFeature("b", "2019-11-20T11:00:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        Feature deleted = buildFeature("b", "2019-11-20T11:00:00Z")
+        deleted.properties.status = "deleted"
+        EarthquakeResponse changes = buildEarthquakeResponse([buildFeature("c", "2019-11-20T12:00:00Z"), deleted])
+        earthquakeDeltaSync.sync()
+
+        when:
+        earthquakeDeltaSync.sync()
+
+        then:
+        1 * earthquakeUrlHelper.buildEarthquakeUrlByUpdatedAfter("2019-11-20T00:00:00.000", _) >> "updated"
+        1 * restTemplate.execute("updated", HttpMethod.GET, _, _) >> { args ->
+            args[3].extractData(new MockClientHttpResponse(objectMapper.writeValueAsBytes(changes), HttpStatus.OK))
+        }
+        earthquakeStore.findByTimeRange(millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))*.id == ["c", "a"]
+        meterRegistry.get("earthquake.features.out").tag("action", "sync").counter().count() == 2
+    }
+
+    def "a failed poll is read again by the next one"() {
+        given:
+        earthquakeStore.putAll([buildFeature("a", "2019-11-20T10:00:00Z")],
+                millis("2019-11-20T00:00:00Z"), millis("2019-11-21T00:00:00Z"))
+        earthquakeDeltaSync.sync()
+        List<String> updatedAfter = []
+        earthquakeUrlHelper.buildEarthquakeUrlByUpdatedAfter(_, _) >> { args -> updatedAfter << args[1]; "updated" }
+        restTemplate.execute("updated", HttpMethod.GET, _, _) >> { throw new ResourceAccessException("Read timed out") } >>
+                { args -> args[3].extractData(new MockClientHttpResponse(objectMapper.writeValueAsBytes(buildEarthquakeResponse([])), HttpStatus.OK)) }
+
+        when:
+        earthquakeDeltaSync.sync()
+        earthquakeDeltaSync.sync()
+
+        then:
+        updatedAfter.size() == 2
+        updatedAfter[0] == updatedAfter[1]
+    }
+
+    private static EarthquakeResponse buildEarthquakeResponse(List<Feature> features) {
+        return EarthquakeResponse.builder()
+                .type("FeatureCollection")
+                .metadata(Metadata.builder().count(features.size()).build())
+                .features(features)
+                .build()
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli()
+    }
+
+    private static Feature buildFeature(String id, String time) {
+        return Feature.builder()
+                .id(id)
+                .properties(Properties.builder()
+                        .place("83km W of Copiapo, Chile")
+                        .time(millis(time))
+                        .build())
+                .build()
+    }
+}
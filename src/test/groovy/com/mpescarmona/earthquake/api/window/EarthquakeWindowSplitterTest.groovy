@@ -0,0 +1,99 @@
+package com.mpescarmona.earthquake.api.window
+
+import com.mpescarmona.earthquake.api.domain.response.EarthquakeCountResponse
+import com.mpescarmona.earthquake.api.helper.EarthquakeUrlHelper
+import com.mpescarmona.earthquake.api.metrics.EarthquakeMetrics
+import com.mpescarmona.earthquake.api.resilience.EarthquakeUpstreamGuard
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.core.task.SimpleAsyncTaskExecutor
+import org.springframework.web.client.RestClientException
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import java.time.Instant
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class EarthquakeWindowSplitterTest extends Specification {
+    static final long DAY = 86400000L
+
+    RestTemplate restTemplate = Mock()
+    EarthquakeUrlHelper earthquakeUrlHelper = Stub() {
+        buildEarthquakeCountUrlByDates(_, _) >> { args -> "count?" + args[0] + "/" + args[1] }
+    }
+    EarthquakeUpstreamGuard earthquakeUpstreamGuard = new EarthquakeUpstreamGuard(
+            new EarthquakeMetrics(new SimpleMeterRegistry()), 50, 20, 10, 10000, 60000, 20, 500)
+    EarthquakeWindowSplitter splitter = new EarthquakeWindowSplitter(restTemplate, earthquakeUrlHelper,
+            earthquakeUpstreamGuard, new SimpleAsyncTaskExecutor(), 1000, DAY, 2)
+
+    def "short ranges are not counted"() {
+        when:
+        List<TimeWindow> windows = splitter.split(millis("2019-11-27T00:00:00Z"), millis("2019-11-28T12:00:00Z"))
+
+        then:
+        0 * restTemplate._
+        windows == [new TimeWindow(millis("2019-11-27T00:00:00Z"), millis("2019-11-28T12:00:00Z"))]
+    }
+
+    def "ranges over the limit are divided until every window fits"() {
+        given:
+        long start = millis("2019-11-01T00:00:00Z")
+        long end = millis("2019-11-09T00:00:00Z") - 1
+        // a burst of earthquakes on the first days
+        restTemplate.getForObject(_, EarthquakeCountResponse) >> { args ->
+            String window = args[0]
+            int count = window == "count?2019-11-01T00:00:00.000/2019-11-08T23:59:59.999" ? 2000
+                    : window == "count?2019-11-01T00:00:00.000/2019-11-04T23:59:59.999" ? 1500 : 500
+            return new EarthquakeCountResponse(count, 20000)
+        }
+
+        when:
+        List<TimeWindow> windows = splitter.split(start, end)
+
+        then:
+        windows*.startTime == ["2019-11-05T00:00:00.000", "2019-11-03T00:00:00.000", "2019-11-01T00:00:00.000"]
+        windows*.endTime == ["2019-11-08T23:59:59.999", "2019-11-04T23:59:59.999", "2019-11-02T23:59:59.999"]
+    }
+
+    def "windows are read whole when they can not be counted"() {
+        given:
+        restTemplate.getForObject(_, EarthquakeCountResponse) >> { throw new RestClientException("unavailable") }
+
+        when:
+        List<TimeWindow> windows = splitter.split(millis("2019-11-01T00:00:00Z"), millis("2019-11-09T00:00:00Z"))
+
+        then:
+        windows.size() == 1
+    }
+
+    def "readInOrder reads at most parallelism windows at a time and keeps their order"() {
+        given:
+        List<TimeWindow> windows = (0..<6).collect { new TimeWindow(it * DAY, (it + 1) * DAY - 1) }
+        AtomicInteger reading = new AtomicInteger()
+        AtomicInteger maxReading = new AtomicInteger()
+        CountDownLatch lastStarted = new CountDownLatch(1)
+        List<Long> results = []
+
+        when:
+        splitter.readInOrder(windows, { TimeWindow window ->
+            maxReading.accumulateAndGet(reading.incrementAndGet(), { a, b -> Math.max(a, b) })
+            if (window.startMillis == 0) {
+                // the first window finishes last of its batch
+                lastStarted.await(1, TimeUnit.SECONDS)
+            } else {
+                lastStarted.countDown()
+            }
+            reading.decrementAndGet()
+            return window.startMillis
+        }, { results << it })
+
+        then:
+        results == windows*.startMillis
+        maxReading.get() <= 2
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli()
+    }
+}